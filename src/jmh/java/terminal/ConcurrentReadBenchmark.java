@@ -0,0 +1,81 @@
+package terminal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// One writer and three readers sharing a buffer, guarded by ConcurrentTerminalBuffer or by a
+// plain monitor around every call
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentReadBenchmark {
+
+    private static final int WIDTH = 80;
+    private static final int HEIGHT = 24;
+
+    private ConcurrentTerminalBuffer stamped;
+    private TerminalBuffer synchronizedBuffer;
+    private String chunk;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stamped = new ConcurrentTerminalBuffer(new TerminalBuffer(WIDTH, HEIGHT, 1000));
+        synchronizedBuffer = new TerminalBuffer(WIDTH, HEIGHT, 1000);
+        chunk = "The quick brown fox jumps over the lazy dog 0123456789 ".repeat(8);
+    }
+
+    @State(Scope.Thread)
+    public static class ReaderState {
+        int step;
+    }
+
+    @Benchmark
+    @Group("stamped")
+    @GroupThreads(1)
+    public void stampedWrite() {
+        stamped.write(chunk);
+    }
+
+    @Benchmark
+    @Group("stamped")
+    @GroupThreads(3)
+    public char stampedRead(ReaderState reader) {
+        int step = reader.step++;
+        return stamped.getCharAt(step % HEIGHT, step % WIDTH);
+    }
+
+    @Benchmark
+    @Group("synchronized")
+    @GroupThreads(1)
+    public void synchronizedWrite() {
+        synchronized (synchronizedBuffer) {
+            synchronizedBuffer.write(chunk);
+        }
+    }
+
+    @Benchmark
+    @Group("synchronized")
+    @GroupThreads(3)
+    public char synchronizedRead(ReaderState reader) {
+        int step = reader.step++;
+        synchronized (synchronizedBuffer) {
+            return synchronizedBuffer.getCharAt(step % HEIGHT, step % WIDTH);
+        }
+    }
+}
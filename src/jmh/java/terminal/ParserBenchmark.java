@@ -0,0 +1,57 @@
+package terminal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"PLAIN_LOG", "STYLED", "CURSOR_ADDRESSED"})
+    String shape;
+
+    private TerminalBuffer buffer;
+    private VtParser parser;
+    private char[] input;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        buffer = new TerminalBuffer(200, 60, 10_000);
+        parser = new VtParser(buffer);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 64 * 1024; i++) {
+            switch (shape) {
+                case "PLAIN_LOG" -> sb.append("[INFO] Compiling module-").append(i).append(" of the build\r\n");
+                case "STYLED" -> sb.append("\u001b[1;3").append(i % 8).append("mword").append(i)
+                        .append("\u001b[0m ").append(i % 10 == 0 ? "\r\n" : "");
+                default -> sb.append("\u001b[").append(i % 60 + 1).append(';').append(i % 190 + 1)
+                        .append("H\u001b[K").append(i);
+            }
+        }
+        input = sb.toString().toCharArray();
+    }
+
+    // Reported in operations of 64K characters each
+    @Benchmark
+    public TerminalBuffer parse() {
+        parser.parse(input, 0, input.length);
+        return buffer;
+    }
+}
@@ -0,0 +1,106 @@
+package terminal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadBenchmark {
+
+    @Param({"80", "200"})
+    int width;
+
+    @Param({"24", "60"})
+    int height;
+
+    @Param({"1000", "100000"})
+    int maxScrollback;
+
+    @Param({"PLAIN_LOG", "STYLED", "CURSOR_ADDRESSED"})
+    Workload workload;
+
+    private TerminalBuffer buffer;
+    private int totalRows;
+    private int row;
+    private final StringBuilder text = new StringBuilder();
+    private StyledRunSink sink;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) {
+        sink = (column, cells, attributes, run) -> {
+            blackhole.consume(column);
+            blackhole.consume(attributes);
+            blackhole.consume(run);
+        };
+        buffer = new TerminalBuffer(width, height, maxScrollback);
+        // Fill the history completely so reads see a full scrollback
+        for (int step = 0; buffer.getScrollbackLines().size() < maxScrollback; step++) {
+            workload.apply(buffer, step);
+            if (workload == Workload.CURSOR_ADDRESSED) {
+                buffer.insertEmptyLineAtBottom();
+            }
+        }
+        totalRows = buffer.getScrollbackLines().size() + height;
+    }
+
+    // One page of history read line by line, the way a renderer scrolls through scrollback
+    @Benchmark
+    public void getLineAsStringPage(Blackhole blackhole) {
+        int start = row;
+        row = (row + height) % (totalRows - height);
+        for (int i = 0; i < height; i++) {
+            blackhole.consume(buffer.getLineAsString(start + i));
+        }
+    }
+
+    // One page of history read cell by cell
+    @Benchmark
+    public void getCharAndAttributesPage(Blackhole blackhole) {
+        int start = row;
+        row = (row + height) % (totalRows - height);
+        for (int i = 0; i < height; i++) {
+            for (int column = 0; column < width; column++) {
+                blackhole.consume(buffer.getCharAt(start + i, column));
+                blackhole.consume(buffer.getAttributesAt(start + i, column));
+            }
+        }
+    }
+
+    // The same page read as runs of equal attributes into a reused sink, which allocates nothing
+    @Benchmark
+    public void readStyledRunsPage() {
+        int start = row;
+        row = (row + height) % (totalRows - height);
+        for (int i = 0; i < height; i++) {
+            buffer.readStyledRuns(start + i, text, sink);
+        }
+    }
+
+    @Benchmark
+    public String getScreenAsString() {
+        return buffer.getScreenAsString();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String getEntireBufferAsString() {
+        return buffer.getEntireBufferAsString();
+    }
+}
@@ -0,0 +1,69 @@
+package terminal;
+
+import java.util.Random;
+
+// Shapes of output fed to the buffer by the benchmarks
+public enum Workload {
+
+    // Unstyled ASCII lines of varying length, one per row, like a build log
+    PLAIN_LOG {
+        @Override
+        void apply(TerminalBuffer buffer, int step) {
+            buffer.write(LOG_LINES[step % LOG_LINES.length]);
+            buffer.cursorNextLine();
+        }
+    },
+
+    // Short words that each switch colors and styles, like colored compiler output
+    STYLED {
+        @Override
+        void apply(TerminalBuffer buffer, int step) {
+            for (int i = 0; i < 8; i++) {
+                int word = step * 8 + i;
+                buffer.setForeground(COLORS[word % COLORS.length]);
+                if (word % 3 == 0) {
+                    buffer.addStyle(Style.BOLD);
+                } else {
+                    buffer.removeStyle(Style.BOLD);
+                }
+                buffer.write(WORDS[word % WORDS.length]);
+            }
+            buffer.resetAttributes();
+            buffer.cursorNextLine();
+        }
+    },
+
+    // Short updates at scattered positions, like a full-screen program redrawing fields
+    CURSOR_ADDRESSED {
+        @Override
+        void apply(TerminalBuffer buffer, int step) {
+            for (int i = 0; i < 8; i++) {
+                int position = POSITIONS[(step * 8 + i) % POSITIONS.length];
+                buffer.cursorSetPosition(position % buffer.getHeight(), position % buffer.getWidth());
+                buffer.write(WORDS[(step + i) % WORDS.length]);
+            }
+        }
+    };
+
+    private static final String[] LOG_LINES = new String[64];
+    private static final String[] WORDS = {"error ", "warning ", "at ", "terminal.Line ", "12ms ", "[INFO] ", "ok ", "-> "};
+    private static final Color[] COLORS = {Color.RED, Color.GREEN, Color.YELLOW, Color.DEFAULT, Color.BRIGHT_CYAN};
+    private static final int[] POSITIONS = new int[256];
+
+    static {
+        Random random = new Random(42);
+        for (int i = 0; i < LOG_LINES.length; i++) {
+            StringBuilder line = new StringBuilder("[INFO] Compiling module-" + i + " ");
+            int words = random.nextInt(20);
+            for (int w = 0; w < words; w++) {
+                line.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            LOG_LINES[i] = line.toString();
+        }
+        for (int i = 0; i < POSITIONS.length; i++) {
+            POSITIONS[i] = random.nextInt(1 << 20);
+        }
+    }
+
+    abstract void apply(TerminalBuffer buffer, int step);
+}
@@ -0,0 +1,80 @@
+package terminal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteBenchmark {
+
+    @Param({"80", "200"})
+    int width;
+
+    @Param({"24", "60"})
+    int height;
+
+    @Param({"1000", "100000"})
+    int maxScrollback;
+
+    @Param({"PLAIN_LOG", "STYLED", "CURSOR_ADDRESSED"})
+    Workload workload;
+
+    private TerminalBuffer buffer;
+    private String chunk;
+    private int step;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        buffer = new TerminalBuffer(width, height, maxScrollback);
+        chunk = "The quick brown fox jumps over the lazy dog 0123456789 ".repeat(8);
+    }
+
+    @Benchmark
+    public TerminalBuffer workload() {
+        workload.apply(buffer, step++);
+        return buffer;
+    }
+
+    @Benchmark
+    public TerminalBuffer write() {
+        buffer.write(chunk);
+        return buffer;
+    }
+
+    @Benchmark
+    public TerminalBuffer putChar() {
+        for (int i = 0; i < chunk.length(); i++) {
+            buffer.putChar(chunk.charAt(i));
+        }
+        return buffer;
+    }
+
+    @Benchmark
+    public TerminalBuffer insert() {
+        buffer.cursorSetPosition(step++ % height, 0);
+        buffer.insert("inserted ");
+        return buffer;
+    }
+
+    @Benchmark
+    public TerminalBuffer scrollUp() {
+        buffer.insertEmptyLineAtBottom();
+        return buffer;
+    }
+}
@@ -0,0 +1,64 @@
+package terminal;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+public final class AttributeTable {
+
+    public static final int DEFAULT_ID = 0;
+
+    // Every distinct attribute combination maps to a packed key; keys are assigned dense ids on first use
+    private static final short[] idsByKey = new short[1 << CellAttributes.PACKED_BITS];
+
+    // Ids are written with release and read with acquire semantics, so a reader that sees an id
+    // also sees the table holding its attributes
+    private static final VarHandle ID = MethodHandles.arrayElementVarHandle(short[].class);
+
+    private static volatile CellAttributes[] attributesById = new CellAttributes[16];
+    private static int size;
+
+    static {
+        intern(new CellAttributes());
+    }
+
+    private AttributeTable() {
+    }
+
+    public static int intern(CellAttributes attributes) {
+        int key = attributes.pack();
+        // Ids are stored off by one so that zero means "not assigned yet"
+        int id = (short) ID.getAcquire(idsByKey, key) - 1;
+        return id >= 0 ? id : internSlow(key);
+    }
+
+    public static CellAttributes get(int id) {
+        CellAttributes[] table = attributesById;
+        if (id < 0 || id >= table.length || table[id] == null) {
+            throw new IllegalArgumentException("Unknown attribute id: " + id);
+        }
+        return table[id];
+    }
+
+    public static synchronized int size() {
+        return size;
+    }
+
+    private static synchronized int internSlow(int key) {
+        int id = idsByKey[key] - 1;
+        if (id >= 0) {
+            return id;
+        }
+
+        CellAttributes[] table = attributesById;
+        if (size == table.length) {
+            table = Arrays.copyOf(table, table.length * 2);
+        }
+        id = size++;
+        table[id] = CellAttributes.shared(key);
+        // Publish the instance before the id becomes visible to lock-free readers
+        attributesById = table;
+        ID.setRelease(idsByKey, key, (short) (id + 1));
+        return id;
+    }
+}
@@ -0,0 +1,54 @@
+package terminal;
+
+// Counters of a TerminalBuffer at the moment getMetrics() was called; counts are totals since the
+// buffer was created.
+public final class BufferMetrics {
+
+    private final long charactersWritten;
+    private final long linesScrolled;
+    private final long linesEvicted;
+    private final int residentScrollbackLines;
+    private final long estimatedBytes;
+
+    BufferMetrics(long charactersWritten, long linesScrolled, long linesEvicted, int residentScrollbackLines,
+                  long estimatedBytes) {
+        this.charactersWritten = charactersWritten;
+        this.linesScrolled = linesScrolled;
+        this.linesEvicted = linesEvicted;
+        this.residentScrollbackLines = residentScrollbackLines;
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    // UTF-16 chars passed to write and insert calls
+    public long getCharactersWritten() {
+        return charactersWritten;
+    }
+
+    // Lines the screen or a scroll region moved by, in either direction
+    public long getLinesScrolled() {
+        return linesScrolled;
+    }
+
+    // Lines dropped from the history, by the size limit or by clearing it
+    public long getLinesEvicted() {
+        return linesEvicted;
+    }
+
+    // Scrollback lines on the heap; spilled and restored lines are on disk
+    public int getResidentScrollbackLines() {
+        return residentScrollbackLines;
+    }
+
+    // Rough heap size of the screen and the resident scrollback. Scrollback lines are sampled, and
+    // identical lines shared after deduplication are counted every time they appear.
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "BufferMetrics{charactersWritten=" + charactersWritten + ", linesScrolled=" + linesScrolled
+                + ", linesEvicted=" + linesEvicted + ", residentScrollbackLines=" + residentScrollbackLines
+                + ", estimatedBytes=" + estimatedBytes + "}";
+    }
+}
@@ -5,11 +5,14 @@ import java.util.EnumSet;
 public class Cell {
 
     private char character;
+    // Set only when the cell holds more than one char: a supplementary code point, a cluster with
+    // combining characters, or the empty right half of a wide character
+    private String text;
     private CellAttributes attributes;
 
     public Cell() {
         this.character = ' ';
-        this.attributes = new CellAttributes();
+        this.attributes = AttributeTable.get(AttributeTable.DEFAULT_ID);
     }
 
     public Cell(char character, CellAttributes attributes) {
@@ -17,14 +20,25 @@ public class Cell {
         this.attributes = attributes;
     }
 
+    public Cell(String text, CellAttributes attributes) {
+        if (text.length() == 1 && !Character.isSurrogate(text.charAt(0))) {
+            this.character = text.charAt(0);
+        } else {
+            this.character = text.isEmpty() ? '\0' : Line.visibleChar(Line.EXTENDED, text);
+            this.text = text;
+        }
+        this.attributes = attributes;
+    }
 
     public void clear() {
         this.character = ' ';
-        this.attributes = new CellAttributes();
+        this.text = null;
+        this.attributes = AttributeTable.get(AttributeTable.DEFAULT_ID);
     }
 
     public Cell copy() {
-        return new Cell(character, attributes.copy());
+        CellAttributes copied = attributes.isShared() ? attributes : attributes.copy();
+        return text == null ? new Cell(character, copied) : new Cell(text, copied);
     }
 
     public char getCharacter() {
@@ -33,6 +47,18 @@ public class Cell {
 
     public void setCharacter(char character) {
         this.character = character;
+        this.text = null;
+    }
+
+    public String getText() {
+        return text == null ? String.valueOf(character) : text;
+    }
+
+    public int getCodePoint() {
+        if (text == null) {
+            return character;
+        }
+        return text.isEmpty() ? 0 : text.codePointAt(0);
     }
 
     public Color getForeground() {
@@ -40,7 +66,7 @@ public class Cell {
     }
 
     public void setForeground(Color foreground) {
-        attributes.setForeground(foreground);
+        mutableAttributes().setForeground(foreground);
     }
 
     public Color getBackground() {
@@ -48,7 +74,7 @@ public class Cell {
     }
 
     public void setBackground(Color background) {
-        attributes.setBackground(background);
+        mutableAttributes().setBackground(background);
     }
 
     public EnumSet<Style> getStyles() {
@@ -56,11 +82,11 @@ public class Cell {
     }
 
     public void addStyle(Style style) {
-        attributes.addStyle(style);
+        mutableAttributes().addStyle(style);
     }
 
     public void removeStyle(Style style) {
-        attributes.removeStyle(style);
+        mutableAttributes().removeStyle(style);
     }
 
     public boolean hasStyle(Style style) {
@@ -68,8 +94,19 @@ public class Cell {
     }
 
     public CellAttributes getAttributes() {
-        return attributes.copy();
+        return attributes.isShared() ? attributes : attributes.copy();
+    }
+
+    int attributeId() {
+        return AttributeTable.intern(attributes);
     }
 
+    // Cells read from a Line share interned attributes, so copy them before the first modification
+    private CellAttributes mutableAttributes() {
+        if (attributes.isShared()) {
+            attributes = attributes.copy();
+        }
+        return attributes;
+    }
 
 }
@@ -4,20 +4,36 @@ import java.util.EnumSet;
 
 public class CellAttributes {
 
+    // Layout of the packed key used by AttributeTable: 5 bits foreground, 5 bits background, 5 bits styles
+    static final int PACKED_BITS = 15;
+    private static final int COLOR_BITS = 5;
+    private static final int COLOR_MASK = (1 << COLOR_BITS) - 1;
+    private static final int BACKGROUND_SHIFT = COLOR_BITS;
+    private static final int STYLES_SHIFT = 2 * COLOR_BITS;
+
+    private static final Color[] COLORS = Color.values();
+    private static final Style[] STYLES = Style.values();
+
     private Color foreground;
     private Color background;
-    private final EnumSet<Style> styles;
+    private int styles;
+
+    // Interned instances are shared between cells, lines and buffers and must never change
+    private final boolean shared;
 
     public CellAttributes() {
-        this.foreground = Color.DEFAULT;
-        this.background = Color.DEFAULT;
-        this.styles = EnumSet.noneOf(Style.class);
+        this(Color.DEFAULT, Color.DEFAULT, 0, false);
     }
 
     public CellAttributes(Color foreground, Color background, EnumSet<Style> styles) {
+        this(foreground, background, toBits(styles), false);
+    }
+
+    private CellAttributes(Color foreground, Color background, int styles, boolean shared) {
         this.foreground = foreground;
         this.background = background;
-        this.styles = styles.clone();
+        this.styles = styles;
+        this.shared = shared;
     }
 
     public Color getForeground() {
@@ -25,6 +41,7 @@ public class CellAttributes {
     }
 
     public void setForeground(Color foreground) {
+        checkMutable();
         this.foreground = foreground;
     }
 
@@ -33,27 +50,72 @@ public class CellAttributes {
     }
 
     public void setBackground(Color background) {
+        checkMutable();
         this.background = background;
     }
 
     public EnumSet<Style> getStyles() {
-        return EnumSet.copyOf(styles);
+        EnumSet<Style> result = EnumSet.noneOf(Style.class);
+        for (Style style : STYLES) {
+            if (hasStyle(style)) {
+                result.add(style);
+            }
+        }
+        return result;
     }
 
     public void addStyle(Style style) {
-        styles.add(style);
+        checkMutable();
+        styles |= bit(style);
     }
 
     public void removeStyle(Style style) {
-        styles.remove(style);
+        checkMutable();
+        styles &= ~bit(style);
     }
 
     public boolean hasStyle(Style style) {
-        return styles.contains(style);
+        return (styles & bit(style)) != 0;
+    }
+
+    public boolean isShared() {
+        return shared;
     }
 
     public CellAttributes copy() {
-        return new CellAttributes(foreground, background, styles);
+        return new CellAttributes(foreground, background, styles, false);
+    }
+
+    int pack() {
+        return foreground.ordinal()
+                | (background.ordinal() << BACKGROUND_SHIFT)
+                | (styles << STYLES_SHIFT);
+    }
+
+    static CellAttributes shared(int packed) {
+        return new CellAttributes(
+                COLORS[packed & COLOR_MASK],
+                COLORS[(packed >>> BACKGROUND_SHIFT) & COLOR_MASK],
+                packed >>> STYLES_SHIFT,
+                true);
+    }
+
+    private void checkMutable() {
+        if (shared) {
+            throw new UnsupportedOperationException("Shared attributes are immutable, use copy() to modify them");
+        }
+    }
+
+    private static int bit(Style style) {
+        return 1 << style.ordinal();
+    }
+
+    private static int toBits(EnumSet<Style> styles) {
+        int bits = 0;
+        for (Style style : styles) {
+            bits |= bit(style);
+        }
+        return bits;
     }
 
     @Override
@@ -63,15 +125,12 @@ public class CellAttributes {
 
         return foreground == that.foreground &&
                 background == that.background &&
-                styles.equals(that.styles);
+                styles == that.styles;
     }
 
     @Override
     public int hashCode() {
-        int result = foreground.hashCode();
-        result = 31 * result + background.hashCode();
-        result = 31 * result + styles.hashCode();
-        return result;
+        return pack();
     }
 
 }
@@ -0,0 +1,116 @@
+package terminal;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+// Writer that encodes to UTF-8 through fixed-size buffers, so output of any length uses constant memory.
+// Closing the writer finishes the encoding but leaves the channel open.
+final class ChannelWriter extends Writer {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(CHUNK_SIZE * 3);
+
+    private boolean closed;
+
+    ChannelWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void write(char[] source, int offset, int length) throws IOException {
+        checkOpen();
+        while (length > 0) {
+            int count = Math.min(length, chars.remaining());
+            chars.put(source, offset, count);
+            offset += count;
+            length -= count;
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+        }
+    }
+
+    @Override
+    public void write(String source, int offset, int length) throws IOException {
+        checkOpen();
+        while (length > 0) {
+            int count = Math.min(length, chars.remaining());
+            chars.put(source, offset, offset + count);
+            offset += count;
+            length -= count;
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        checkOpen();
+        chars.put((char) c);
+        if (!chars.hasRemaining()) {
+            encode(false);
+        }
+    }
+
+    // Encodes everything buffered except a trailing high surrogate waiting for its pair
+    @Override
+    public void flush() throws IOException {
+        checkOpen();
+        encode(false);
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        encode(true);
+        CoderResult result;
+        do {
+            result = encoder.flush(bytes);
+            drain();
+        } while (result.isOverflow());
+        closed = true;
+    }
+
+    private void encode(boolean endOfInput) throws IOException {
+        chars.flip();
+        CoderResult result;
+        do {
+            result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isOverflow()) {
+                drain();
+            }
+        } while (result.isOverflow());
+        chars.compact();
+    }
+
+    private void drain() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Writer is closed");
+        }
+    }
+}
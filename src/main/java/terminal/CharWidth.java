@@ -0,0 +1,78 @@
+package terminal;
+
+// Display width of code points: 0 for combining marks and joiners, 2 for East Asian wide and
+// emoji presentation characters, 1 otherwise. The wide ranges follow Unicode's East Asian Width
+// property closely enough for terminal use; BMP widths are precomputed into a table.
+final class CharWidth {
+
+    private static final byte SURROGATE = 3;
+
+    private static final int[] WIDE_RANGES = {
+            0x1100, 0x115F, 0x231A, 0x231B, 0x2329, 0x232A, 0x23E9, 0x23EC, 0x23F0, 0x23F0,
+            0x23F3, 0x23F3, 0x25FD, 0x25FE, 0x2614, 0x2615, 0x2648, 0x2653, 0x267F, 0x267F,
+            0x2693, 0x2693, 0x26A1, 0x26A1, 0x26AA, 0x26AB, 0x26BD, 0x26BE, 0x26C4, 0x26C5,
+            0x26CE, 0x26CE, 0x26D4, 0x26D4, 0x26EA, 0x26EA, 0x26F2, 0x26F3, 0x26F5, 0x26F5,
+            0x26FA, 0x26FA, 0x26FD, 0x26FD, 0x2705, 0x2705, 0x270A, 0x270B, 0x2728, 0x2728,
+            0x274C, 0x274C, 0x274E, 0x274E, 0x2753, 0x2755, 0x2757, 0x2757, 0x2795, 0x2797,
+            0x27B0, 0x27B0, 0x27BF, 0x27BF, 0x2B1B, 0x2B1C, 0x2B50, 0x2B50, 0x2B55, 0x2B55,
+            0x2E80, 0x303E, 0x3041, 0x33FF, 0x3400, 0x4DBF, 0x4E00, 0x9FFF, 0xA000, 0xA4CF,
+            0xA960, 0xA97F, 0xAC00, 0xD7A3, 0xF900, 0xFAFF, 0xFE10, 0xFE19, 0xFE30, 0xFE6F,
+            0xFF00, 0xFF60, 0xFFE0, 0xFFE6,
+            0x16FE0, 0x16FE4, 0x17000, 0x18AFF, 0x1B000, 0x1B2FF, 0x1F004, 0x1F004, 0x1F0CF, 0x1F0CF,
+            0x1F18E, 0x1F18E, 0x1F191, 0x1F19A, 0x1F200, 0x1F202, 0x1F210, 0x1F23B, 0x1F240, 0x1F248,
+            0x1F250, 0x1F251, 0x1F260, 0x1F265, 0x1F300, 0x1F3FA, 0x1F400, 0x1F64F, 0x1F680, 0x1F6FF,
+            0x1F7E0, 0x1F7EB, 0x1F90C, 0x1F9FF, 0x1FA70, 0x1FAFF, 0x20000, 0x2FFFD, 0x30000, 0x3FFFD
+    };
+
+    private static final byte[] BMP_WIDTHS = new byte[0x10000];
+
+    static {
+        for (int c = 0; c < BMP_WIDTHS.length; c++) {
+            BMP_WIDTHS[c] = Character.isSurrogate((char) c) ? SURROGATE : (byte) compute(c);
+        }
+    }
+
+    private CharWidth() {
+    }
+
+    // Single UTF-16 unit occupying exactly one column; these are written to lines in bulk
+    static boolean isSimple(char c) {
+        return c < 0x300 || BMP_WIDTHS[c] == 1;
+    }
+
+    static int of(int codePoint) {
+        if (codePoint < BMP_WIDTHS.length) {
+            int width = BMP_WIDTHS[codePoint];
+            return width == SURROGATE ? 1 : width;
+        }
+        return compute(codePoint);
+    }
+
+    private static int compute(int codePoint) {
+        if (codePoint == 0x00AD) {
+            return 1;
+        }
+
+        int type = Character.getType(codePoint);
+        if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK || type == Character.FORMAT
+                || (codePoint >= 0x1160 && codePoint <= 0x11FF)
+                || (codePoint >= 0x1F3FB && codePoint <= 0x1F3FF)) {
+            // Combining marks, joiners, Hangul medial vowels and emoji skin tone modifiers attach to the previous cell
+            return 0;
+        }
+
+        int low = 0;
+        int high = WIDE_RANGES.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (codePoint < WIDE_RANGES[mid * 2]) {
+                high = mid - 1;
+            } else if (codePoint > WIDE_RANGES[mid * 2 + 1]) {
+                low = mid + 1;
+            } else {
+                return 2;
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,169 @@
+package terminal;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Thread-safe wrapper for one writer and any number of readers.
+// Accessors first read optimistically and only take the read lock when a write overlapped them;
+// every mutating call holds the write lock once for its whole input, not per character.
+// The wrapped buffer must not be used directly while it is wrapped.
+public final class ConcurrentTerminalBuffer implements TextSink {
+
+    private final TerminalBuffer buffer;
+    private final StampedLock lock = new StampedLock();
+
+    public ConcurrentTerminalBuffer(TerminalBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public void write(String text) {
+        long stamp = lock.writeLock();
+        try {
+            buffer.write(text);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void write(char[] text, int offset, int length) {
+        long stamp = lock.writeLock();
+        try {
+            buffer.write(text, offset, length);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void insert(String text) {
+        long stamp = lock.writeLock();
+        try {
+            buffer.insert(text);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void putChar(char c) {
+        long stamp = lock.writeLock();
+        try {
+            buffer.putChar(c);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Runs several operations as one atomic update, e.g. a VtParser parsing a chunk of PTY output
+    public void update(Consumer<TerminalBuffer> action) {
+        long stamp = lock.writeLock();
+        try {
+            action.accept(buffer);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public char getCharAt(int globalRow, int column) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                char c = buffer.getCharAt(globalRow, column);
+                if (lock.validate(stamp)) {
+                    return c;
+                }
+            } catch (RuntimeException e) {
+                // A racing write can leave the state inconsistent mid-read; only trust the failure if none happened
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return buffer.getCharAt(globalRow, column);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public String getTextAt(int globalRow, int column) {
+        return read(b -> b.getTextAt(globalRow, column));
+    }
+
+    public CellAttributes getAttributesAt(int globalRow, int column) {
+        return read(b -> b.getAttributesAt(globalRow, column));
+    }
+
+    public String getLineAsString(int globalRow) {
+        return read(b -> b.getLineAsString(globalRow));
+    }
+
+    public String getScreenAsString() {
+        return read(TerminalBuffer::getScreenAsString);
+    }
+
+    // Walks the whole history, so it always takes the read lock instead of retrying
+    public String getEntireBufferAsString() {
+        long stamp = lock.readLock();
+        try {
+            return buffer.getEntireBufferAsString();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // The sink sees each run once, so this takes the read lock instead of retrying
+    public void readStyledRuns(int globalRow, StringBuilder text, StyledRunSink sink) {
+        long stamp = lock.readLock();
+        try {
+            buffer.readStyledRuns(globalRow, text, sink);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public Cursor getCursor() {
+        return read(b -> new Cursor(b.getCursor().getRow(), b.getCursor().getColumn()));
+    }
+
+    public int getScrollbackSize() {
+        return read(TerminalBuffer::getScrollbackSize);
+    }
+
+    public TerminalSnapshot snapshot() {
+        // Sharing marks lines, so this needs exclusive access like any other update
+        long stamp = lock.writeLock();
+        try {
+            return buffer.snapshot();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Runs a reader optimistically, falling back to the read lock when a write overlapped it.
+    // The reader may run more than once and must not modify the buffer.
+    public <T> T read(Function<TerminalBuffer, T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.apply(buffer);
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return reader.apply(buffer);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
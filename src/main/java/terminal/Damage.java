@@ -0,0 +1,71 @@
+package terminal;
+
+import java.util.Arrays;
+
+// Changes to the screen since the previous TerminalBuffer.collectDamage call.
+// A renderer first shifts its previous frame up by getScrollDelta() rows, then repaints the dirty span of each row.
+public final class Damage {
+
+    private int scrollDelta;
+    private int rowCount;
+    private int[] dirtyStarts = new int[0];
+    private int[] dirtyEnds = new int[0];
+
+    public int getScrollDelta() {
+        return scrollDelta;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public boolean isRowDirty(int row) {
+        checkRow(row);
+        return dirtyStarts[row] < dirtyEnds[row];
+    }
+
+    public int getDirtyStart(int row) {
+        checkRow(row);
+        return dirtyStarts[row];
+    }
+
+    // Exclusive end column of the dirty span
+    public int getDirtyEnd(int row) {
+        checkRow(row);
+        return dirtyEnds[row];
+    }
+
+    public boolean isEmpty() {
+        if (scrollDelta != 0) {
+            return false;
+        }
+        for (int row = 0; row < rowCount; row++) {
+            if (dirtyStarts[row] < dirtyEnds[row]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void reset(int rowCount, int scrollDelta) {
+        if (dirtyStarts.length < rowCount) {
+            dirtyStarts = new int[rowCount];
+            dirtyEnds = new int[rowCount];
+        }
+        Arrays.fill(dirtyStarts, 0, rowCount, 0);
+        Arrays.fill(dirtyEnds, 0, rowCount, 0);
+        this.rowCount = rowCount;
+        this.scrollDelta = scrollDelta;
+    }
+
+    void setRow(int row, int dirtyStart, int dirtyEnd) {
+        dirtyStarts[row] = dirtyStart;
+        dirtyEnds[row] = dirtyEnd;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row out of bounds: " + row);
+        }
+    }
+}
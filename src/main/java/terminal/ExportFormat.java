@@ -0,0 +1,9 @@
+package terminal;
+
+public enum ExportFormat {
+    // Characters only, one line per row
+    PLAIN_TEXT,
+
+    // Characters with SGR escape sequences wherever the cell attributes change
+    SGR
+}
@@ -0,0 +1,210 @@
+package terminal;
+
+import java.io.IOException;
+
+// Encodes successive snapshots of a buffer as the escape sequences that turn the frame sent
+// before into the new one, for mirroring a terminal to a remote viewer.
+// Rows still holding the same line as in the previous frame are skipped after one reference
+// comparison, since the buffer copies shared lines before changing them. A whole-screen scroll is
+// recognized from the same lines appearing higher up and sent as SU. Changed rows are compared
+// cell by cell and rewritten in spans, with SGR sequences only where the attributes change and an
+// erase for a blank end of row. The viewer is assumed to have autowrap on and no scroll region.
+public final class FrameEncoder {
+
+    // Unchanged cells between two changes that are cheaper to send again than to jump over
+    private static final int MAX_GAP = 4;
+
+    private static final String ERASE_TO_END = "\u001b[K";
+
+    private TerminalSnapshot previous;
+
+    // What the viewer shows: its attributes, and its cursor, with column == width while a wrap is
+    // pending there and row or column -1 when unknown
+    private int viewerAttributeId;
+    private int viewerRow;
+    private int viewerColumn;
+
+    private final StringBuilder text = new StringBuilder();
+
+    // The frame after this one is sent in full, as is the first one
+    public void reset() {
+        previous = null;
+    }
+
+    public void encode(TerminalSnapshot frame, Appendable out) throws IOException {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        TerminalSnapshot before = previous;
+        previous = frame;
+
+        if (before == null || before.getWidth() != width || before.getHeight() != height) {
+            out.append(Sgr.RESET).append("\u001b[H\u001b[2J");
+            viewerAttributeId = AttributeTable.DEFAULT_ID;
+            viewerRow = 0;
+            viewerColumn = 0;
+            before = null;
+        }
+
+        int shift = before == null ? 0 : scrollShift(before, frame);
+        if (shift > 0) {
+            setAttributes(AttributeTable.DEFAULT_ID, out);
+            out.append("\u001b[");
+            appendCount(shift, out);
+            out.append('S');
+            viewerRow = -1;
+        }
+
+        for (int row = 0; row < height; row++) {
+            Line line = frame.getScreenLine(row);
+            // Rows below the scrolled part came in blank
+            Line base = before == null || row + shift >= height ? null : before.getScreenLine(row + shift);
+            if (line != base) {
+                encodeRow(row, line, base, out);
+            }
+        }
+
+        Cursor cursor = frame.getCursor();
+        moveTo(cursor.getRow(), cursor.getColumn(), width, out);
+    }
+
+    // Rows the screen moved up since the previous frame, judged by the first row found again higher
+    // up; 0 unless the shift keeps more rows than it disturbs, as when only a scroll region moved
+    private static int scrollShift(TerminalSnapshot before, TerminalSnapshot frame) {
+        int height = frame.getHeight();
+        for (int row = 0; row < height - 1; row++) {
+            Line line = frame.getScreenLine(row);
+            if (line == before.getScreenLine(row)) {
+                return 0;
+            }
+            for (int beforeRow = row + 1; beforeRow < height; beforeRow++) {
+                if (line == before.getScreenLine(beforeRow)) {
+                    int shift = beforeRow - row;
+                    int kept = 0;
+                    int unmoved = 0;
+                    for (int r = 0; r < height; r++) {
+                        Line current = frame.getScreenLine(r);
+                        if (r + shift < height && current == before.getScreenLine(r + shift)) {
+                            kept++;
+                        } else if (current == before.getScreenLine(r)) {
+                            unmoved++;
+                        }
+                    }
+                    return kept > unmoved ? shift : 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private void encodeRow(int row, Line line, Line base, Appendable out) throws IOException {
+        int width = line.getWidth();
+        int contentLength = line.contentLength();
+        int column = line.firstDifference(base, 0);
+        while (column < width) {
+            if (column >= contentLength) {
+                // The rest of the row is blank
+                moveTo(row, column, width, out);
+                setAttributes(AttributeTable.DEFAULT_ID, out);
+                out.append(ERASE_TO_END);
+                return;
+            }
+
+            int lastDifference = column;
+            int end = column + 1;
+            while (end < contentLength && end - lastDifference <= MAX_GAP) {
+                if (!line.sameCell(base, end)) {
+                    lastDifference = end;
+                }
+                end++;
+            }
+            end = lastDifference + 1;
+
+            // Spans start and end on whole cells
+            if (line.getCellWidth(column) == 0) {
+                column--;
+            }
+            if (end < width && line.getCellWidth(end) == 0) {
+                end++;
+            }
+
+            moveTo(row, column, width, out);
+            writeCells(line, row, column, end, out);
+            column = line.firstDifference(base, end);
+        }
+    }
+
+    // Sends the cells in runs of equal attributes. The viewer would join the character after a
+    // cluster ending with a zero width joiner to it, so such a cell is followed by a cursor move.
+    private void writeCells(Line line, int row, int start, int end, Appendable out) throws IOException {
+        int width = line.getWidth();
+        int runStart = start;
+        while (runStart < end) {
+            int attributeId = line.getAttributeId(runStart);
+            int runEnd = runStart + 1;
+            while (runEnd < end && line.getAttributeId(runEnd) == attributeId) {
+                runEnd++;
+            }
+            setAttributes(attributeId, out);
+            int textStart = runStart;
+            if (line.hasMarkers()) {
+                for (int column = runStart; column < runEnd; column++) {
+                    if (line.endsWithJoiner(column)) {
+                        int next = column + line.getCellWidth(column);
+                        text.setLength(0);
+                        line.appendTo(text, textStart, next);
+                        out.append(text);
+                        // Unknown column forces the move, also before the next frame's first write
+                        viewerColumn = -1;
+                        if (next < end) {
+                            moveTo(row, next, width, out);
+                        }
+                        textStart = next;
+                    }
+                }
+            }
+            if (textStart < runEnd) {
+                text.setLength(0);
+                line.appendTo(text, textStart, runEnd);
+                out.append(text);
+                viewerColumn = runEnd;
+            }
+            runStart = runEnd;
+        }
+    }
+
+    private void setAttributes(int attributeId, Appendable out) throws IOException {
+        if (attributeId != viewerAttributeId) {
+            out.append(Sgr.sequence(attributeId));
+            viewerAttributeId = attributeId;
+        }
+    }
+
+    // Shortest of CHA within the row, CR LF to the start of the next one, and CUP
+    private void moveTo(int row, int column, int width, Appendable out) throws IOException {
+        if (row == viewerRow && column == viewerColumn) {
+            return;
+        }
+        if (row == viewerRow && viewerColumn < width) {
+            out.append("\u001b[");
+            appendCount(column + 1, out);
+            out.append('G');
+        } else if (row == viewerRow + 1 && column == 0 && viewerRow >= 0) {
+            out.append("\r\n");
+        } else {
+            out.append("\u001b[");
+            appendCount(row + 1, out);
+            out.append(';');
+            appendCount(column + 1, out);
+            out.append('H');
+        }
+        viewerRow = row;
+        viewerColumn = column;
+    }
+
+    private static void appendCount(int value, Appendable out) throws IOException {
+        if (value >= 10) {
+            appendCount(value / 10, out);
+        }
+        out.append((char) ('0' + value % 10));
+    }
+}
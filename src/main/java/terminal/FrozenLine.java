@@ -0,0 +1,407 @@
+package terminal;
+
+import java.util.Arrays;
+
+// Immutable compact form of a line that has left the screen.
+// Trailing blank cells are trimmed, the text is kept as a String with one char per column and
+// attributes as runs of (start, attributeId) pairs covering the text; a line with only default
+// attributes has no runs. Cells marked Line.EXTENDED keep their text in a sorted side table.
+// A wrapped line was soft-wrapped: its text continues on the next line.
+final class FrozenLine implements ReadableLine {
+
+    private static final int[] NO_RUNS = new int[0];
+    private static final String[] NO_TEXTS = new String[0];
+    private static final int HASH_SAMPLES = 8;
+
+    private static volatile FrozenLine lastBlank;
+
+    private final int width;
+    private final String text;
+    private final int[] runs;
+    private final int[] extendedColumns;
+    private final String[] extendedTexts;
+    private final boolean wrapped;
+
+    // No marker cells, so text is exactly what the line displays
+    private final boolean plain;
+
+    private FrozenLine(int width, String text, int[] runs, int[] extendedColumns, String[] extendedTexts,
+                       boolean wrapped) {
+        this.width = width;
+        this.text = text;
+        this.runs = runs;
+        this.extendedColumns = extendedColumns;
+        this.extendedTexts = extendedTexts;
+        this.wrapped = wrapped;
+        this.plain = extendedColumns.length == 0 && text.indexOf(Line.WIDE_CONTINUATION) < 0;
+    }
+
+    static FrozenLine of(int width, char[] chars, short[] attributeIds, String[] extended, boolean wrapped) {
+        int length = width;
+        while (length > 0 && chars[length - 1] == ' ' && attributeIds[length - 1] == AttributeTable.DEFAULT_ID) {
+            length--;
+        }
+
+        if (length == 0) {
+            return wrapped ? new FrozenLine(width, "", NO_RUNS, NO_RUNS, NO_TEXTS, true) : blank(width);
+        }
+
+        int runCount = 1;
+        for (int i = 1; i < length; i++) {
+            if (attributeIds[i] != attributeIds[i - 1]) {
+                runCount++;
+            }
+        }
+
+        int[] runs;
+        if (runCount == 1 && attributeIds[0] == AttributeTable.DEFAULT_ID) {
+            runs = NO_RUNS;
+        } else {
+            runs = new int[runCount * 2];
+            int run = 0;
+            for (int i = 0; i < length; i++) {
+                if (i == 0 || attributeIds[i] != attributeIds[i - 1]) {
+                    runs[run++] = i;
+                    runs[run++] = attributeIds[i];
+                }
+            }
+        }
+
+        int[] extendedColumns = NO_RUNS;
+        String[] extendedTexts = NO_TEXTS;
+        if (extended != null) {
+            int count = 0;
+            for (int i = 0; i < length; i++) {
+                if (chars[i] == Line.EXTENDED) {
+                    count++;
+                }
+            }
+            if (count > 0) {
+                extendedColumns = new int[count];
+                extendedTexts = new String[count];
+                int entry = 0;
+                for (int i = 0; i < length; i++) {
+                    if (chars[i] == Line.EXTENDED) {
+                        extendedColumns[entry] = i;
+                        extendedTexts[entry++] = extended[i];
+                    }
+                }
+            }
+        }
+
+        return new FrozenLine(width, new String(chars, 0, length), runs, extendedColumns, extendedTexts, wrapped);
+    }
+
+    static FrozenLine of(int width, String text, int[] runs, int[] extendedColumns, String[] extendedTexts,
+                         boolean wrapped) {
+        if (text.length() > width || runs.length % 2 != 0 || extendedColumns.length != extendedTexts.length) {
+            throw new IllegalArgumentException("Malformed line: width " + width + ", text length " + text.length());
+        }
+        int markers = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == Line.EXTENDED) {
+                markers++;
+            }
+        }
+        for (int i = 0; i < extendedColumns.length; i++) {
+            int column = extendedColumns[i];
+            if (column >= text.length() || text.charAt(column) != Line.EXTENDED || extendedTexts[i].isEmpty()
+                    || (i > 0 && column <= extendedColumns[i - 1])) {
+                throw new IllegalArgumentException("Malformed extended cell at column " + column);
+            }
+        }
+        if (markers != extendedColumns.length) {
+            throw new IllegalArgumentException("Malformed line: " + markers + " extended cells, "
+                    + extendedColumns.length + " texts");
+        }
+        if (text.isEmpty() && !wrapped) {
+            return blank(width);
+        }
+        return new FrozenLine(width, text, runs.length == 0 ? NO_RUNS : runs,
+                extendedColumns.length == 0 ? NO_RUNS : extendedColumns,
+                extendedTexts.length == 0 ? NO_TEXTS : extendedTexts, wrapped);
+    }
+
+    static FrozenLine blank(int width) {
+        // Blank lines are common and identical, so consecutive ones share an instance
+        FrozenLine blank = lastBlank;
+        if (blank == null || blank.width != width) {
+            blank = new FrozenLine(width, "", NO_RUNS, NO_RUNS, NO_TEXTS, false);
+            lastBlank = blank;
+        }
+        return blank;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public boolean isWrapped() {
+        return wrapped;
+    }
+
+    @Override
+    public char getChar(int column) {
+        checkBounds(column);
+        if (column >= text.length()) {
+            return ' ';
+        }
+        char c = text.charAt(column);
+        if (c == Line.EXTENDED || c == Line.WIDE_CONTINUATION) {
+            return Line.visibleChar(c, c == Line.EXTENDED ? extendedText(column) : null);
+        }
+        return c;
+    }
+
+    @Override
+    public int getCodePoint(int column) {
+        checkBounds(column);
+        if (column >= text.length()) {
+            return ' ';
+        }
+        char c = text.charAt(column);
+        if (c == Line.WIDE_CONTINUATION) {
+            return 0;
+        }
+        return c == Line.EXTENDED ? extendedText(column).codePointAt(0) : c;
+    }
+
+    @Override
+    public String getText(int column) {
+        checkBounds(column);
+        if (column >= text.length()) {
+            return " ";
+        }
+        char c = text.charAt(column);
+        if (c == Line.WIDE_CONTINUATION) {
+            return "";
+        }
+        return c == Line.EXTENDED ? extendedText(column) : String.valueOf(c);
+    }
+
+    @Override
+    public int getCellWidth(int column) {
+        checkBounds(column);
+        if (column >= text.length()) {
+            return 1;
+        }
+        if (text.charAt(column) == Line.WIDE_CONTINUATION) {
+            return 0;
+        }
+        return column + 1 < text.length() && text.charAt(column + 1) == Line.WIDE_CONTINUATION ? 2 : 1;
+    }
+
+    @Override
+    public int getAttributeId(int column) {
+        checkBounds(column);
+        if (column >= text.length() || runs.length == 0) {
+            return AttributeTable.DEFAULT_ID;
+        }
+
+        return runs[runIndex(column) * 2 + 1];
+    }
+
+    // Binary search for the last run starting at or before the column
+    private int runIndex(int column) {
+        int low = 0;
+        int high = runs.length / 2 - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (runs[mid * 2] <= column) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    // Mutable line with the same cells
+    Line thaw() {
+        Line line = new Line(width);
+        for (int column = 0; column < text.length(); column++) {
+            int cellWidth = getCellWidth(column);
+            if (cellWidth > 0) {
+                line.putText(column, getText(column), cellWidth, getAttributeId(column));
+            }
+        }
+        line.setWrapped(wrapped);
+        return line;
+    }
+
+    int getTextLength() {
+        return text.length();
+    }
+
+    String text() {
+        return text;
+    }
+
+    boolean isPlain() {
+        return plain;
+    }
+
+    // Shared with the codec; callers must not modify the returned arrays
+    int[] runs() {
+        return runs;
+    }
+
+    int[] extendedColumns() {
+        return extendedColumns;
+    }
+
+    String[] extendedTexts() {
+        return extendedTexts;
+    }
+
+    @Override
+    public void getChars(int start, int end, char[] dst, int dstBegin) {
+        if (start < 0 || end > width || start > end) {
+            throw new IndexOutOfBoundsException("Range out of bounds: " + start + ".." + end);
+        }
+        int textEnd = Math.min(end, text.length());
+        if (start < textEnd) {
+            text.getChars(start, textEnd, dst, dstBegin);
+            if (!plain) {
+                for (int column = start; column < textEnd; column++) {
+                    char c = dst[dstBegin + column - start];
+                    if (c == Line.EXTENDED || c == Line.WIDE_CONTINUATION) {
+                        dst[dstBegin + column - start] = getChar(column);
+                    }
+                }
+            }
+        }
+        int padFrom = Math.max(start, textEnd);
+        Arrays.fill(dst, dstBegin + padFrom - start, dstBegin + end - start, ' ');
+    }
+
+    @Override
+    public void appendTo(StringBuilder sb) {
+        appendTo(sb, 0, width);
+    }
+
+    @Override
+    public void appendTo(StringBuilder sb, int start, int end) {
+        if (start < 0 || end > width || start > end) {
+            throw new IndexOutOfBoundsException("Range out of bounds: " + start + ".." + end);
+        }
+        int textEnd = Math.min(end, text.length());
+        if (plain) {
+            if (start < textEnd) {
+                sb.append(text, start, textEnd);
+            }
+        } else {
+            for (int column = start; column < textEnd; column++) {
+                char c = text.charAt(column);
+                if (c == Line.EXTENDED) {
+                    sb.append(extendedText(column));
+                } else if (c != Line.WIDE_CONTINUATION) {
+                    sb.append(c);
+                }
+            }
+        }
+        for (int i = Math.max(start, textEnd); i < end; i++) {
+            sb.append(' ');
+        }
+    }
+
+    // Walks the stored runs; the trimmed blank end has default attributes, so it extends a last run
+    // with default attributes or forms a run of its own
+    @Override
+    public void readStyledRuns(int start, int end, StringBuilder text, StyledRunSink sink) {
+        if (start < 0 || end > width || start > end) {
+            throw new IndexOutOfBoundsException("Range out of bounds: " + start + ".." + end);
+        }
+        int textLength = this.text.length();
+        int run = start < textLength && runs.length > 0 ? runIndex(start) : -1;
+        int runStart = start;
+        while (runStart < end) {
+            int attributeId = AttributeTable.DEFAULT_ID;
+            int runEnd = textLength;
+            if (runStart >= textLength || runs.length == 0) {
+                runEnd = end;
+            } else {
+                attributeId = runs[run * 2 + 1];
+                run++;
+                if (run < runs.length / 2) {
+                    runEnd = runs[run * 2];
+                }
+            }
+            if (runEnd == textLength && attributeId == AttributeTable.DEFAULT_ID) {
+                runEnd = end;
+            }
+            runEnd = Math.min(runEnd, end);
+
+            text.setLength(0);
+            appendTo(text, runStart, runEnd);
+            sink.run(runStart, runEnd - runStart, AttributeTable.get(attributeId), text);
+            runStart = runEnd;
+        }
+    }
+
+    // Approximate heap size: object headers, the String, which is one byte per char when all chars
+    // are Latin-1, and the side arrays; arrays shared by all lines count as nothing
+    int estimatedBytes() {
+        int bytes = 40 + 24 + 16 + (plain ? text.length() : 2 * text.length());
+        if (runs.length > 0) {
+            bytes += 16 + 4 * runs.length;
+        }
+        for (String cluster : extendedTexts) {
+            bytes += 4 + 4 + 24 + 16 + 2 * cluster.length();
+        }
+        return extendedTexts.length > 0 ? bytes + 32 : bytes;
+    }
+
+    // Equal lines have the same width, wrap flag, cells and attributes
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof FrozenLine other && width == other.width && wrapped == other.wrapped
+                && text.equals(other.text) && Arrays.equals(runs, other.runs)
+                && Arrays.equals(extendedColumns, other.extendedColumns)
+                && Arrays.equals(extendedTexts, other.extendedTexts);
+    }
+
+    // Matches Line.contentHash for a line with the same content
+    @Override
+    public int hashCode() {
+        int length = text.length();
+        int hash = hashSeed(width, wrapped, length);
+        int step = hashStep(length);
+        for (int i = length - 1; i >= 0; i -= step) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash;
+    }
+
+    // Hashes sample a few chars instead of the whole text, since every line leaving the screen is
+    // hashed to find repeats; equality settles the rare collisions
+    static int hashSeed(int width, boolean wrapped, int textLength) {
+        return (31 * width + textLength) * (wrapped ? 17 : 1);
+    }
+
+    static int hashStep(int textLength) {
+        return Math.max(1, textLength / HASH_SAMPLES);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(width);
+        appendTo(sb);
+        return sb.toString();
+    }
+
+    private String extendedText(int column) {
+        return extendedTexts[Arrays.binarySearch(extendedColumns, column)];
+    }
+
+    private void checkBounds(int column) {
+        if (column < 0 || column >= width) {
+            throw new IndexOutOfBoundsException("Column out of bounds: " + column);
+        }
+    }
+}
@@ -1,12 +1,43 @@
 package terminal;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
-public class Line {
+public class Line implements ReadableLine {
+
+    private static final char BLANK = ' ';
+
+    static final char REPLACEMENT = '\uFFFD';
+
+    // Cell markers stored in chars. Unpaired surrogates are replaced before they reach a line, so
+    // these two low surrogates can never be real content.
+    // WIDE_CONTINUATION is the right half of a wide character; EXTENDED means the cell's text is a
+    // supplementary code point or a cluster with combining characters, kept in the side table.
+    static final char WIDE_CONTINUATION = '\uDFFE';
+    static final char EXTENDED = '\uDFFF';
 
     private final int width;
-    private final List<Cell> cells;
+
+    // Packed columnar storage: one char and one AttributeTable id per column
+    private final char[] chars;
+    private final short[] attributeIds;
+
+    // Texts of EXTENDED cells, allocated on first use so BMP-only lines never pay for it
+    private String[] extended;
+
+    // Set once a marker is written and reset when the whole line is overwritten, so plain lines
+    // skip the wide character bookkeeping
+    private boolean hasMarkers;
+
+    // Columns changed since the renderer last collected damage, as [dirtyStart, dirtyEnd)
+    private int dirtyStart;
+    private int dirtyEnd;
+
+    // Soft-wrapped at the right margin: the text continues on the next line. Cleared when the end
+    // of the line is erased, since the continuation is gone
+    private boolean wrapped;
+
+    // Referenced by a snapshot; TerminalBuffer copies a shared line before changing its content
+    private boolean shared;
 
     public Line(int width) {
         if (width < 0) {
@@ -14,16 +45,28 @@ public class Line {
         }
 
         this.width = width;
-        this.cells = new ArrayList<>(width);
+        this.chars = new char[width];
+        this.attributeIds = new short[width];
 
-        for(int i = 0; i < width; i++) {
-            cells.add(new Cell());
-        }
+        Arrays.fill(chars, BLANK);
+        dirtyStart = 0;
+        dirtyEnd = width;
+    }
+
+    private Line(Line source) {
+        this.width = source.width;
+        this.chars = source.chars.clone();
+        this.attributeIds = source.attributeIds.clone();
+        this.extended = source.extended == null ? null : source.extended.clone();
+        this.hasMarkers = source.hasMarkers;
+        this.wrapped = source.wrapped;
+        this.dirtyStart = source.dirtyStart;
+        this.dirtyEnd = source.dirtyEnd;
     }
 
+    // Inserts one cell per char; wide characters and clusters go through TerminalBuffer
     public int insert(int column, String text, CellAttributes attributes) {
         checkBounds(column);
-        int charsWritten = 0;
 
         // We either insert the whole text or as much as fits in the line
         int insertLength = Math.min(text.length(), width - column);
@@ -33,63 +76,499 @@ public class Line {
         }
 
         // Move existing cells to the right to make space for the new text
-        for (int i = width - 1; i >= column + insertLength; i--) {
-            cells.set(i, cells.get(i - insertLength));
-        }
+        shiftRight(column, insertLength);
 
         // Write the new text
-        for (int i = 0; i < insertLength; i++) {
-            Cell cell = new Cell(text.charAt(i), attributes);
-            cells.set(column + i, cell);
-            charsWritten++;
-        }
+        text.getChars(0, insertLength, chars, column);
+        replaceSurrogates(column, column + insertLength);
+        Arrays.fill(attributeIds, column, column + insertLength, (short) AttributeTable.intern(attributes));
 
-        return charsWritten;
+        return insertLength;
     }
 
+    // Writes one cell per char; wide characters and clusters go through TerminalBuffer
     public int overwrite(int column, String text, CellAttributes attributes) {
         checkBounds(column);
-        int charsWritten = 0;
 
-        for(int i = 0; i < text.length() && column + i < width; i++) {
-            Cell cell = new Cell(text.charAt(i), attributes);
-            cells.set(column + i, cell);
-            charsWritten++;
-        }
+        int charsWritten = Math.min(text.length(), width - column);
+
+        splitWide(column, column + charsWritten);
+        text.getChars(0, charsWritten, chars, column);
+        replaceSurrogates(column, column + charsWritten);
+        Arrays.fill(attributeIds, column, column + charsWritten, (short) AttributeTable.intern(attributes));
+        markDirty(column, column + charsWritten);
 
         return charsWritten;
     }
 
+    // Bulk write used by TerminalBuffer; the caller guarantees the run fits in the line and holds
+    // only chars for which CharWidth.isSimple is true
+    void overwrite(int column, String text, int start, int length, int attributeId) {
+        checkRun(column, length);
+        splitWide(column, column + length);
+        text.getChars(start, start + length, chars, column);
+        Arrays.fill(attributeIds, column, column + length, (short) attributeId);
+        markDirty(column, column + length);
+    }
+
+    void overwrite(int column, char[] text, int offset, int length, int attributeId) {
+        checkRun(column, length);
+        splitWide(column, column + length);
+        System.arraycopy(text, offset, chars, column, length);
+        Arrays.fill(attributeIds, column, column + length, (short) attributeId);
+        markDirty(column, column + length);
+    }
+
+    // Writes a character occupying cellWidth (1 or 2) columns
+    void putCodePoint(int column, int codePoint, int cellWidth, int attributeId) {
+        checkRun(column, cellWidth);
+        splitWide(column, column + cellWidth);
+        if (Character.isBmpCodePoint(codePoint)) {
+            chars[column] = (char) codePoint;
+        } else {
+            setExtended(column, Character.toString(codePoint));
+        }
+        if (cellWidth == 2) {
+            chars[column + 1] = WIDE_CONTINUATION;
+            hasMarkers = true;
+        }
+        Arrays.fill(attributeIds, column, column + cellWidth, (short) attributeId);
+        markDirty(column, column + cellWidth);
+    }
+
+    // Writes a cell copied from another line; text is the whole cluster as returned by getText
+    void putText(int column, String text, int cellWidth, int attributeId) {
+        if (text.length() == 1 && !Character.isSurrogate(text.charAt(0))) {
+            putCodePoint(column, text.charAt(0), cellWidth, attributeId);
+            return;
+        }
+        checkRun(column, cellWidth);
+        splitWide(column, column + cellWidth);
+        setExtended(column, text);
+        if (cellWidth == 2) {
+            chars[column + 1] = WIDE_CONTINUATION;
+        }
+        Arrays.fill(attributeIds, column, column + cellWidth, (short) attributeId);
+        markDirty(column, column + cellWidth);
+    }
+
+    void insertCodePoint(int column, int codePoint, int cellWidth, int attributeId) {
+        checkRun(column, cellWidth);
+        shiftRight(column, cellWidth);
+        putCodePoint(column, codePoint, cellWidth, attributeId);
+    }
+
+    // Adds a combining character or joined code point to the cluster at the column
+    void appendToCell(int column, int codePoint) {
+        checkBounds(column);
+        String text = getText(column);
+        setExtended(column, new StringBuilder(text.length() + 2).append(text).appendCodePoint(codePoint).toString());
+        markDirty(column, column + getCellWidth(column));
+    }
+
+    // True when the cluster at the column ends with a zero width joiner, so the next character joins it
+    boolean endsWithJoiner(int column) {
+        checkBounds(column);
+        return chars[column] == EXTENDED && extended[column].endsWith("\u200D");
+    }
+
+    @Override
     public Cell getCell(int column){
         checkBounds(column);
-        return cells.get(column);
+        char c = chars[column];
+        if (c == EXTENDED || c == WIDE_CONTINUATION) {
+            return new Cell(getText(column), AttributeTable.get(attributeIds[column]));
+        }
+        return new Cell(c, AttributeTable.get(attributeIds[column]));
+    }
+
+    @Override
+    public char getChar(int column) {
+        checkBounds(column);
+        char c = chars[column];
+        return c == EXTENDED || c == WIDE_CONTINUATION ? visibleChar(c, extended == null ? null : extended[column]) : c;
     }
 
+    @Override
+    public int getCodePoint(int column) {
+        checkBounds(column);
+        char c = chars[column];
+        if (c == WIDE_CONTINUATION) {
+            return 0;
+        }
+        return c == EXTENDED ? extended[column].codePointAt(0) : c;
+    }
+
+    @Override
+    public String getText(int column) {
+        checkBounds(column);
+        char c = chars[column];
+        if (c == WIDE_CONTINUATION) {
+            return "";
+        }
+        return c == EXTENDED ? extended[column] : String.valueOf(c);
+    }
+
+    @Override
+    public int getCellWidth(int column) {
+        checkBounds(column);
+        if (chars[column] == WIDE_CONTINUATION) {
+            return 0;
+        }
+        return column + 1 < width && chars[column + 1] == WIDE_CONTINUATION ? 2 : 1;
+    }
+
+    @Override
+    public CellAttributes getAttributes(int column) {
+        checkBounds(column);
+        return AttributeTable.get(attributeIds[column]);
+    }
+
+    @Override
+    public int getAttributeId(int column) {
+        checkBounds(column);
+        return attributeIds[column];
+    }
+
+    @Override
     public int getWidth() {
         return width;
     }
 
+    @Override
+    public boolean isWrapped() {
+        return wrapped;
+    }
+
+    void setWrapped(boolean wrapped) {
+        this.wrapped = wrapped;
+    }
+
     public void setCell(int column, Cell cell){
         checkBounds(column);
-        cells.set(column, cell.copy());
+        splitWide(column, column + 1);
+        String text = cell.getText();
+        if (text.length() == 1 && !Character.isSurrogate(text.charAt(0))) {
+            chars[column] = text.charAt(0);
+        } else if (text.isEmpty()) {
+            chars[column] = BLANK;
+        } else {
+            setExtended(column, text);
+        }
+        attributeIds[column] = (short) cell.attributeId();
+        markDirty(column, column + 1);
+    }
+
+    // Single cell write for chars for which CharWidth.isSimple is true
+    void put(int column, char c, int attributeId) {
+        checkBounds(column);
+        splitWide(column, column + 1);
+        chars[column] = c;
+        attributeIds[column] = (short) attributeId;
+        markDirty(column, column + 1);
+    }
+
+    void fill(char c, int attributeId) {
+        Arrays.fill(chars, Character.isSurrogate(c) ? REPLACEMENT : c);
+        Arrays.fill(attributeIds, (short) attributeId);
+        extended = null;
+        hasMarkers = false;
+        wrapped = false;
+        markDirty(0, width);
+    }
+
+    void erase(int from, int to, int attributeId) {
+        checkRange(from, to);
+        splitWide(from, to);
+        Arrays.fill(chars, from, to, BLANK);
+        Arrays.fill(attributeIds, from, to, (short) attributeId);
+        if (to == width) {
+            wrapped = false;
+        }
+        markDirty(from, to);
     }
 
     public void clear(){
-        for(Cell cell : cells) {
-            cell.clear();
+        fill(BLANK, AttributeTable.DEFAULT_ID);
+    }
+
+    @Override
+    public void getChars(int start, int end, char[] dst, int dstBegin) {
+        checkRange(start, end);
+        System.arraycopy(chars, start, dst, dstBegin, end - start);
+        if (hasMarkers) {
+            for (int column = start; column < end; column++) {
+                char c = chars[column];
+                if (c == EXTENDED || c == WIDE_CONTINUATION) {
+                    dst[dstBegin + column - start] = visibleChar(c, extended == null ? null : extended[column]);
+                }
+            }
         }
     }
 
     @Override
-    public String toString(){
-        StringBuilder sb = new StringBuilder();
-        for(Cell c : cells) {
-            sb.append(c.getCharacter());
+    public void appendTo(StringBuilder sb) {
+        appendTo(sb, 0, width);
+    }
+
+    @Override
+    public void appendTo(StringBuilder sb, int start, int end) {
+        checkRange(start, end);
+        if (!hasMarkers) {
+            sb.append(chars, start, end - start);
+            return;
+        }
+        for (int column = start; column < end; column++) {
+            char c = chars[column];
+            if (c == EXTENDED) {
+                sb.append(extended[column]);
+            } else if (c != WIDE_CONTINUATION) {
+                sb.append(c);
+            }
+        }
+    }
+
+    @Override
+    public void readStyledRuns(int start, int end, StringBuilder text, StyledRunSink sink) {
+        checkRange(start, end);
+        int runStart = start;
+        while (runStart < end) {
+            short attributeId = attributeIds[runStart];
+            int runEnd = runStart + 1;
+            while (runEnd < end && attributeIds[runEnd] == attributeId) {
+                runEnd++;
+            }
+            text.setLength(0);
+            appendTo(text, runStart, runEnd);
+            sink.run(runStart, runEnd - runStart, AttributeTable.get(attributeId), text);
+            runStart = runEnd;
+        }
+    }
+
+    public boolean isDirty() {
+        return dirtyStart < dirtyEnd;
+    }
+
+    public int getDirtyStart() {
+        return dirtyStart;
+    }
+
+    public int getDirtyEnd() {
+        return dirtyEnd;
+    }
+
+    void markDirty(int from, int to) {
+        if (from < dirtyStart) {
+            dirtyStart = from;
+        }
+        if (to > dirtyEnd) {
+            dirtyEnd = to;
         }
+    }
 
+    void clearDirty() {
+        dirtyStart = width;
+        dirtyEnd = 0;
+    }
+
+    // When false, every cell is a single char of width one
+    boolean hasMarkers() {
+        return hasMarkers;
+    }
+
+    boolean isShared() {
+        return shared;
+    }
+
+    void share() {
+        shared = true;
+    }
+
+    // Unshared copy with the same content and damage
+    Line copy() {
+        return new Line(this);
+    }
+
+    FrozenLine freeze() {
+        return FrozenLine.of(width, chars, attributeIds, extended, wrapped);
+    }
+
+    // First column at or after from where the cells of the two lines differ, or width when none does;
+    // a null other line stands for a blank one. The lines must have the same width.
+    int firstDifference(Line other, int from) {
+        if (other == null) {
+            for (int column = from; column < width; column++) {
+                if (chars[column] != BLANK || attributeIds[column] != AttributeTable.DEFAULT_ID) {
+                    return column;
+                }
+            }
+            return width;
+        }
+        int charMismatch = Arrays.mismatch(chars, from, width, other.chars, from, width);
+        int idMismatch = Arrays.mismatch(attributeIds, from, width, other.attributeIds, from, width);
+        int end = from + Math.min(charMismatch < 0 ? width - from : charMismatch,
+                idMismatch < 0 ? width - from : idMismatch);
+        if (hasMarkers && other.hasMarkers) {
+            for (int column = from; column < end; column++) {
+                if (chars[column] == EXTENDED && !extended[column].equals(other.extended[column])) {
+                    return column;
+                }
+            }
+        }
+        return end;
+    }
+
+    boolean sameCell(Line other, int column) {
+        char c = chars[column];
+        if (other == null) {
+            return c == BLANK && attributeIds[column] == AttributeTable.DEFAULT_ID;
+        }
+        return c == other.chars[column] && attributeIds[column] == other.attributeIds[column]
+                && (c != EXTENDED || extended[column].equals(other.extended[column]));
+    }
+
+    // Approximate heap size of the line and its arrays, without extended cluster strings
+    int estimatedBytes() {
+        int bytes = 48 + 16 + 2 * width + 16 + 2 * width;
+        return extended == null ? bytes : bytes + 16 + 4 * width;
+    }
+
+    // Columns up to the last one that is not a blank with default attributes
+    int contentLength() {
+        int length = width;
+        while (length > 0 && chars[length - 1] == BLANK && attributeIds[length - 1] == AttributeTable.DEFAULT_ID) {
+            length--;
+        }
+        return length;
+    }
+
+    // Same as freeze().hashCode() without freezing; length is contentLength()
+    int contentHash(int length) {
+        int hash = FrozenLine.hashSeed(width, wrapped, length);
+        int step = FrozenLine.hashStep(length);
+        for (int i = length - 1; i >= 0; i -= step) {
+            hash = 31 * hash + chars[i];
+        }
+        return hash;
+    }
+
+    void copyContent(int length, char[] dstChars, short[] dstAttributeIds) {
+        System.arraycopy(chars, 0, dstChars, 0, length);
+        System.arraycopy(attributeIds, 0, dstAttributeIds, 0, length);
+    }
+
+    // Compares the first length columns with a copy taken by copyContent, and the texts of extended
+    // cells with the frozen form of that copy
+    boolean contentEquals(int length, char[] otherChars, short[] otherAttributeIds, FrozenLine frozen) {
+        if (!Arrays.equals(chars, 0, length, otherChars, 0, length)
+                || !Arrays.equals(attributeIds, 0, length, otherAttributeIds, 0, length)) {
+            return false;
+        }
+        int[] extendedColumns = frozen.extendedColumns();
+        String[] extendedTexts = frozen.extendedTexts();
+        for (int i = 0; i < extendedColumns.length; i++) {
+            if (!extended[extendedColumns[i]].equals(extendedTexts[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder sb = new StringBuilder(width);
+        appendTo(sb);
         return sb.toString();
     }
 
+    // getChar of a marker cell: '\0' for the right half of a wide character, otherwise the first
+    // char of the cluster or U+FFFD when that is a surrogate
+    static char visibleChar(char stored, String extendedText) {
+        if (stored == WIDE_CONTINUATION) {
+            return '\0';
+        }
+        char first = extendedText.charAt(0);
+        return Character.isSurrogate(first) ? REPLACEMENT : first;
+    }
+
+    // Cells in [from, to) are about to be overwritten; a wide character only partly inside the
+    // range would lose one of its halves, so the half left outside is blanked
+    private void splitWide(int from, int to) {
+        if (!hasMarkers || from == to) {
+            return;
+        }
+        if (from > 0 && chars[from] == WIDE_CONTINUATION) {
+            blankCell(from - 1);
+        }
+        if (to < width && chars[to] == WIDE_CONTINUATION) {
+            blankCell(to);
+        }
+        if (extended != null) {
+            Arrays.fill(extended, from, to, null);
+        }
+    }
+
+    // Moves cells from the column n places right, dropping the ones pushed past the margin
+    private void shiftRight(int column, int n) {
+        if (hasMarkers) {
+            if (column > 0 && chars[column] == WIDE_CONTINUATION) {
+                blankCell(column - 1);
+                blankCell(column);
+            }
+            // The character pushed into the last column would lose its right half
+            int last = width - 1 - n;
+            if (last >= column && chars[last + 1] == WIDE_CONTINUATION) {
+                blankCell(last);
+            }
+        }
+
+        int moved = width - column - n;
+        System.arraycopy(chars, column, chars, column + n, moved);
+        System.arraycopy(attributeIds, column, attributeIds, column + n, moved);
+        if (extended != null) {
+            System.arraycopy(extended, column, extended, column + n, moved);
+            Arrays.fill(extended, column, column + n, null);
+        }
+        markDirty(column, width);
+    }
+
+    private void blankCell(int column) {
+        chars[column] = BLANK;
+        if (extended != null) {
+            extended[column] = null;
+        }
+        markDirty(column, column + 1);
+    }
+
+    private void setExtended(int column, String text) {
+        if (extended == null) {
+            extended = new String[width];
+        }
+        extended[column] = text;
+        chars[column] = EXTENDED;
+        hasMarkers = true;
+    }
+
+    private void replaceSurrogates(int from, int to) {
+        for (int column = from; column < to; column++) {
+            if (Character.isSurrogate(chars[column])) {
+                chars[column] = REPLACEMENT;
+            }
+        }
+    }
+
+    private void checkRange(int start, int end) {
+        if (start < 0 || end > width || start > end) {
+            throw new IndexOutOfBoundsException("Range out of bounds: " + start + ".." + end);
+        }
+    }
+
+    private void checkRun(int column, int length) {
+        if (column < 0 || length < 0 || column > width - length) {
+            throw new IndexOutOfBoundsException("Run out of bounds: " + column + "+" + length);
+        }
+    }
+
     private void checkBounds(int column) {
         if (column < 0 || column >= width) {
             throw new IndexOutOfBoundsException("Column out of bounds: " + column);
@@ -0,0 +1,155 @@
+package terminal;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+// Binary encoding of frozen lines:
+// varint width, varint text length, one byte text encoding and flags, text bytes, varint run count, varint runs,
+// varint extended cell count, then per extended cell varint column, varint length and UTF-16 text
+final class LineCodec {
+
+    private static final byte LATIN1 = 0;
+    private static final byte UTF16 = 1;
+    private static final byte ENCODING_MASK = 0x0F;
+    private static final byte WRAPPED = 0x10;
+
+    private LineCodec() {
+    }
+
+    // Upper bound of the encoded size, used to size buffers before encoding
+    static int maxEncodedSize(FrozenLine line) {
+        int size = 5 + 5 + 1 + 2 * line.text().length() + 5 + 5 * line.runs().length + 5;
+        for (String text : line.extendedTexts()) {
+            size += 5 + 5 + 2 * text.length();
+        }
+        return size;
+    }
+
+    static void encode(FrozenLine line, ByteBuffer out) {
+        String text = line.text();
+        int[] runs = line.runs();
+
+        putVarint(out, line.getWidth());
+        putVarint(out, text.length());
+
+        if (isLatin1(text)) {
+            out.put((byte) (LATIN1 | flags(line)));
+            for (int i = 0; i < text.length(); i++) {
+                out.put((byte) text.charAt(i));
+            }
+        } else {
+            out.put((byte) (UTF16 | flags(line)));
+            for (int i = 0; i < text.length(); i++) {
+                out.putChar(text.charAt(i));
+            }
+        }
+
+        putVarint(out, runs.length);
+        for (int run : runs) {
+            putVarint(out, run);
+        }
+
+        int[] extendedColumns = line.extendedColumns();
+        String[] extendedTexts = line.extendedTexts();
+        putVarint(out, extendedColumns.length);
+        for (int i = 0; i < extendedColumns.length; i++) {
+            putVarint(out, extendedColumns[i]);
+            putVarint(out, extendedTexts[i].length());
+            for (int j = 0; j < extendedTexts[i].length(); j++) {
+                out.putChar(extendedTexts[i].charAt(j));
+            }
+        }
+    }
+
+    static FrozenLine decode(ByteBuffer in) {
+        return decode(in, null);
+    }
+
+    // Attribute ids of runs are translated through attributeIds unless it is null
+    static FrozenLine decode(ByteBuffer in, int[] attributeIds) {
+        try {
+            int width = getVarint(in);
+            int textLength = getVarint(in);
+            byte header = in.get();
+            byte encoding = (byte) (header & ENCODING_MASK);
+            if ((header & ~(ENCODING_MASK | WRAPPED)) != 0) {
+                throw new IllegalStateException("Unknown line flags: " + header);
+            }
+
+            char[] chars = new char[textLength];
+            if (encoding == LATIN1) {
+                for (int i = 0; i < textLength; i++) {
+                    chars[i] = (char) (in.get() & 0xFF);
+                }
+            } else if (encoding == UTF16) {
+                for (int i = 0; i < textLength; i++) {
+                    chars[i] = in.getChar();
+                }
+            } else {
+                throw new IllegalStateException("Unknown text encoding: " + encoding);
+            }
+
+            int runCount = getVarint(in);
+            int[] runs = new int[runCount];
+            for (int i = 0; i < runCount; i++) {
+                runs[i] = getVarint(in);
+            }
+            if (attributeIds != null) {
+                for (int i = 1; i < runCount; i += 2) {
+                    runs[i] = attributeIds[runs[i]];
+                }
+            }
+
+            int extendedCount = getVarint(in);
+            int[] extendedColumns = new int[extendedCount];
+            String[] extendedTexts = new String[extendedCount];
+            for (int i = 0; i < extendedCount; i++) {
+                extendedColumns[i] = getVarint(in);
+                char[] cluster = new char[getVarint(in)];
+                for (int j = 0; j < cluster.length; j++) {
+                    cluster[j] = in.getChar();
+                }
+                extendedTexts[i] = new String(cluster);
+            }
+
+            return FrozenLine.of(width, new String(chars), runs, extendedColumns, extendedTexts,
+                    (header & WRAPPED) != 0);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+                 | NegativeArraySizeException e) {
+            throw new IllegalStateException("Corrupted line data", e);
+        }
+    }
+
+    static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    private static int flags(FrozenLine line) {
+        return line.isWrapped() ? WRAPPED : 0;
+    }
+
+    private static boolean isLatin1(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,68 @@
+package terminal;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// Writes lines to an Appendable one at a time through reusable scratch buffers
+final class LineExporter {
+
+    private final ExportFormat format;
+
+    private final StringBuilder text = new StringBuilder();
+    private char[] scratch = new char[0];
+
+    LineExporter(ExportFormat format) {
+        this.format = format;
+    }
+
+    void export(ReadableLine line, Appendable out) throws IOException {
+        int width = line.getWidth();
+
+        if (format == ExportFormat.PLAIN_TEXT) {
+            append(line, out, 0, width);
+        } else {
+            // Every line starts from default attributes and resets them at its end
+            int currentId = AttributeTable.DEFAULT_ID;
+            int runStart = 0;
+            for (int column = 0; column < width; column++) {
+                int id = line.getAttributeId(column);
+                if (id != currentId) {
+                    append(line, out, runStart, column);
+                    out.append(Sgr.sequence(id));
+                    currentId = id;
+                    runStart = column;
+                }
+            }
+            append(line, out, runStart, width);
+            if (currentId != AttributeTable.DEFAULT_ID) {
+                out.append(Sgr.RESET);
+            }
+        }
+
+        out.append('\n');
+    }
+
+    private void append(ReadableLine line, Appendable out, int start, int end) throws IOException {
+        if (start == end) {
+            return;
+        }
+        if (out instanceof StringBuilder sb) {
+            line.appendTo(sb, start, end);
+            return;
+        }
+
+        text.setLength(0);
+        line.appendTo(text, start, end);
+        // Writer.append(CharSequence) would copy into a temporary String
+        if (out instanceof Writer writer) {
+            int length = text.length();
+            if (scratch.length < length) {
+                scratch = new char[Math.max(length, scratch.length * 2)];
+            }
+            text.getChars(0, length, scratch, 0);
+            writer.write(scratch, 0, length);
+        } else {
+            out.append(text);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package terminal;
+
+// Bounded intern table for lines entering the scrollback, so repeated lines (blank lines, redrawn
+// progress bars, the same warning over and over) share one FrozenLine.
+// A two-way set associative cache of recently pushed distinct lines: each hash picks a pair of
+// entries kept in least recently used order, and a miss replaces the older one. Entries keep a raw
+// copy of their line's cells in arrays reused across replacements, so a repeat is recognized with
+// two array comparisons against the screen line and is never frozen, and lookups do not allocate.
+// At most capacity lines are kept alive after they leave the scrollback.
+final class LineInterner {
+
+    private final Entry[] entries;
+    private final int mask;
+
+    private long lookups;
+    private long hits;
+
+    // Capacity is rounded up to a power of two of at least two
+    LineInterner(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must be non-negative: " + capacity);
+        }
+        int size = Math.max(2, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+        this.entries = new Entry[size];
+        for (int i = 0; i < size; i++) {
+            entries[i] = new Entry();
+        }
+        this.mask = size - 2;
+    }
+
+    // The frozen form of the line: a recent identical one, or else a new one that becomes shared
+    FrozenLine intern(Line line) {
+        lookups++;
+        int length = line.contentLength();
+        int hash = line.contentHash(length);
+        int first = (hash ^ (hash >>> 16)) & mask;
+
+        Entry recent = entries[first];
+        if (recent.matches(line, length, hash)) {
+            hits++;
+            return recent.frozen;
+        }
+        Entry older = entries[first + 1];
+        entries[first] = older;
+        entries[first + 1] = recent;
+        if (older.matches(line, length, hash)) {
+            hits++;
+        } else {
+            older.store(line, length, hash);
+        }
+        return older.frozen;
+    }
+
+    long getLookups() {
+        return lookups;
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    // Fraction of interned lines that reused an existing instance
+    double getHitRatio() {
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    private static final class Entry {
+
+        private FrozenLine frozen;
+        private int hash;
+        private char[] chars;
+        private short[] attributeIds;
+
+        boolean matches(Line line, int length, int hash) {
+            return frozen != null && this.hash == hash && frozen.getTextLength() == length
+                    && frozen.getWidth() == line.getWidth() && frozen.isWrapped() == line.isWrapped()
+                    && line.contentEquals(length, chars, attributeIds, frozen);
+        }
+
+        void store(Line line, int length, int hash) {
+            if (chars == null || chars.length < length) {
+                chars = new char[line.getWidth()];
+                attributeIds = new short[line.getWidth()];
+            }
+            line.copyContent(length, chars, attributeIds);
+            this.frozen = line.freeze();
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package terminal;
+
+import java.util.Arrays;
+
+// Reusable searchable text of one line with trailing blanks trimmed, mapping every char back to
+// the columns of its cell. Lines without wide characters or clusters map chars to columns one to one.
+final class LineText {
+
+    private final StringBuilder text = new StringBuilder();
+
+    // Start column and end column (exclusive) of the cell each char belongs to; unused for plain lines
+    private int[] starts = new int[0];
+    private int[] ends = new int[0];
+    private boolean plain;
+
+    LineText load(ReadableLine line) {
+        text.setLength(0);
+        if (line instanceof FrozenLine frozen && frozen.isPlain()) {
+            text.append(frozen.text());
+            plain = true;
+        } else if (line instanceof Line screenLine && !screenLine.hasMarkers()) {
+            screenLine.appendTo(text);
+            plain = true;
+        } else {
+            loadCells(line);
+            plain = false;
+        }
+
+        int length = text.length();
+        while (length > 0 && text.charAt(length - 1) == ' ') {
+            length--;
+        }
+        text.setLength(length);
+        return this;
+    }
+
+    CharSequence text() {
+        return text;
+    }
+
+    int length() {
+        return text.length();
+    }
+
+    int startColumn(int index) {
+        return plain ? index : starts[index];
+    }
+
+    // Column after the cell holding the char before endIndex
+    int endColumn(int endIndex) {
+        if (endIndex == 0) {
+            return 0;
+        }
+        return plain ? endIndex : ends[endIndex - 1];
+    }
+
+    private void loadCells(ReadableLine line) {
+        int width = line.getWidth();
+        for (int column = 0; column < width; column++) {
+            int cellWidth = line.getCellWidth(column);
+            if (cellWidth == 0) {
+                continue;
+            }
+            String cell = line.getText(column);
+            int from = text.length();
+            text.append(cell);
+            ensureCapacity(text.length());
+            for (int i = from; i < text.length(); i++) {
+                starts[i] = column;
+                ends[i] = column + cellWidth;
+            }
+        }
+    }
+
+    private void ensureCapacity(int length) {
+        if (starts.length < length) {
+            int capacity = Math.max(length, starts.length * 2);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+    }
+}
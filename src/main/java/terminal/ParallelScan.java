@@ -0,0 +1,151 @@
+package terminal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Brute-force regex scan of a snapshot for queries the search index cannot narrow down.
+// Rows are split into fixed chunks scanned by a ForkJoinPool; each chunk buffers its matches and
+// chunks are handed to the sink strictly in row order as soon as all earlier chunks are done.
+// The sink is called from pool threads, one call at a time. cancel() stops scanning and delivery,
+// so a new query can abandon the previous one right away.
+// Rows evicted from the session or spill file after the snapshot was taken cannot be read; they are
+// counted in getSkippedRows, so a caller can tell the results are incomplete.
+public final class ParallelScan {
+
+    private static final int CHUNK_ROWS = 2048;
+
+    private final TerminalSnapshot snapshot;
+    private final Pattern pattern;
+    private final Consumer<SearchMatch> sink;
+    private final int rowCount;
+
+    // Matches per chunk, published under the lock; delivered chunks are set back to null
+    private final List<SearchMatch>[] results;
+    private int nextChunk;
+
+    private final RecursiveAction root;
+    private volatile boolean cancelled;
+    private final AtomicInteger skippedRows = new AtomicInteger();
+
+    private ParallelScan(TerminalSnapshot snapshot, Pattern pattern, Consumer<SearchMatch> sink) {
+        this.snapshot = snapshot;
+        this.pattern = pattern;
+        this.sink = sink;
+        this.rowCount = snapshot.getScrollbackSize() + snapshot.getHeight();
+        @SuppressWarnings("unchecked")
+        List<SearchMatch>[] chunks = (List<SearchMatch>[]) new List<?>[(rowCount + CHUNK_ROWS - 1) / CHUNK_ROWS];
+        this.results = chunks;
+        this.root = new ChunkRange(0, results.length);
+    }
+
+    public static ParallelScan start(TerminalSnapshot snapshot, Pattern pattern, Consumer<SearchMatch> sink) {
+        return start(snapshot, pattern, sink, ForkJoinPool.commonPool());
+    }
+
+    public static ParallelScan start(TerminalSnapshot snapshot, Pattern pattern, Consumer<SearchMatch> sink,
+                                     ForkJoinPool pool) {
+        ParallelScan scan = new ParallelScan(snapshot, pattern, sink);
+        pool.execute(scan.root);
+        return scan;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return root.isDone();
+    }
+
+    // Rows that were no longer available so far; final once the scan is done
+    public int getSkippedRows() {
+        return skippedRows.get();
+    }
+
+    // Waits until every match was delivered or the scan was cancelled; rethrows a sink failure
+    public void join() {
+        root.join();
+    }
+
+    private void scanChunk(int chunk) {
+        int fromRow = chunk * CHUNK_ROWS;
+        int count = Math.min(CHUNK_ROWS, rowCount - fromRow);
+        ReadableLine[] lines = new ReadableLine[count];
+        snapshot.getLines(fromRow, lines, count);
+
+        List<SearchMatch> matches = new ArrayList<>();
+        LineText text = new LineText();
+        Matcher matcher = pattern.matcher("");
+        long firstSequence = snapshot.getFirstSequence();
+        int skipped = 0;
+        for (int i = 0; i < count && !cancelled; i++) {
+            if (lines[i] == null) {
+                skipped++;
+                continue;
+            }
+            text.load(lines[i]);
+            matcher.reset(text.text());
+            while (matcher.find()) {
+                int start = matcher.start();
+                int startColumn = start < text.length() ? text.startColumn(start) : text.endColumn(text.length());
+                int endColumn = matcher.end() == start ? startColumn : text.endColumn(matcher.end());
+                int row = fromRow + i;
+                matches.add(new SearchMatch(firstSequence + row, row, startColumn, endColumn));
+            }
+        }
+        if (skipped > 0) {
+            skippedRows.addAndGet(skipped);
+        }
+        publish(chunk, matches);
+    }
+
+    private synchronized void publish(int chunk, List<SearchMatch> matches) {
+        results[chunk] = matches;
+        while (nextChunk < results.length && results[nextChunk] != null && !cancelled) {
+            for (SearchMatch match : results[nextChunk]) {
+                if (cancelled) {
+                    return;
+                }
+                sink.accept(match);
+            }
+            results[nextChunk++] = null;
+        }
+    }
+
+    // Splits chunk ranges in half until a single chunk is left
+    private final class ChunkRange extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        ChunkRange(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelled || from >= to) {
+                return;
+            }
+            if (to - from == 1) {
+                scanChunk(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ChunkRange(from, middle), new ChunkRange(middle, to));
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package terminal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Flight Recorder event for reads that walk the whole history, such as getEntireBufferAsString,
+// exports and saving a session
+@Name("terminal.Read")
+@Label("Terminal Read")
+@Category("Terminal")
+@Description("Read of the whole terminal buffer")
+final class ReadEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Lines")
+    @Description("Scrollback and screen lines read")
+    int lines;
+}
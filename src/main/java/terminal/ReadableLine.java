@@ -0,0 +1,50 @@
+package terminal;
+
+// Read access shared by mutable screen lines and frozen scrollback lines.
+// A wide character occupies two columns: its own and a right half whose text is empty.
+public interface ReadableLine {
+
+    int getWidth();
+
+    // True when the line was soft-wrapped at the right margin and its text continues on the next line
+    boolean isWrapped();
+
+    // The cell's character; '\0' for the right half of a wide character and U+FFFD when the first
+    // code point of the cell does not fit in a char
+    char getChar(int column);
+
+    // First code point of the cell, 0 for the right half of a wide character
+    int getCodePoint(int column);
+
+    // Whole grapheme cluster of the cell including combining characters
+    String getText(int column);
+
+    // 2 for a wide character, 0 for its right half, 1 otherwise
+    int getCellWidth(int column);
+
+    int getAttributeId(int column);
+
+    default CellAttributes getAttributes(int column) {
+        return AttributeTable.get(getAttributeId(column));
+    }
+
+    default Cell getCell(int column) {
+        return new Cell(getText(column), getAttributes(column));
+    }
+
+    // Copies getChar of columns [start, end) into dst starting at dstBegin
+    void getChars(int start, int end, char[] dst, int dstBegin);
+
+    void appendTo(StringBuilder sb);
+
+    // Appends the text of columns [start, end); right halves of wide characters add nothing
+    void appendTo(StringBuilder sb, int start, int end);
+
+    // Hands columns [start, end) to the sink in maximal runs of equal attributes, left to right,
+    // using text as the buffer for each run's characters; allocates nothing once text has grown
+    void readStyledRuns(int start, int end, StringBuilder text, StyledRunSink sink);
+
+    default void readStyledRuns(StringBuilder text, StyledRunSink sink) {
+        readStyledRuns(0, getWidth(), text, sink);
+    }
+}
@@ -0,0 +1,142 @@
+package terminal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Re-wraps paragraphs, runs of lines joined by soft wraps, at a new width.
+// Cells are copied one by one and a wide character that would straddle the margin moves to the
+// next row, as when it was written. Blank cells at the end of a paragraph are not content.
+final class Reflow {
+
+    private final int width;
+    private final List<Line> rows = new ArrayList<>();
+    private Line row;
+    private int column;
+
+    // Where the tracked cursor ended up; cursorColumn == width means a wrap is pending
+    private int cursorRow = -1;
+    private int cursorColumn;
+
+    private Reflow(int width) {
+        this.width = width;
+    }
+
+    // Lays out screen lines, keeping the cursor at (cursorLine, cursorOffset) on the same cell
+    static Reflow of(List<? extends ReadableLine> lines, int cursorLine, int cursorOffset, int width) {
+        Reflow reflow = new Reflow(width);
+        int start = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            if (!lines.get(i).isWrapped() || i == lines.size() - 1) {
+                boolean hasCursor = cursorLine >= start && cursorLine <= i;
+                reflow.add(lines.subList(start, i + 1), hasCursor ? cursorLine - start : -1, cursorOffset);
+                start = i + 1;
+            }
+        }
+        return reflow;
+    }
+
+    // One scrollback paragraph; lines already at the width are returned as they are
+    static List<FrozenLine> paragraph(List<FrozenLine> lines, int width) {
+        boolean unchanged = true;
+        for (FrozenLine line : lines) {
+            unchanged &= line.getWidth() == width;
+        }
+        if (unchanged) {
+            return new ArrayList<>(lines);
+        }
+
+        Reflow reflow = new Reflow(width);
+        reflow.add(lines, -1, 0);
+        List<FrozenLine> frozen = new ArrayList<>(reflow.rows.size());
+        for (Line row : reflow.rows) {
+            frozen.add(row.freeze());
+        }
+        return frozen;
+    }
+
+    List<Line> getRows() {
+        return rows;
+    }
+
+    int getCursorRow() {
+        return cursorRow;
+    }
+
+    int getCursorColumn() {
+        return cursorColumn;
+    }
+
+    private void add(List<? extends ReadableLine> lines, int cursorLine, int cursorOffset) {
+        row = new Line(width);
+        rows.add(row);
+        column = 0;
+
+        // Offsets count source columns from the start of the paragraph
+        int target = -1;
+        int offset = 0;
+        int last = lines.size() - 1;
+        for (int i = 0; i <= last; i++) {
+            ReadableLine line = lines.get(i);
+            if (i == cursorLine) {
+                target = offset + cursorOffset;
+            }
+            int length = i < last ? line.getWidth() : contentLength(line);
+            boolean plain = line instanceof FrozenLine frozen ? frozen.isPlain() : !((Line) line).hasMarkers();
+            for (int sourceColumn = 0; sourceColumn < length; sourceColumn++, offset++) {
+                int cellWidth = Math.min(line.getCellWidth(sourceColumn), width);
+                if (cellWidth == 0) {
+                    continue;
+                }
+                if (column + cellWidth > width) {
+                    wrap();
+                }
+                if (cursorRow < 0 && target >= 0 && offset >= target) {
+                    cursorRow = rows.size() - 1;
+                    cursorColumn = column;
+                }
+                int attributeId = line.getAttributeId(sourceColumn);
+                if (plain) {
+                    row.putCodePoint(column, line.getChar(sourceColumn), 1, attributeId);
+                } else {
+                    row.putText(column, line.getText(sourceColumn), cellWidth, attributeId);
+                }
+                column += cellWidth;
+            }
+        }
+
+        if (cursorRow < 0 && target >= 0) {
+            // The cursor is past the content, so blank rows are added up to it
+            int position = column + target - offset;
+            int rowsAhead = position / width;
+            int cursorAt = position % width;
+            if (cursorAt == 0 && rowsAhead > 0) {
+                rowsAhead--;
+                cursorAt = width;
+            }
+            for (int i = 0; i < rowsAhead; i++) {
+                wrap();
+            }
+            cursorRow = rows.size() - 1;
+            cursorColumn = cursorAt;
+        }
+    }
+
+    private void wrap() {
+        row.setWrapped(true);
+        row = new Line(width);
+        rows.add(row);
+        column = 0;
+    }
+
+    private static int contentLength(ReadableLine line) {
+        if (line instanceof FrozenLine frozen) {
+            return frozen.getTextLength();
+        }
+        int length = line.getWidth();
+        while (length > 0 && line.getChar(length - 1) == ' '
+                && line.getAttributeId(length - 1) == AttributeTable.DEFAULT_ID) {
+            length--;
+        }
+        return length;
+    }
+}
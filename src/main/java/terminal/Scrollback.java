@@ -0,0 +1,485 @@
+package terminal;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+// Lines that have scrolled off the screen, oldest first.
+// Recent lines live in a circular array; with a spill file configured, lines pushed out of the
+// array move to disk and only the total is bounded by maxSize.
+// After a width change the in-memory lines wait in a separate pending region, older than the ring,
+// and are reflowed newest paragraph first by reflow(), each result prepended to the ring. Lines
+// already spilled to disk keep the width they were written at.
+// A buffer restored from a session file starts with that file's scrollback as its oldest lines,
+// decoded from the mapping on each read and evicted first.
+// Methods are synchronized because snapshots read lines from a renderer thread while the writer
+// pushes; each call holds the lock for a single line.
+// A snapshot pins the in-memory lines: the arrays they are in are shared with it, like screen lines,
+// and copied before a line the snapshot can see is cleared or overwritten.
+final class Scrollback extends AbstractList<FrozenLine> implements RandomAccess {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Lines measured to estimate the heap size of the in-memory scrollback
+    private static final int ESTIMATE_SAMPLES = 64;
+
+    private final int maxSize;
+    private final int memoryLimit;
+    private final ScrollbackSpillFile spill;
+    private SessionFile restored;
+
+    private static final FrozenLine[] NO_LINES = new FrozenLine[0];
+
+    private FrozenLine[] lines;
+    private int head;
+    private int size;
+
+    // Lines waiting to be reflowed to reflowWidth, as pending[pendingStart, pendingEnd)
+    private FrozenLine[] pending = NO_LINES;
+    private int pendingStart;
+    private int pendingEnd;
+    private int reflowWidth;
+
+    private long evictedCount;
+
+    // Set while a snapshot holds the current lines and pending arrays
+    private boolean shared;
+
+    Scrollback(int maxSize) {
+        this(maxSize, null, maxSize);
+    }
+
+    Scrollback(int maxSize, ScrollbackSpillFile spill, int memoryLimit) {
+        if (maxSize < 0 || memoryLimit < 0) {
+            throw new IllegalArgumentException("Max size must be non-negative: " + maxSize);
+        }
+
+        this.maxSize = maxSize;
+        this.spill = spill;
+        this.memoryLimit = spill == null ? maxSize : Math.min(memoryLimit, maxSize);
+        this.lines = new FrozenLine[Math.min(this.memoryLimit, INITIAL_CAPACITY)];
+    }
+
+    synchronized void push(FrozenLine line) {
+        if (memoryLimit == 0) {
+            if (spill != null && maxSize > 0) {
+                spill.append(line);
+                trimToMaxSize();
+            } else {
+                evictedCount++;
+            }
+            return;
+        }
+
+        if (inMemorySize() == memoryLimit) {
+            dropOldestInMemory();
+        }
+        if (size == lines.length) {
+            grow();
+        }
+        lines[physicalIndex(size)] = line;
+        size++;
+        if (spill != null || restored != null) {
+            trimToMaxSize();
+        }
+    }
+
+    // Removes and returns the newest line, or null when none is in memory
+    synchronized FrozenLine pop() {
+        unshare();
+        FrozenLine line;
+        if (size > 0) {
+            int index = physicalIndex(size - 1);
+            line = lines[index];
+            lines[index] = null;
+            size--;
+        } else if (pendingEnd > pendingStart) {
+            line = pending[--pendingEnd];
+            pending[pendingEnd] = null;
+        } else {
+            return null;
+        }
+        return line;
+    }
+
+    synchronized FrozenLine peekNewest() {
+        if (size > 0) {
+            return lines[physicalIndex(size - 1)];
+        }
+        return pendingEnd > pendingStart ? pending[pendingEnd - 1] : null;
+    }
+
+    // Queues every in-memory line for reflow to the new width; O(lines in memory) reference copies
+    synchronized void beginReflow(int width) {
+        unshare();
+        int pendingSize = pendingEnd - pendingStart;
+        FrozenLine[] merged = new FrozenLine[pendingSize + size];
+        System.arraycopy(pending, pendingStart, merged, 0, pendingSize);
+        int firstPart = Math.min(size, lines.length - head);
+        System.arraycopy(lines, head, merged, pendingSize, firstPart);
+        System.arraycopy(lines, 0, merged, pendingSize + firstPart, size - firstPart);
+
+        pending = merged;
+        pendingStart = 0;
+        pendingEnd = merged.length;
+        Arrays.fill(lines, null);
+        head = 0;
+        size = 0;
+        reflowWidth = width;
+    }
+
+    // Makes the scrollback of a restored session the history of this empty scrollback
+    synchronized void restore(SessionFile session) {
+        if (size() > 0) {
+            throw new IllegalStateException("Scrollback is not empty");
+        }
+        restored = session;
+        trimToMaxSize();
+    }
+
+    synchronized boolean isReflowPending() {
+        return pendingEnd > pendingStart;
+    }
+
+    // Reflows whole paragraphs from the newest pending line backwards until at least maxLines
+    // source lines were processed; returns true while lines remain pending
+    synchronized boolean reflow(int maxLines) {
+        if (pendingEnd > pendingStart) {
+            unshare();
+        }
+        int processed = 0;
+        while (pendingEnd > pendingStart && processed < maxLines) {
+            int end = pendingEnd;
+            int start = end - 1;
+            while (start > pendingStart && pending[start - 1].isWrapped()) {
+                start--;
+            }
+            processed += end - start;
+
+            List<FrozenLine> rows = Reflow.paragraph(Arrays.asList(pending).subList(start, end), reflowWidth);
+            Arrays.fill(pending, start, end, null);
+            pendingEnd = start;
+
+            // Rows that do not fit in memory are the oldest of the paragraph; they leave first so
+            // the spill file stays in order
+            int excess = rows.size() - (memoryLimit - inMemorySize());
+            while (excess > 0 && pendingEnd > pendingStart) {
+                dropOldestInMemory();
+                excess--;
+            }
+            for (int i = 0; i < excess; i++) {
+                drop(rows.get(i));
+            }
+            for (int i = rows.size() - 1; i >= Math.max(0, excess); i--) {
+                if (size == lines.length) {
+                    grow();
+                }
+                head = head == 0 ? lines.length - 1 : head - 1;
+                lines[head] = rows.get(i);
+                size++;
+            }
+            if (spill != null || restored != null) {
+                trimToMaxSize();
+            }
+        }
+        if (pendingEnd == pendingStart) {
+            pending = NO_LINES;
+            pendingStart = 0;
+            pendingEnd = 0;
+        }
+        return pendingEnd > pendingStart;
+    }
+
+    @Override
+    public synchronized FrozenLine get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Invalid scrollback index: " + index);
+        }
+        int restoredSize = restoredSize();
+        if (index < restoredSize) {
+            return restored.get(index);
+        }
+        index -= restoredSize;
+        int spilled = spilledSize();
+        if (index < spilled) {
+            return spill.get(index);
+        }
+        return inMemoryLine(index - spilled);
+    }
+
+    @Override
+    public synchronized int size() {
+        return restoredSize() + spilledSize() + inMemorySize();
+    }
+
+    @Override
+    public synchronized void clear() {
+        unshare();
+        evictedCount += size();
+        Arrays.fill(lines, null);
+        head = 0;
+        size = 0;
+        pending = NO_LINES;
+        pendingStart = 0;
+        pendingEnd = 0;
+        restored = null;
+        if (spill != null) {
+            spill.clear();
+        }
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    synchronized int getInMemorySize() {
+        return inMemorySize();
+    }
+
+    // Heap size of the in-memory lines, extrapolated from a few spread evenly over them
+    synchronized long estimateInMemoryBytes() {
+        int count = inMemorySize();
+        int samples = Math.min(count, ESTIMATE_SAMPLES);
+        long sampled = 0;
+        for (int i = 0; i < samples; i++) {
+            sampled += inMemoryLine((int) ((long) i * count / samples)).estimatedBytes();
+        }
+        long arrays = 16 + 4L * lines.length + (pending.length > 0 ? 16 + 4L * pending.length : 0);
+        return (samples == 0 ? 0 : sampled * count / samples) + arrays;
+    }
+
+    // Number of lines dropped off the top of the history since the scrollback was created
+    synchronized long getEvictedCount() {
+        return evictedCount;
+    }
+
+    // Line with the given sequence number, counted from the first line ever pushed; null when it has
+    // been evicted or not pushed yet
+    synchronized FrozenLine getBySequence(long sequence) {
+        long index = sequence - evictedCount;
+        if (index < 0 || index >= size()) {
+            return null;
+        }
+        return get((int) index);
+    }
+
+    // The scrollback as it is now, for a snapshot; O(1), the arrays are copied on the next change instead
+    synchronized Pinned pin() {
+        shared = memoryLimit > 0;
+        return new Pinned(this, evictedCount, restoredSize() + spilledSize(),
+                lines, head, size, pending, pendingStart, pendingEnd);
+    }
+
+    // Restored or spilled line with the given sequence number, or null once it was evicted.
+    // A spill file block is read after the lock is released, so paging through old history from a
+    // snapshot does not stall the writer; the read is repeated if the file was compacted meanwhile.
+    private FrozenLine getStoredBySequence(long sequence, Pinned reader) {
+        while (true) {
+            ScrollbackSpillFile.BlockLocation location;
+            synchronized (this) {
+                long index = sequence - evictedCount;
+                if (index < 0 || index >= restoredSize() + spilledSize()) {
+                    return null;
+                }
+                if (index < restoredSize()) {
+                    return restored.get((int) index);
+                }
+                location = spill.locate((int) index - restoredSize());
+                if (location == null) {
+                    return spill.get((int) index - restoredSize());
+                }
+            }
+
+            ByteBuffer block = reader.cachedBlock(location.number);
+            if (block == null) {
+                block = spill.read(location);
+                synchronized (this) {
+                    if (!spill.isCurrent(location)) {
+                        continue;
+                    }
+                }
+                reader.cacheBlock(location.number, block);
+            }
+            return ScrollbackSpillFile.decodeLine(block, location.lineInBlock);
+        }
+    }
+
+    synchronized void close() {
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    private int inMemorySize() {
+        return pendingEnd - pendingStart + size;
+    }
+
+    // Pending lines come before the ring
+    private FrozenLine inMemoryLine(int index) {
+        int pendingSize = pendingEnd - pendingStart;
+        if (index < pendingSize) {
+            return pending[pendingStart + index];
+        }
+        return lines[physicalIndex(index - pendingSize)];
+    }
+
+    // Moves the oldest in-memory line to the spill file, or evicts it without one
+    private void dropOldestInMemory() {
+        unshare();
+        FrozenLine oldest;
+        if (pendingEnd > pendingStart) {
+            oldest = pending[pendingStart];
+            pending[pendingStart++] = null;
+        } else {
+            oldest = lines[head];
+            lines[head] = null;
+            head = physicalIndex(1);
+            size--;
+        }
+        drop(oldest);
+    }
+
+    private void drop(FrozenLine line) {
+        if (spill != null) {
+            spill.append(line);
+            trimToMaxSize();
+        } else {
+            evictedCount++;
+        }
+    }
+
+    private int restoredSize() {
+        return restored == null ? 0 : restored.size();
+    }
+
+    private int spilledSize() {
+        return spill == null ? 0 : spill.size();
+    }
+
+    // Lines in memory are bounded by memoryLimit, so the excess is taken from the restored lines,
+    // then from the spill file
+    private void trimToMaxSize() {
+        while (restoredSize() > 0 && size() > maxSize) {
+            restored.evictOldest();
+            evictedCount++;
+        }
+        while (spilledSize() > 0 && size() > maxSize) {
+            spill.evictOldest();
+            evictedCount++;
+        }
+    }
+
+    // Copies the arrays a snapshot still reads before one of its lines is cleared or overwritten;
+    // appending to a free slot needs no copy
+    private void unshare() {
+        if (shared) {
+            lines = lines.clone();
+            if (pending.length > 0) {
+                pending = pending.clone();
+            }
+            shared = false;
+        }
+    }
+
+    private int physicalIndex(int index) {
+        int physical = head + index;
+        return physical < lines.length ? physical : physical - lines.length;
+    }
+
+    private void grow() {
+        int newCapacity = (int) Math.min(memoryLimit, Math.max(INITIAL_CAPACITY, 2L * lines.length));
+        FrozenLine[] grown = new FrozenLine[newCapacity];
+
+        // Unroll the ring so the oldest line starts at index zero again
+        int firstPart = Math.min(size, lines.length - head);
+        System.arraycopy(lines, head, grown, 0, firstPart);
+        System.arraycopy(lines, 0, grown, firstPart, size - firstPart);
+
+        lines = grown;
+        head = 0;
+    }
+
+    // The scrollback as a snapshot saw it. Lines that were in memory are read from the arrays they
+    // were in, which the scrollback no longer changes, so they survive eviction and reflow. Older
+    // lines are read from the session or spill file by sequence number until they are evicted.
+    static final class Pinned {
+
+        private final Scrollback scrollback;
+        private final long firstSequence;
+        private final int storedSize;
+        private final FrozenLine[] lines;
+        private final int head;
+        private final int size;
+        private final FrozenLine[] pending;
+        private final int pendingStart;
+        private final int pendingEnd;
+
+        // The most recently read spill block; blocks never change, so any reader thread may use it
+        private volatile CachedBlock cachedBlock;
+
+        private Pinned(Scrollback scrollback, long firstSequence, int storedSize, FrozenLine[] lines, int head,
+                       int size, FrozenLine[] pending, int pendingStart, int pendingEnd) {
+            this.scrollback = scrollback;
+            this.firstSequence = firstSequence;
+            this.storedSize = storedSize;
+            this.lines = lines;
+            this.head = head;
+            this.size = size;
+            this.pending = pending;
+            this.pendingStart = pendingStart;
+            this.pendingEnd = pendingEnd;
+        }
+
+        int size() {
+            return storedSize + pendingEnd - pendingStart + size;
+        }
+
+        long getFirstSequence() {
+            return firstSequence;
+        }
+
+        // Index of the oldest line still available; only restored and spilled lines are ever evicted
+        int getFirstAvailable() {
+            return (int) Math.min(storedSize, Math.max(0, scrollback.getEvictedCount() - firstSequence));
+        }
+
+        // The line at index, or null when it was evicted after the scrollback was pinned
+        FrozenLine get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Invalid scrollback index: " + index);
+            }
+            if (index < storedSize) {
+                return scrollback.getStoredBySequence(firstSequence + index, this);
+            }
+            index -= storedSize;
+            int pendingSize = pendingEnd - pendingStart;
+            if (index < pendingSize) {
+                return pending[pendingStart + index];
+            }
+            int physical = head + index - pendingSize;
+            return lines[physical < lines.length ? physical : physical - lines.length];
+        }
+
+        private ByteBuffer cachedBlock(long number) {
+            CachedBlock cached = cachedBlock;
+            return cached != null && cached.number == number ? cached.data : null;
+        }
+
+        private void cacheBlock(long number, ByteBuffer data) {
+            cachedBlock = new CachedBlock(number, data);
+        }
+    }
+
+    private static final class CachedBlock {
+
+        final long number;
+        final ByteBuffer data;
+
+        CachedBlock(long number, ByteBuffer data) {
+            this.number = number;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package terminal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Append-only file holding the oldest scrollback lines in fixed-size blocks.
+// Block layout: int line count, int data length, int offset per line, then the encoded lines.
+// Lines are appended to an in-memory pending block which is written out once it is full.
+final class ScrollbackSpillFile implements Closeable {
+
+    static final int DEFAULT_BLOCK_LINES = 256;
+
+    // Dead space at the start of the file is reclaimed once it outweighs the live data
+    private static final long COMPACT_THRESHOLD = 1 << 20;
+    private static final int COPY_CHUNK = 1 << 16;
+
+    private final FileChannel channel;
+    private final int blockLines;
+
+    // File offsets and lengths of written blocks; live blocks are [firstBlock, blockCount)
+    private long[] blockOffsets = new long[16];
+    private int[] blockLengths = new int[16];
+    private int firstBlock;
+    private int blockCount;
+    private long blockNumberBase;
+    private long fileEnd;
+    private long deadBytes;
+
+    // Lines already evicted from the start of the oldest block
+    private int skipped;
+
+    private ByteBuffer pendingData = ByteBuffer.allocate(1 << 14);
+    private final int[] pendingOffsets;
+    private int pendingCount;
+
+    // The most recently read block, so reading a page of history touches the file once
+    private ByteBuffer readBuffer = ByteBuffer.allocate(1 << 14);
+    private long cachedBlockNumber = -1;
+
+    // Bumped whenever written blocks move or leave the file, which invalidates located blocks
+    private long epoch;
+
+    // A written block located under the owner's lock and read after releasing it, so a slow read
+    // does not hold up the writer. Block contents never change, only their place in the file.
+    static final class BlockLocation {
+        final long number;
+        final int lineInBlock;
+        private final long offset;
+        private final int length;
+        private final long epoch;
+
+        private BlockLocation(long number, int lineInBlock, long offset, int length, long epoch) {
+            this.number = number;
+            this.lineInBlock = lineInBlock;
+            this.offset = offset;
+            this.length = length;
+            this.epoch = epoch;
+        }
+    }
+
+    ScrollbackSpillFile(Path path) {
+        this(path, DEFAULT_BLOCK_LINES);
+    }
+
+    ScrollbackSpillFile(Path path, int blockLines) {
+        if (blockLines <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockLines);
+        }
+
+        this.blockLines = blockLines;
+        this.pendingOffsets = new int[blockLines];
+        // CREATE_NEW so an existing file is never truncated, nor deleted on close
+        try {
+            this.channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create scrollback spill file " + path, e);
+        }
+    }
+
+    int size() {
+        return liveBlocks() * blockLines + pendingCount - skipped;
+    }
+
+    void append(FrozenLine line) {
+        int needed = LineCodec.maxEncodedSize(line);
+        if (pendingData.remaining() < needed) {
+            pendingData = grow(pendingData, pendingData.position() + needed);
+        }
+
+        pendingOffsets[pendingCount++] = pendingData.position();
+        LineCodec.encode(line, pendingData);
+
+        if (pendingCount == blockLines) {
+            flushPending();
+        }
+    }
+
+    FrozenLine get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Invalid spilled line: " + index);
+        }
+
+        int position = index + skipped;
+        int block = position / blockLines;
+        int lineInBlock = position % blockLines;
+
+        if (block == liveBlocks()) {
+            ByteBuffer data = pendingData.duplicate();
+            data.position(pendingOffsets[lineInBlock]);
+            return LineCodec.decode(data);
+        }
+
+        ByteBuffer data = readBlock(firstBlock + block);
+        int lineOffset = data.getInt(8 + 4 * lineInBlock);
+        int headerSize = 8 + 4 * data.getInt(0);
+        data.position(headerSize + lineOffset);
+        return LineCodec.decode(data);
+    }
+
+    // Where line index was written, or null while it is still in the pending block
+    BlockLocation locate(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Invalid spilled line: " + index);
+        }
+
+        int position = index + skipped;
+        int block = position / blockLines;
+        if (block == liveBlocks()) {
+            return null;
+        }
+        block += firstBlock;
+        return new BlockLocation(blockNumberBase + block, position % blockLines,
+                blockOffsets[block], blockLengths[block], epoch);
+    }
+
+    // Reads a located block without touching any other state, so it may run without the owner's lock;
+    // the bytes are only valid if isCurrent still holds for the location afterwards
+    ByteBuffer read(BlockLocation location) {
+        ByteBuffer data = ByteBuffer.allocate(location.length);
+        try {
+            while (data.hasRemaining()) {
+                if (channel.read(data, location.offset + data.position()) < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read scrollback spill block", e);
+        }
+        return data.clear();
+    }
+
+    boolean isCurrent(BlockLocation location) {
+        return location.epoch == epoch;
+    }
+
+    // Decodes from a block returned by read, which may be shared between threads
+    static FrozenLine decodeLine(ByteBuffer block, int lineInBlock) {
+        int lineOffset = block.getInt(8 + 4 * lineInBlock);
+        int headerSize = 8 + 4 * block.getInt(0);
+        return LineCodec.decode(block.duplicate().position(headerSize + lineOffset));
+    }
+
+    void evictOldest() {
+        if (size() == 0) {
+            throw new IllegalStateException("No spilled lines to evict");
+        }
+
+        skipped++;
+        if (liveBlocks() > 0 && skipped == blockLines) {
+            deadBytes += blockLengths[firstBlock];
+            firstBlock++;
+            skipped = 0;
+            compactIfNeeded();
+        }
+    }
+
+    void clear() {
+        try {
+            channel.truncate(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot truncate scrollback spill file", e);
+        }
+        blockNumberBase += blockCount;
+        epoch++;
+        firstBlock = 0;
+        blockCount = 0;
+        fileEnd = 0;
+        deadBytes = 0;
+        skipped = 0;
+        pendingCount = 0;
+        pendingData.clear();
+        cachedBlockNumber = -1;
+    }
+
+    long getFileSize() {
+        return fileEnd;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close scrollback spill file", e);
+        }
+    }
+
+    private int liveBlocks() {
+        return blockCount - firstBlock;
+    }
+
+    private void flushPending() {
+        int dataLength = pendingData.position();
+        ByteBuffer header = ByteBuffer.allocate(8 + 4 * pendingCount);
+        header.putInt(pendingCount).putInt(dataLength);
+        for (int i = 0; i < pendingCount; i++) {
+            header.putInt(pendingOffsets[i]);
+        }
+        header.flip();
+        pendingData.flip();
+
+        long offset = fileEnd;
+        try {
+            long written = 0;
+            long total = header.remaining() + (long) dataLength;
+            while (written < total) {
+                ByteBuffer source = header.hasRemaining() ? header : pendingData;
+                written += channel.write(source, offset + written);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write scrollback spill block", e);
+        }
+
+        if (blockCount == blockOffsets.length) {
+            blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+            blockLengths = Arrays.copyOf(blockLengths, blockCount * 2);
+        }
+        int length = header.capacity() + dataLength;
+        blockOffsets[blockCount] = offset;
+        blockLengths[blockCount] = length;
+        blockCount++;
+        fileEnd = offset + length;
+
+        pendingData.clear();
+        pendingCount = 0;
+    }
+
+    private ByteBuffer readBlock(int block) {
+        long blockNumber = blockNumberBase + block;
+        if (blockNumber == cachedBlockNumber) {
+            return readBuffer;
+        }
+
+        int length = blockLengths[block];
+        if (readBuffer.capacity() < length) {
+            readBuffer = ByteBuffer.allocate(Math.max(length, readBuffer.capacity() * 2));
+        }
+        readBuffer.clear().limit(length);
+
+        try {
+            long position = blockOffsets[block];
+            while (readBuffer.hasRemaining()) {
+                int read = channel.read(readBuffer, position + readBuffer.position());
+                if (read < 0) {
+                    throw new IllegalStateException("Scrollback spill file is truncated");
+                }
+            }
+        } catch (IOException e) {
+            cachedBlockNumber = -1;
+            throw new UncheckedIOException("Cannot read scrollback spill block", e);
+        }
+
+        cachedBlockNumber = blockNumber;
+        return readBuffer;
+    }
+
+    private void compactIfNeeded() {
+        long liveStart = liveBlocks() > 0 ? blockOffsets[firstBlock] : fileEnd;
+        long liveBytes = fileEnd - liveStart;
+        if (deadBytes < COMPACT_THRESHOLD || deadBytes < liveBytes) {
+            return;
+        }
+
+        // Move the live blocks to the start of the file, front to back so the copy never overlaps unread data
+        try {
+            ByteBuffer chunk = ByteBuffer.allocate(COPY_CHUNK);
+            long copied = 0;
+            while (copied < liveBytes) {
+                chunk.clear().limit((int) Math.min(COPY_CHUNK, liveBytes - copied));
+                while (chunk.hasRemaining()) {
+                    channel.read(chunk, liveStart + copied + chunk.position());
+                }
+                chunk.flip();
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk, copied + chunk.position());
+                }
+                copied += chunk.limit();
+            }
+            channel.truncate(liveBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot compact scrollback spill file", e);
+        }
+
+        int live = liveBlocks();
+        for (int i = 0; i < live; i++) {
+            blockOffsets[i] = blockOffsets[firstBlock + i] - liveStart;
+            blockLengths[i] = blockLengths[firstBlock + i];
+        }
+        blockNumberBase += firstBlock;
+        epoch++;
+        firstBlock = 0;
+        blockCount = live;
+        fileEnd = liveBytes;
+        deadBytes = 0;
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int minCapacity) {
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(minCapacity, buffer.capacity() * 2));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+}
@@ -0,0 +1,577 @@
+package terminal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Incremental trigram index over the scrollback with substring and regex search.
+// Lines are indexed as they leave the screen, grouped in blocks of 64 consecutive line sequence
+// numbers; each lower-cased trigram maps to the ascending list of blocks containing it. A query is
+// answered by scanning only the blocks that contain all trigrams of its required literal text.
+// Postings of evicted blocks are skipped and compacted away as history is dropped.
+// The screen is small and changes in place, so it is always scanned directly.
+public final class SearchIndex {
+
+    private static final int BLOCK_SHIFT = 6;
+    private static final int MIN_COMPACTION_BLOCKS = 256;
+
+    private final TerminalBuffer buffer;
+    private final TrigramMap postings = new TrigramMap();
+    private final LineText lineText = new LineText();
+
+    // First block whose postings may still hold evicted entries
+    private long compactedBlock;
+
+    private long linesScanned;
+
+    SearchIndex(TerminalBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    // Called for every line pushed to the scrollback, in sequence order
+    void add(long sequence, FrozenLine line) {
+        int block = (int) (sequence >>> BLOCK_SHIFT);
+        CharSequence text = lineText.load(line).text();
+        int length = text.length();
+        if (length >= 3) {
+            char c0 = lower(text.charAt(0));
+            char c1 = lower(text.charAt(1));
+            for (int i = 2; i < length; i++) {
+                char c2 = lower(text.charAt(i));
+                postings.getOrAdd(trigram(c0, c1, c2)).add(block);
+                c0 = c1;
+                c1 = c2;
+            }
+        }
+
+        if ((sequence & ((1 << BLOCK_SHIFT) - 1)) == 0) {
+            compactIfNeeded();
+        }
+    }
+
+    public SearchMatch findNext(String query, SearchMatch after) {
+        return find(new Query(query), after, true);
+    }
+
+    public SearchMatch findPrevious(String query, SearchMatch before) {
+        return find(new Query(query), before, false);
+    }
+
+    public SearchMatch findNext(Pattern pattern, SearchMatch after) {
+        return find(new Query(pattern), after, true);
+    }
+
+    public SearchMatch findPrevious(Pattern pattern, SearchMatch before) {
+        return find(new Query(pattern), before, false);
+    }
+
+    public List<SearchMatch> findAll(String query) {
+        return findAll(new Query(query));
+    }
+
+    public List<SearchMatch> findAll(Pattern pattern) {
+        return findAll(new Query(pattern));
+    }
+
+    // Number of distinct trigrams, for monitoring the index size
+    public int getTrigramCount() {
+        return postings.size();
+    }
+
+    // Lines read by searches so far, scrollback and screen
+    long getLinesScanned() {
+        return linesScanned;
+    }
+
+    // Forgets every line; the buffer adds the scrollback again after renumbering it
+    void clear() {
+        postings.clear();
+        compactedBlock = 0;
+    }
+
+    private List<SearchMatch> findAll(Query query) {
+        List<SearchMatch> matches = new ArrayList<>();
+        SearchMatch match = find(query, null, true);
+        while (match != null) {
+            matches.add(match);
+            match = find(query, match, true);
+        }
+        return matches;
+    }
+
+    // Searches forward from just after the given match (or the oldest line), or backward from just
+    // before it (or the newest line); returns null when there is no further match
+    private SearchMatch find(Query query, SearchMatch from, boolean forward) {
+        if (query.isEmpty()) {
+            return null;
+        }
+        buffer.refreshSearchIndex();
+
+        long firstSequence = buffer.firstSequence();
+        long scrollbackEnd = buffer.scrollbackEndSequence();
+        long end = scrollbackEnd + buffer.getHeight();
+        Candidates candidates = candidates(query);
+
+        if (forward) {
+            long sequence = from == null ? firstSequence : Math.max(firstSequence, from.sequence());
+            int afterColumn = from == null || from.sequence() < firstSequence ? -1 : from.getStartColumn();
+            while (sequence < end) {
+                if (sequence < scrollbackEnd) {
+                    int block = (int) (sequence >>> BLOCK_SHIFT);
+                    int next = candidates.next(block);
+                    if (next < 0) {
+                        sequence = scrollbackEnd;
+                        afterColumn = -1;
+                        continue;
+                    }
+                    if (next > block) {
+                        sequence = Math.min((long) next << BLOCK_SHIFT, scrollbackEnd);
+                        afterColumn = -1;
+                        continue;
+                    }
+                }
+                SearchMatch match = matchInLine(query, sequence, firstSequence, afterColumn, true);
+                if (match != null) {
+                    return match;
+                }
+                sequence++;
+                afterColumn = -1;
+            }
+        } else {
+            long sequence = from == null ? end - 1 : Math.min(end - 1, from.sequence());
+            int beforeColumn = from == null || from.sequence() >= end ? Integer.MAX_VALUE : from.getStartColumn();
+            while (sequence >= firstSequence) {
+                if (sequence < scrollbackEnd) {
+                    int block = (int) (sequence >>> BLOCK_SHIFT);
+                    int previous = candidates.previous(block);
+                    if (previous < 0 || ((long) previous + 1 << BLOCK_SHIFT) <= firstSequence) {
+                        return null;
+                    }
+                    if (previous < block) {
+                        sequence = ((long) previous + 1 << BLOCK_SHIFT) - 1;
+                        beforeColumn = Integer.MAX_VALUE;
+                        continue;
+                    }
+                }
+                SearchMatch match = matchInLine(query, sequence, firstSequence, beforeColumn, false);
+                if (match != null) {
+                    return match;
+                }
+                sequence--;
+                beforeColumn = Integer.MAX_VALUE;
+            }
+        }
+        return null;
+    }
+
+    // First match starting after boundColumn, or last match starting before it
+    private SearchMatch matchInLine(Query query, long sequence, long firstSequence, int boundColumn, boolean forward) {
+        ReadableLine line = buffer.getLineBySequence(sequence);
+        if (line == null) {
+            return null;
+        }
+        linesScanned++;
+        LineText text = lineText.load(line);
+
+        int foundStart = -1;
+        int foundEnd = -1;
+        int index = 0;
+        while (query.find(text.text(), index)) {
+            int start = query.start();
+            int startColumn = column(text, start);
+            if (forward ? startColumn > boundColumn : startColumn < boundColumn) {
+                foundStart = start;
+                foundEnd = query.end();
+                if (forward) {
+                    break;
+                }
+            } else if (!forward) {
+                break;
+            }
+            index = start + 1;
+        }
+
+        if (foundStart < 0) {
+            return null;
+        }
+        int startColumn = column(text, foundStart);
+        int endColumn = foundEnd == foundStart ? startColumn : text.endColumn(foundEnd);
+        return new SearchMatch(sequence, (int) (sequence - firstSequence), startColumn, endColumn);
+    }
+
+    private static int column(LineText text, int index) {
+        return index < text.length() ? text.startColumn(index) : text.endColumn(text.length());
+    }
+
+    private Candidates candidates(Query query) {
+        String literal = query.literal();
+        if (literal.length() < 3) {
+            return Candidates.ALL;
+        }
+
+        List<Postings> lists = new ArrayList<>();
+        char c0 = lower(literal.charAt(0));
+        char c1 = lower(literal.charAt(1));
+        for (int i = 2; i < literal.length(); i++) {
+            char c2 = lower(literal.charAt(i));
+            Postings list = postings.get(trigram(c0, c1, c2));
+            if (list == null) {
+                return Candidates.NONE;
+            }
+            if (!lists.contains(list)) {
+                lists.add(list);
+            }
+            c0 = c1;
+            c1 = c2;
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        return new Candidates(lists.toArray(new Postings[0]));
+    }
+
+    private void compactIfNeeded() {
+        long firstBlock = buffer.firstSequence() >>> BLOCK_SHIFT;
+        long liveBlocks = (buffer.scrollbackEndSequence() >>> BLOCK_SHIFT) - firstBlock + 1;
+        if (firstBlock - compactedBlock < Math.max(MIN_COMPACTION_BLOCKS, liveBlocks / 2)) {
+            return;
+        }
+
+        postings.removeEmptied((int) firstBlock);
+        compactedBlock = firstBlock;
+    }
+
+    private static long trigram(char c0, char c1, char c2) {
+        return ((long) c0 << 32) | ((long) c1 << 16) | c2;
+    }
+
+    private static char lower(char c) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(c);
+    }
+
+    // Longest run of characters that every match of the regex must contain, or "" when there is
+    // none that can be found safely; alternation, groups and escapes naming code points give up
+    static String requiredLiteral(Pattern pattern) {
+        String regex = pattern.pattern();
+        if ((pattern.flags() & Pattern.LITERAL) != 0) {
+            return regex;
+        }
+        if ((pattern.flags() & Pattern.COMMENTS) != 0 || regex.indexOf('|') >= 0) {
+            return "";
+        }
+
+        String best = "";
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            switch (c) {
+                case '\\' -> {
+                    if (i + 1 == regex.length()) {
+                        return best;
+                    }
+                    char next = regex.charAt(++i);
+                    if (Character.isLetterOrDigit(next)) {
+                        if ("dDsSwWbBAzZGRhHvVX".indexOf(next) < 0) {
+                            return "";
+                        }
+                        best = longer(best, run);
+                        run.setLength(0);
+                    } else if (depth == 0) {
+                        run.append(next);
+                    }
+                }
+                case '[' -> {
+                    best = longer(best, run);
+                    run.setLength(0);
+                    int close = i + 1;
+                    if (close < regex.length() && regex.charAt(close) == '^') {
+                        close++;
+                    }
+                    if (close < regex.length() && regex.charAt(close) == ']') {
+                        close++;
+                    }
+                    while (close < regex.length() && regex.charAt(close) != ']') {
+                        char inner = regex.charAt(close);
+                        if (inner == '[') {
+                            return "";
+                        }
+                        close += inner == '\\' ? 2 : 1;
+                    }
+                    i = close;
+                }
+                case '?', '*', '{' -> {
+                    // The preceding atom is optional
+                    if (run.length() > 0) {
+                        run.setLength(run.length() - 1);
+                    }
+                    best = longer(best, run);
+                    run.setLength(0);
+                    if (c == '{') {
+                        int close = regex.indexOf('}', i);
+                        i = close < 0 ? regex.length() : close;
+                    }
+                }
+                case '(' -> {
+                    best = longer(best, run);
+                    run.setLength(0);
+                    depth++;
+                }
+                case ')' -> {
+                    best = longer(best, run);
+                    run.setLength(0);
+                    depth--;
+                }
+                case '+', '.', '^', '$' -> {
+                    best = longer(best, run);
+                    run.setLength(0);
+                }
+                default -> {
+                    if (depth == 0) {
+                        run.append(c);
+                    }
+                }
+            }
+        }
+        return longer(best, run);
+    }
+
+    private static String longer(String best, StringBuilder run) {
+        return run.length() > best.length() ? run.toString() : best;
+    }
+
+    // A substring or regex query with a reusable matcher
+    private static final class Query {
+
+        private final String literal;
+        private final Matcher matcher;
+        private int start;
+        private int end;
+
+        Query(String text) {
+            this.literal = text;
+            this.matcher = null;
+        }
+
+        Query(Pattern pattern) {
+            this.literal = requiredLiteral(pattern);
+            this.matcher = pattern.matcher("");
+        }
+
+        boolean isEmpty() {
+            return matcher == null && literal.isEmpty();
+        }
+
+        String literal() {
+            return literal;
+        }
+
+        boolean find(CharSequence text, int from) {
+            if (matcher == null) {
+                int index = ((StringBuilder) text).indexOf(literal, from);
+                if (index < 0) {
+                    return false;
+                }
+                start = index;
+                end = index + literal.length();
+                return true;
+            }
+            if (from > text.length()) {
+                return false;
+            }
+            if (from == 0) {
+                matcher.reset(text);
+            }
+            if (!matcher.find(from)) {
+                return false;
+            }
+            start = matcher.start();
+            end = matcher.end();
+            return true;
+        }
+
+        int start() {
+            return start;
+        }
+
+        int end() {
+            return end;
+        }
+    }
+
+    // Blocks that may contain a match: those present in every posting list
+    private static class Candidates {
+
+        static final Candidates ALL = new Candidates(null);
+        static final Candidates NONE = new Candidates(new Postings[]{new Postings()});
+
+        private final Postings[] lists;
+
+        Candidates(Postings[] lists) {
+            this.lists = lists;
+        }
+
+        // Smallest candidate block at or after the given one, -1 if none
+        int next(int block) {
+            if (lists == null) {
+                return block;
+            }
+            Postings driver = lists[0];
+            for (int i = driver.indexAtOrAfter(block); i < driver.size; i++) {
+                int candidate = driver.blocks[i];
+                if (inAllOthers(candidate)) {
+                    return candidate;
+                }
+            }
+            return -1;
+        }
+
+        // Largest candidate block at or before the given one, -1 if none
+        int previous(int block) {
+            if (lists == null) {
+                return block;
+            }
+            Postings driver = lists[0];
+            for (int i = driver.indexAtOrAfter(block + 1) - 1; i >= driver.start; i--) {
+                int candidate = driver.blocks[i];
+                if (inAllOthers(candidate)) {
+                    return candidate;
+                }
+            }
+            return -1;
+        }
+
+        private boolean inAllOthers(int block) {
+            for (int i = 1; i < lists.length; i++) {
+                if (!lists[i].contains(block)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // Posting lists by trigram in an open addressing table, so indexing a line boxes no keys
+    private static final class TrigramMap {
+
+        private long[] keys = new long[64];
+        private Postings[] values = new Postings[64];
+        private int size;
+
+        Postings get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = slot(key, mask); values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return null;
+        }
+
+        Postings getOrAdd(long key) {
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            while (values[slot] != null) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            Postings list = new Postings();
+            keys[slot] = key;
+            values[slot] = list;
+            if (++size > keys.length >>> 1) {
+                rehash(keys.length * 2);
+            }
+            return list;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            keys = new long[64];
+            values = new Postings[64];
+            size = 0;
+        }
+
+        // Drops blocks before firstBlock from every list and removes the lists left empty
+        void removeEmptied(int firstBlock) {
+            for (int slot = 0; slot < values.length; slot++) {
+                if (values[slot] != null && values[slot].dropBefore(firstBlock)) {
+                    values[slot] = null;
+                    size--;
+                }
+            }
+            // Removal breaks probe chains, so the survivors are placed again
+            rehash(Math.max(64, Integer.highestOneBit(Math.max(1, size) * 4)));
+        }
+
+        private void rehash(int capacity) {
+            long[] oldKeys = keys;
+            Postings[] oldValues = values;
+            keys = new long[capacity];
+            values = new Postings[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null) {
+                    int slot = slot(oldKeys[i], mask);
+                    while (values[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        }
+    }
+
+    // Ascending block numbers; entries before start belong to evicted blocks
+    private static final class Postings {
+
+        int[] blocks = new int[4];
+        int start;
+        int size;
+
+        void add(int block) {
+            if (size > start && blocks[size - 1] == block) {
+                return;
+            }
+            if (size == blocks.length) {
+                blocks = Arrays.copyOf(blocks, size * 2);
+            }
+            blocks[size++] = block;
+        }
+
+        int indexAtOrAfter(int block) {
+            int index = Arrays.binarySearch(blocks, start, size, block);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        boolean contains(int block) {
+            return Arrays.binarySearch(blocks, start, size, block) >= 0;
+        }
+
+        // Drops blocks before firstBlock; true when nothing is left
+        boolean dropBefore(int firstBlock) {
+            start = indexAtOrAfter(firstBlock);
+            if (start == size) {
+                return true;
+            }
+            if (start > (size >>> 1)) {
+                blocks = Arrays.copyOfRange(blocks, start, Math.max(size, start + 4));
+                size -= start;
+                start = 0;
+            }
+            return false;
+        }
+    }
+}
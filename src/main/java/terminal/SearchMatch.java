@@ -0,0 +1,55 @@
+package terminal;
+
+// A match of a search as columns [startColumn, endColumn) of a row.
+// globalRow is the row when the match was found; more output moves lines up, so navigation uses
+// the line's sequence number, which stays the same while the line exists.
+public final class SearchMatch {
+
+    private final long sequence;
+    private final int globalRow;
+    private final int startColumn;
+    private final int endColumn;
+
+    SearchMatch(long sequence, int globalRow, int startColumn, int endColumn) {
+        this.sequence = sequence;
+        this.globalRow = globalRow;
+        this.startColumn = startColumn;
+        this.endColumn = endColumn;
+    }
+
+    public int getGlobalRow() {
+        return globalRow;
+    }
+
+    public int getStartColumn() {
+        return startColumn;
+    }
+
+    public int getEndColumn() {
+        return endColumn;
+    }
+
+    long sequence() {
+        return sequence;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SearchMatch that)) return false;
+
+        return sequence == that.sequence &&
+                startColumn == that.startColumn &&
+                endColumn == that.endColumn;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(sequence) * 31 * 31 + startColumn * 31 + endColumn;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchMatch{row=" + globalRow + ", columns=" + startColumn + ".." + endColumn + "}";
+    }
+}
@@ -0,0 +1,353 @@
+package terminal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Versioned binary snapshot of a whole buffer, written by TerminalBuffer.save.
+// Layout: int magic, int version, int width, height and max scrollback, int cursor row and column,
+// byte flags, int scroll top and bottom, int packed current attributes, int saved cursor row and
+// column and packed saved attributes, int attribute count and the packed attributes of every id,
+// int scrollback line count, then the scrollback lines oldest first, the screen rows and, while the
+// alternate screen is shown, the primary screen rows encoded by LineCodec, a long file offset per
+// line, and a trailing long offset of that index.
+// The saved cursor and attributes are those the alternate screen restores on leaving it; they are
+// zero when it is not active.
+// Restoring maps the file and decodes only the screen; scrollback lines stay in the mapping and are
+// decoded when read, so opening a session costs the same whatever its length. Attribute ids are
+// process-wide, so the ids in the file are translated through the saved table.
+final class SessionFile {
+
+    static final int MAGIC = 0x54425346;
+    static final int VERSION = 2;
+
+    private static final byte WRAP_PENDING = 1;
+    private static final byte ALTERNATE_SCREEN = 2;
+    private static final byte SAVED_WRAP_PENDING = 4;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ByteBuffer data;
+    private final int[] attributeIds;
+    private final long indexOffset;
+    private final int lineCount;
+
+    private final int width;
+    private final int height;
+    private final int maxScrollback;
+    private final int cursorRow;
+    private final int cursorColumn;
+    private final boolean wrapPending;
+    private final int scrollTop;
+    private final int scrollBottom;
+    private final CellAttributes currentAttributes;
+    private final boolean alternateScreen;
+    private final int savedCursorRow;
+    private final int savedCursorColumn;
+    private final boolean savedWrapPending;
+    private final CellAttributes savedAttributes;
+
+    // Scrollback lines already evicted from the start of the restored history
+    private int skipped;
+
+    private SessionFile(ByteBuffer data) {
+        this.data = data;
+        if (data.getInt() != MAGIC) {
+            throw new IllegalStateException("Not a terminal session file");
+        }
+        int version = data.getInt();
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported session file version: " + version);
+        }
+
+        width = data.getInt();
+        height = data.getInt();
+        maxScrollback = data.getInt();
+        cursorRow = data.getInt();
+        cursorColumn = data.getInt();
+        byte flags = data.get();
+        wrapPending = (flags & WRAP_PENDING) != 0;
+        alternateScreen = (flags & ALTERNATE_SCREEN) != 0;
+        savedWrapPending = (flags & SAVED_WRAP_PENDING) != 0;
+        scrollTop = data.getInt();
+        scrollBottom = data.getInt();
+        currentAttributes = attributes(data.getInt()).copy();
+        savedCursorRow = data.getInt();
+        savedCursorColumn = data.getInt();
+        savedAttributes = attributes(data.getInt()).copy();
+        if (width < 0 || height < 0 || maxScrollback < 0 || !validCursor(cursorRow, cursorColumn)
+                || !validCursor(savedCursorRow, savedCursorColumn)
+                || (height > 0 && (scrollTop < 0 || scrollTop > scrollBottom || scrollBottom >= height))) {
+            throw new IllegalStateException("Corrupted session header");
+        }
+
+        // Translated once here; identity when the file was written by this process
+        int attributeCount = data.getInt();
+        int[] ids = new int[attributeCount];
+        boolean identity = true;
+        for (int id = 0; id < attributeCount; id++) {
+            ids[id] = AttributeTable.intern(attributes(data.getInt()));
+            identity &= ids[id] == id;
+        }
+        attributeIds = identity ? null : ids;
+
+        int scrollbackCount = data.getInt();
+        indexOffset = data.getLong(data.limit() - 8);
+        if (scrollbackCount < 0 || indexOffset < data.position()
+                || indexOffset + 8L * ((long) scrollbackCount + screenCount()) != data.limit() - 8) {
+            throw new IllegalStateException("Corrupted session index");
+        }
+        lineCount = scrollbackCount;
+    }
+
+    private boolean validCursor(int row, int column) {
+        return row >= 0 && row < Math.max(1, height) && column >= 0 && column < Math.max(1, width);
+    }
+
+    // Screens stored after the scrollback: the one shown, then the primary one behind the alternate screen
+    private int screenCount() {
+        return alternateScreen ? 2 * height : height;
+    }
+
+    static void write(TerminalBuffer buffer, Path path) throws IOException {
+        // Lines are read one at a time, so spilled and restored scrollback is never all on the heap
+        int scrollbackCount = buffer.getScrollbackSize();
+        int height = buffer.getHeight();
+        boolean alternate = buffer.isAlternateScreenActive();
+        long[] offsets = new long[scrollbackCount + (alternate ? 2 * height : height)];
+
+        // The file is written next to the target and moved over it, so a buffer restored from the target,
+        // which still reads its scrollback from the mapping, keeps the old file until it is done with it
+        Path target = path.toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName() + ".", ".tmp");
+        boolean moved = false;
+        try {
+            writeTo(temp, buffer, scrollbackCount, height, alternate, offsets);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private static void writeTo(Path path, TerminalBuffer buffer, int scrollbackCount, int height, boolean alternate,
+                                long[] offsets) throws IOException {
+        try (Output output = new Output(path)) {
+            // Ids above the count are not used by any line written below
+            int attributeCount = AttributeTable.size();
+            ByteBuffer out = output.reserve(76 + 4 * attributeCount);
+            out.putInt(MAGIC).putInt(VERSION);
+            out.putInt(buffer.getWidth()).putInt(height).putInt(buffer.getMaxScrollback());
+            out.putInt(buffer.getCursor().getRow()).putInt(buffer.getCursor().getColumn());
+            out.put((byte) ((buffer.isWrapPending() ? WRAP_PENDING : 0) | (alternate ? ALTERNATE_SCREEN : 0)
+                    | (alternate && buffer.isSavedWrapPending() ? SAVED_WRAP_PENDING : 0)));
+            out.putInt(buffer.getScrollTop()).putInt(buffer.getScrollBottom());
+            out.putInt(buffer.getCurrentAttributes().pack());
+            if (alternate) {
+                out.putInt(buffer.getSavedCursorRow()).putInt(buffer.getSavedCursorColumn());
+                out.putInt(buffer.getSavedAttributes().pack());
+            } else {
+                out.putInt(0).putInt(0).putInt(AttributeTable.get(AttributeTable.DEFAULT_ID).pack());
+            }
+            out.putInt(attributeCount);
+            for (int id = 0; id < attributeCount; id++) {
+                out.putInt(AttributeTable.get(id).pack());
+            }
+            out.putInt(scrollbackCount);
+
+            for (int i = 0; i < offsets.length; i++) {
+                FrozenLine line;
+                if (i < scrollbackCount) {
+                    line = buffer.scrollbackLine(i);
+                } else if (i < scrollbackCount + height) {
+                    line = buffer.screenLine(i - scrollbackCount).freeze();
+                } else {
+                    line = buffer.primaryScreenLine(i - scrollbackCount - height).freeze();
+                }
+                out = output.reserve(LineCodec.maxEncodedSize(line));
+                offsets[i] = output.position();
+                LineCodec.encode(line, out);
+            }
+
+            long indexOffset = output.position();
+            for (long offset : offsets) {
+                output.reserve(8).putLong(offset);
+            }
+            output.reserve(8).putLong(indexOffset);
+        }
+    }
+
+    static SessionFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Session file too large to map: " + size + " bytes");
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new SessionFile(mapped);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalStateException("Corrupted session file", e);
+        }
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    int getMaxScrollback() {
+        return maxScrollback;
+    }
+
+    int getCursorRow() {
+        return cursorRow;
+    }
+
+    int getCursorColumn() {
+        return cursorColumn;
+    }
+
+    boolean isWrapPending() {
+        return wrapPending;
+    }
+
+    int getScrollTop() {
+        return scrollTop;
+    }
+
+    int getScrollBottom() {
+        return scrollBottom;
+    }
+
+    CellAttributes getCurrentAttributes() {
+        return currentAttributes;
+    }
+
+    boolean isAlternateScreen() {
+        return alternateScreen;
+    }
+
+    int getSavedCursorRow() {
+        return savedCursorRow;
+    }
+
+    int getSavedCursorColumn() {
+        return savedCursorColumn;
+    }
+
+    boolean isSavedWrapPending() {
+        return savedWrapPending;
+    }
+
+    CellAttributes getSavedAttributes() {
+        return savedAttributes;
+    }
+
+    // Row of the screen shown when saved, decoded into a new line of the saved width
+    Line screenLine(int row) {
+        if (row < 0 || row >= height) {
+            throw new IndexOutOfBoundsException("Invalid row: " + row);
+        }
+        return decode(lineCount + row).thaw();
+    }
+
+    // Row of the primary screen behind the alternate one
+    Line primaryScreenLine(int row) {
+        if (!alternateScreen || row < 0 || row >= height) {
+            throw new IndexOutOfBoundsException("Invalid primary screen row: " + row);
+        }
+        return decode(lineCount + height + row).thaw();
+    }
+
+    // Scrollback lines still available, oldest first
+    int size() {
+        return lineCount - skipped;
+    }
+
+    FrozenLine get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Invalid restored line: " + index);
+        }
+        return decode(skipped + index);
+    }
+
+    void evictOldest() {
+        if (size() == 0) {
+            throw new IllegalStateException("No restored lines to evict");
+        }
+        skipped++;
+    }
+
+    private FrozenLine decode(int line) {
+        try {
+            long offset = data.getLong((int) (indexOffset + 8L * line));
+            return LineCodec.decode(data.duplicate().position((int) offset), attributeIds);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IllegalStateException("Corrupted session line " + line, e);
+        }
+    }
+
+    private static CellAttributes attributes(int packed) {
+        if (packed < 0 || packed >= 1 << CellAttributes.PACKED_BITS) {
+            throw new IllegalStateException("Corrupted attributes: " + packed);
+        }
+        return CellAttributes.shared(packed);
+    }
+
+    // Buffered sequential writes to a new file
+    private static final class Output implements Closeable {
+
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long flushed;
+
+        Output(Path path) throws IOException {
+            channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        // The buffer, with room for at least the given number of bytes
+        ByteBuffer reserve(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+                if (buffer.capacity() < bytes) {
+                    buffer = ByteBuffer.allocate(bytes);
+                }
+            }
+            return buffer;
+        }
+
+        long position() {
+            return flushed + buffer.position();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                flushed += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
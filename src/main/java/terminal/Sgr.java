@@ -0,0 +1,75 @@
+package terminal;
+
+import java.util.Arrays;
+
+// SGR (Select Graphic Rendition) escape sequences for cell attributes
+final class Sgr {
+
+    static final String RESET = "\u001b[0m";
+
+    private static final Style[] STYLES = Style.values();
+
+    // Cached sequences by attribute id; attributes never change once interned
+    private static volatile String[] sequencesById = new String[64];
+
+    private Sgr() {
+    }
+
+    // Full sequence that resets the terminal state and then applies the attributes
+    static String sequence(int attributeId) {
+        String[] cache = sequencesById;
+        if (attributeId < cache.length && cache[attributeId] != null) {
+            return cache[attributeId];
+        }
+
+        String sequence = build(AttributeTable.get(attributeId));
+        if (attributeId >= cache.length) {
+            cache = Arrays.copyOf(cache, Math.max(attributeId + 1, cache.length * 2));
+        }
+        cache[attributeId] = sequence;
+        sequencesById = cache;
+        return sequence;
+    }
+
+    static int styleCode(Style style) {
+        return switch (style) {
+            case DEFAULT -> -1;
+            case BOLD -> 1;
+            case ITALIC -> 3;
+            case UNDERLINE -> 4;
+            case STRIKETHROUGH -> 9;
+        };
+    }
+
+    static int foregroundCode(Color color) {
+        return colorCode(color, 30, 90, 39);
+    }
+
+    static int backgroundCode(Color color) {
+        return colorCode(color, 40, 100, 49);
+    }
+
+    private static int colorCode(Color color, int normalBase, int brightBase, int defaultCode) {
+        if (color == Color.DEFAULT) {
+            return defaultCode;
+        }
+        int index = color.ordinal() - Color.BLACK.ordinal();
+        return index < 8 ? normalBase + index : brightBase + index - 8;
+    }
+
+    private static String build(CellAttributes attributes) {
+        StringBuilder sb = new StringBuilder("\u001b[0");
+        for (Style style : STYLES) {
+            if (attributes.hasStyle(style) && styleCode(style) >= 0) {
+                sb.append(';').append(styleCode(style));
+            }
+        }
+        if (attributes.getForeground() != Color.DEFAULT) {
+            sb.append(';').append(foregroundCode(attributes.getForeground()));
+        }
+        if (attributes.getBackground() != Color.DEFAULT) {
+            sb.append(';').append(backgroundCode(attributes.getBackground()));
+        }
+        return sb.append('m').toString();
+    }
+}
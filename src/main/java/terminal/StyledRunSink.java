@@ -0,0 +1,12 @@
+package terminal;
+
+// Receiver of a row read as maximal runs of cells with equal attributes, such as a renderer drawing
+// each run with one text shaping call.
+// The attributes are the shared immutable instances from AttributeTable. The text holds the run's
+// grapheme clusters, nothing for right halves of wide characters, and is only valid during the call:
+// it is the caller's StringBuilder, reused for the next run.
+@FunctionalInterface
+public interface StyledRunSink {
+
+    void run(int column, int cells, CellAttributes attributes, CharSequence text);
+}
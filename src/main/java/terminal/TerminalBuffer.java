@@ -1,96 +1,397 @@
 package terminal;
 
-import java.util.ArrayDeque;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Deque;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
-public class TerminalBuffer {
+public class TerminalBuffer implements AutoCloseable {
 
-    private final int width;
-    private final int height;
+    private static final int TAB_WIDTH = 8;
+
+    // Scrollback lines reflowed after each scroll while a resize left some at an old width
+    private static final int REFLOW_LINES_PER_SCROLL = 16;
+
+    // Distinct recent lines remembered for sharing identical scrollback lines; each keeps a copy of
+    // its cells, about 4 bytes per column
+    private static final int INTERNED_LINES = 256;
+
+    private int width;
+    private int height;
     private final int maxScrollback;
 
-    private final List<Line> screen;
-    private final Deque<Line> scrollback;
+    // Circular array of visible lines; screenTop is the slot holding row 0
+    private Line[] screen;
+    private int screenTop;
+
+    // The screen not on display: the alternate one, kept for reuse, or the primary one while the
+    // alternate screen is active, together with the cursor state to restore when leaving it
+    private Line[] inactiveScreen;
+    private int inactiveScreenTop;
+    private boolean alternateScreen;
+    private int savedCursorRow;
+    private int savedCursorColumn;
+    private boolean savedWrapPending;
+    private CellAttributes savedAttributes;
+
+    // Scroll region margins, inclusive screen rows; the whole screen unless set with setScrollRegion
+    private int scrollTop;
+    private int scrollBottom;
+
+    private final Scrollback scrollback;
+    private boolean scrollbackReflowPending;
+    private final LineInterner interner = new LineInterner(INTERNED_LINES);
 
     private boolean wrapPending = false;
 
+    // The cursor is where the last written character left it. Only then does a cluster ending with a
+    // zero width joiner take the next character, so a mirror can separate cells with a cursor move.
+    private boolean joinable;
+
+    // High surrogate at the end of the last write, waiting for its low surrogate
+    private char pendingHighSurrogate;
+
+    // Lines scrolled since damage was last collected
+    private int scrollDelta;
+
+    // Totals reported by getMetrics
+    private long charactersWritten;
+    private long linesScrolled;
+
     private final Cursor cursor;
     private CellAttributes currentAttributes;
 
+    // Created on first use, then kept up to date as lines scroll off the screen; a resize
+    // renumbers the scrollback, so the index is rebuilt before its next query
+    private SearchIndex searchIndex;
+    private boolean searchIndexStale;
+
+    // Erased cells keep the current background color, like xterm
+    private final CellAttributes eraseAttributes = new CellAttributes();
+
     public TerminalBuffer(int width, int height, int maxScrollback) {
+        this(width, height, maxScrollback, null, maxScrollback);
+    }
+
+    // With a spill file, only the newest inMemoryScrollback lines of history stay on the heap and
+    // older ones are written to the file in blocks; a null spill file keeps all history in memory
+    public TerminalBuffer(int width, int height, int maxScrollback, Path spillFile, int inMemoryScrollback) {
         if (width < 0 || height < 0 || maxScrollback < 0) {
             throw new IllegalArgumentException("Width, height, and max scrollback must be non-negative");
         }
+        if (inMemoryScrollback < 0) {
+            throw new IllegalArgumentException("In-memory scrollback must be non-negative");
+        }
 
         this.width = width;
         this.height = height;
         this.maxScrollback = maxScrollback;
 
-        this.screen = new ArrayList<>(height);
-        for (int i = 0; i < height; i++) {
-            screen.add(new Line(width));
-        }
+        this.screen = blankLines(width, height);
+        this.scrollBottom = height - 1;
 
-        this.scrollback = new ArrayDeque<>(maxScrollback);
+        this.scrollback = spillFile == null
+                ? new Scrollback(maxScrollback)
+                : new Scrollback(maxScrollback, new ScrollbackSpillFile(spillFile), inMemoryScrollback);
 
         this.cursor = new Cursor();
         this.currentAttributes = new CellAttributes();
     }
 
     public CellAttributes getAttributesAt(int globalRow, int column) {
-        Line line = getLineInternal(globalRow);
-        Cell cell = line.getCell(column);
-        return cell.getAttributes();
+        ReadableLine line = getLineInternal(globalRow);
+        return line.getAttributes(column);
     }
 
-    private Line getLineInternal(int globalRow) {
-        int totalLines = scrollback.size() + screen.size();
+    private ReadableLine getLineInternal(int globalRow) {
+        int totalLines = scrollback.size() + height;
 
         if (globalRow < 0 || globalRow >= totalLines) {
             throw new IndexOutOfBoundsException("Invalid row: " + globalRow);
         }
 
         if(globalRow < scrollback.size()) {
-            return new ArrayList<>(scrollback).get(globalRow);
+            return scrollback.get(globalRow);
         } else {
             int screenIndex = globalRow - scrollback.size();
-            return screen.get(screenIndex);
+            return screenLine(screenIndex);
         }
     }
 
     private void scrollUp() {
-        Line removed = screen.remove(0);
-        scrollback.addLast(removed);
+        // Lines never change after leaving the screen, so scrollback keeps a compact copy
+        // and the top line is cleared and reused as the new blank bottom line
+        Line top = screen[screenTop];
+        if (!alternateScreen) {
+            pushToScrollback(top);
+        }
+        if (top.isShared()) {
+            // A snapshot still reads the old line, so the new bottom row gets a fresh one
+            screen[screenTop] = new Line(width);
+        } else {
+            top.clear();
+        }
 
-        if (scrollback.size() > maxScrollback) {
-            scrollback.removeFirst();
+        // The old top slot becomes the bottom row once the top index moves down
+        screenTop = screenTop + 1 == height ? 0 : screenTop + 1;
+        scrollDelta++;
+        linesScrolled++;
+    }
+
+    private void pushToScrollback(Line line) {
+        FrozenLine frozen = pushInterned(line);
+        if (searchIndex != null && !searchIndexStale) {
+            searchIndex.add(scrollbackEndSequence() - 1, frozen);
+        }
+        if (scrollbackReflowPending) {
+            reflowScrollback(REFLOW_LINES_PER_SCROLL);
         }
+    }
+
+    // Push without indexing or reflow, for resize, which leaves both to be caught up afterwards
+    private FrozenLine pushInterned(Line line) {
+        FrozenLine frozen = interner.intern(line);
+        scrollback.push(frozen);
+        return frozen;
+    }
+
+    Line screenLine(int row) {
+        return screen[slot(row)];
+    }
+
+    private int slot(int row) {
+        int slot = screenTop + row;
+        return slot < height ? slot : slot - height;
+    }
 
-        screen.add(new Line(width));
+    // Line about to be modified; one shared with a snapshot is replaced by a private copy first
+    private Line writableLine(int row) {
+        int slot = slot(row);
+        Line line = screen[slot];
+        if (line.isShared()) {
+            line = line.copy();
+            screen[slot] = line;
+        }
+        return line;
     }
 
     public void write(String text) {
-        for (char c : text.toCharArray()) {
-            putChar(c);
+        write(text, null, 0, text.length());
+    }
+
+    public void write(char[] text, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > text.length - length) {
+            throw new IndexOutOfBoundsException("Invalid range: offset " + offset + ", length " + length);
+        }
+        write(null, text, offset, length);
+    }
+
+    // Shared by both overloads: the text comes from string or, when that is null, from chars
+    private void write(String string, char[] chars, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        checkWritable();
+        WriteEvent event = new WriteEvent();
+        event.begin();
+        long scrolledBefore = linesScrolled;
+
+        int attributeId = AttributeTable.intern(currentAttributes);
+        int end = offset + length;
+        int position = offset;
+        while (position < end) {
+            if (!CharWidth.isSimple(charAt(string, chars, position)) || pendingHighSurrogate != 0) {
+                writeUnit(charAt(string, chars, position++), attributeId);
+                continue;
+            }
+
+            // Narrow single-char cells are copied to the line in runs up to the margin
+            resolvePendingWrap();
+            int column = cursor.getColumn();
+            int limit = position + Math.min(end - position, width - column);
+            int runEnd = position + 1;
+            while (runEnd < limit && CharWidth.isSimple(charAt(string, chars, runEnd))) {
+                runEnd++;
+            }
+            int run = runEnd - position;
+            Line line = writableLine(cursor.getRow());
+            if (string != null) {
+                line.overwrite(column, string, position, run, attributeId);
+            } else {
+                line.overwrite(column, chars, position, run, attributeId);
+            }
+            position = runEnd;
+            advanceAfterRun(column, run);
+        }
+        charactersWritten += length;
+        commitWrite(event, length, false, scrolledBefore);
+    }
+
+    private static char charAt(String string, char[] chars, int index) {
+        return string != null ? string.charAt(index) : chars[index];
+    }
+
+    private void commitWrite(WriteEvent event, int characters, boolean insert, long scrolledBefore) {
+        if (event.shouldCommit()) {
+            event.characters = characters;
+            event.insert = insert;
+            event.linesScrolled = linesScrolled - scrolledBefore;
+            event.commit();
+        }
+    }
+
+    // Slow path for one char, pairing surrogates even when they arrive in separate calls
+    private void writeUnit(char c, int attributeId) {
+        char high = pendingHighSurrogate;
+        pendingHighSurrogate = 0;
+        if (high != 0) {
+            if (Character.isLowSurrogate(c)) {
+                writeCodePoint(Character.toCodePoint(high, c), attributeId);
+                return;
+            }
+            writeCodePoint(Line.REPLACEMENT, attributeId);
+        }
+
+        if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = c;
+        } else {
+            writeCodePoint(Character.isLowSurrogate(c) ? Line.REPLACEMENT : c, attributeId);
+        }
+    }
+
+    private void writeCodePoint(int codePoint, int attributeId) {
+        int cellWidth = CharWidth.of(codePoint);
+        if (cellWidth == 0 || (joinable && joinsPreviousCell())) {
+            int previous = previousCellColumn();
+            if (previous >= 0) {
+                writableLine(cursor.getRow()).appendToCell(previous, codePoint);
+                joinable = true;
+                return;
+            }
+            // Nothing to combine with, so the mark gets a cell of its own
+            cellWidth = Math.max(cellWidth, 1);
+        }
+        if (cellWidth > width) {
+            cellWidth = width;
+        }
+
+        resolvePendingWrap();
+        if (cellWidth == 2 && cursor.getColumn() == width - 1) {
+            // A wide character never straddles the margin; it wraps and leaves the last column as is
+            writableLine(cursor.getRow()).setWrapped(true);
+            cursorNextLine();
+        }
+        int column = cursor.getColumn();
+        writableLine(cursor.getRow()).putCodePoint(column, codePoint, cellWidth, attributeId);
+        advanceAfterRun(column, cellWidth);
+        joinable = true;
+    }
+
+    // The cell combining characters attach to: the one left of the cursor, or under it while a
+    // wrap is pending; -1 at the start of a line
+    private int previousCellColumn() {
+        int column = wrapPending ? cursor.getColumn() : cursor.getColumn() - 1;
+        if (column > 0 && screenLine(cursor.getRow()).getCellWidth(column) == 0) {
+            column--;
+        }
+        return column;
+    }
+
+    private boolean joinsPreviousCell() {
+        int previous = previousCellColumn();
+        return previous >= 0 && screenLine(cursor.getRow()).endsWithJoiner(previous);
+    }
+
+    // Runs never cross the right margin, so the cursor and wrapPending are updated once per run
+    private void advanceAfterRun(int column, int run) {
+        int lastColumn = column + run - 1;
+        if (lastColumn == width - 1) {
+            cursor.setPosition(cursor.getRow(), lastColumn);
+            wrapPending = true;
+        } else {
+            cursor.setPosition(cursor.getRow(), lastColumn + 1);
+        }
+    }
+
+    private void resolvePendingWrap() {
+        if (wrapPending) {
+            writableLine(cursor.getRow()).setWrapped(true);
+            cursorNextLine();
+            wrapPending = false;
+        }
+    }
+
+    private void checkWritable() {
+        if (width == 0 || height == 0) {
+            throw new IndexOutOfBoundsException("Cannot write to an empty screen");
         }
     }
 
     public void insert(String text) {
-        for (char c : text.toCharArray()) {
-            insertChar(c);
+        WriteEvent event = new WriteEvent();
+        event.begin();
+        long scrolledBefore = linesScrolled;
+        int inserted = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            int chars = Character.charCount(codePoint);
+            i += chars;
+            // codePointAt returns an unpaired surrogate as is
+            boolean unpaired = Character.isBmpCodePoint(codePoint) && Character.isSurrogate((char) codePoint);
+            if (insertCodePoint(unpaired ? Line.REPLACEMENT : codePoint)) {
+                inserted += chars;
+            }
         }
+        charactersWritten += inserted;
+        commitWrite(event, inserted, true, scrolledBefore);
     }
 
     public void insertChar(char c) {
+        if (insertCodePoint(Character.isSurrogate(c) ? Line.REPLACEMENT : c)) {
+            charactersWritten++;
+        }
+    }
+
+    // Returns false when the character did not fit and was dropped
+    private boolean insertCodePoint(int codePoint) {
+        int cellWidth = CharWidth.of(codePoint);
+        if (cellWidth == 0) {
+            int previous = previousCellColumn();
+            if (previous >= 0) {
+                writableLine(cursor.getRow()).appendToCell(previous, codePoint);
+                return true;
+            }
+            cellWidth = 1;
+        }
+
         wrapPending = false;
-        Line line = screen.get(cursor.getRow());
+        Line line = writableLine(cursor.getRow());
+        int column = cursor.getColumn();
+        if (cellWidth > width) {
+            cellWidth = width;
+        }
+        if (cellWidth == 2 && column == width - 1) {
+            // As in write, a wide character never straddles the margin: the last cell is blanked and
+            // the character goes to the next row, or is dropped on the last one
+            line.erase(column, width, AttributeTable.DEFAULT_ID);
+            if (cursor.getRow() == height - 1) {
+                return false;
+            }
+            line.setWrapped(true);
+            cursorNextLine();
+            line = writableLine(cursor.getRow());
+            column = 0;
+        }
 
-        line.insert(cursor.getColumn(), String.valueOf(c), currentAttributes);
+        line.insertCodePoint(column, codePoint, cellWidth, AttributeTable.intern(currentAttributes));
 
-        int nextCol = cursor.getColumn() + 1;
+        int nextCol = column + cellWidth;
 
         if (nextCol >= width) {
             if (cursor.getRow() < height - 1) {
@@ -101,6 +402,7 @@ public class TerminalBuffer {
         } else {
             cursorSetPosition(cursor.getRow(), nextCol);
         }
+        return true;
     }
 
     public String getLineAsString(int globalRow) {
@@ -108,8 +410,22 @@ public class TerminalBuffer {
     }
 
     public char getCharAt(int globalRow, int column) {
-        Line line = getLineInternal(globalRow);
-        return line.getCell(column).getCharacter();
+        ReadableLine line = getLineInternal(globalRow);
+        return line.getChar(column);
+    }
+
+    public int getCodePointAt(int globalRow, int column) {
+        return getLineInternal(globalRow).getCodePoint(column);
+    }
+
+    // The cell's whole grapheme cluster; empty for the right half of a wide character
+    public String getTextAt(int globalRow, int column) {
+        return getLineInternal(globalRow).getText(column);
+    }
+
+    // The row as runs of equal attributes, for renderers; see ReadableLine.readStyledRuns
+    public void readStyledRuns(int globalRow, StringBuilder text, StyledRunSink sink) {
+        getLineInternal(globalRow).readStyledRuns(text, sink);
     }
 
     public void insertEmptyLineAtBottom() {
@@ -117,22 +433,16 @@ public class TerminalBuffer {
     }
 
     public void putChar(char c) {
-
-        if (wrapPending) {
-            if (cursor.getRow() == height - 1) {
-                scrollUp();
-                cursorSetPosition(height - 1, 0);
-            } else {
-                cursorNextLine();
-            }
-            wrapPending = false;
+        charactersWritten++;
+        if (!CharWidth.isSimple(c) || pendingHighSurrogate != 0) {
+            checkWritable();
+            writeUnit(c, AttributeTable.intern(currentAttributes));
+            return;
         }
+        resolvePendingWrap();
 
-        Line line = screen.get(cursor.getRow());
-
-        Cell cell = new Cell(c, currentAttributes.copy());
-
-        line.setCell(cursor.getColumn(), cell);
+        Line line = writableLine(cursor.getRow());
+        line.put(cursor.getColumn(), c, AttributeTable.intern(currentAttributes));
 
         if (cursor.getColumn() == width - 1) {
             wrapPending = true;
@@ -144,10 +454,9 @@ public class TerminalBuffer {
 
     public String getScreenAsString() {
         StringBuilder sb = new StringBuilder();
-        for (Line line : screen) {
-            for (int i = 0; i < width; i++) {
-                sb.append(line.getCell(i).getCharacter());
-            }
+        for (int row = 0; row < height; row++) {
+            Line line = screenLine(row);
+            line.appendTo(sb);
             sb.append('\n');
         }
         return sb.toString();
@@ -156,21 +465,25 @@ public class TerminalBuffer {
     public void cursorMoveUp(int n) {
         int newRow = Math.max(0, cursor.getRow() - n);
         cursor.setPosition(newRow, cursor.getColumn());
+        joinable = false;
     }
 
     public void cursorMoveDown(int n) {
         int newRow = Math.min(height - 1, cursor.getRow() + n);
         cursor.setPosition(newRow, cursor.getColumn());
+        joinable = false;
     }
 
     public void cursorMoveLeft(int n) {
         int newColumn = Math.max(0, cursor.getColumn() - n);
         cursor.setPosition(cursor.getRow(), newColumn);
+        joinable = false;
     }
 
     public void cursorMoveRight(int n) {
         int newColumn = Math.min(width - 1, cursor.getColumn() + n);
         cursor.setPosition(cursor.getRow(), newColumn);
+        joinable = false;
     }
 
     public void cursorSetPosition(int row, int column) {
@@ -178,15 +491,194 @@ public class TerminalBuffer {
         int newColumn = Math.max(0, Math.min(width - 1, column));
         cursor.setPosition(newRow, newColumn);
         wrapPending = false;
+        joinable = false;
     }
 
     public void cursorNextLine() {
-        if(cursor.getRow() == height - 1) {
-            scrollUp();
-            cursorSetPosition(height-1, 0);
+        lineFeed();
+        cursorSetPosition(cursor.getRow(), 0);
+    }
+
+    // Moves the cursor down one row, scrolling the region at its bottom margin, without changing the column
+    public void lineFeed() {
+        int row = cursor.getRow();
+        if (row == scrollBottom) {
+            scrollRegionUp(1);
+            cursorSetPosition(row, cursor.getColumn());
+        } else {
+            cursorSetPosition(row + 1, cursor.getColumn());
+        }
+    }
+
+    // Moves the cursor up one row, scrolling the region down at its top margin
+    public void reverseLineFeed() {
+        int row = cursor.getRow();
+        if (row == scrollTop) {
+            scrollRegionDown(1);
+            cursorSetPosition(row, cursor.getColumn());
         } else {
-            cursorSetPosition(cursor.getRow() + 1, 0);
+            cursorSetPosition(row - 1, cursor.getColumn());
+        }
+    }
+
+    // Limits scrolling to rows [top, bottom] and homes the cursor, like DECSTBM
+    public void setScrollRegion(int top, int bottom) {
+        if (top < 0 || bottom >= height || top >= bottom) {
+            throw new IllegalArgumentException("Invalid scroll region: " + top + ".." + bottom);
+        }
+        scrollTop = top;
+        scrollBottom = bottom;
+        cursorSetPosition(0, 0);
+    }
+
+    public void resetScrollRegion() {
+        scrollTop = 0;
+        scrollBottom = height - 1;
+    }
+
+    public int getScrollTop() {
+        return scrollTop;
+    }
+
+    public int getScrollBottom() {
+        return scrollBottom;
+    }
+
+    // Moves the region's rows up by n, blanking n rows at its bottom. Rows leave for the scrollback
+    // only when the region starts at the top of the screen. Lines are moved, not copied: the whole
+    // screen rotates its top index, a smaller region O(region height) references.
+    public void scrollRegionUp(int n) {
+        n = Math.min(n, scrollBottom - scrollTop + 1);
+        if (n <= 0) {
+            return;
+        }
+        if (scrollTop == 0 && scrollBottom == height - 1) {
+            for (int i = 0; i < n; i++) {
+                scrollUp();
+            }
+            return;
+        }
+        if (scrollTop == 0 && !alternateScreen) {
+            for (int row = 0; row < n; row++) {
+                pushToScrollback(screenLine(row));
+            }
+        }
+        moveRows(scrollTop, scrollBottom, -n);
+        linesScrolled += n;
+    }
+
+    // Moves the region's rows down by n, blanking n rows at its top
+    public void scrollRegionDown(int n) {
+        n = Math.min(n, scrollBottom - scrollTop + 1);
+        if (n > 0) {
+            moveRows(scrollTop, scrollBottom, n);
+            linesScrolled += n;
+        }
+    }
+
+    // Inserts n blank rows at the cursor row, pushing the rows below it down within the region
+    public void insertLines(int n) {
+        int row = cursor.getRow();
+        if (row < scrollTop || row > scrollBottom) {
+            return;
+        }
+        n = Math.min(n, scrollBottom - row + 1);
+        if (n > 0) {
+            moveRows(row, scrollBottom, n);
         }
+        cursorSetPosition(row, 0);
+    }
+
+    // Deletes n rows at the cursor row, pulling the rows below it up and blanking the region's bottom
+    public void deleteLines(int n) {
+        int row = cursor.getRow();
+        if (row < scrollTop || row > scrollBottom) {
+            return;
+        }
+        n = Math.min(n, scrollBottom - row + 1);
+        if (n > 0) {
+            moveRows(row, scrollBottom, -n);
+        }
+        cursorSetPosition(row, 0);
+    }
+
+    // Rotates the lines of rows [from, to] down by distance (up when negative) and blanks the ones
+    // that came around; every row in the range shows a different line afterwards, so all are dirty
+    private void moveRows(int from, int to, int distance) {
+        Collections.rotate(new RowRange(from, to), distance);
+        int blankFrom = distance > 0 ? from : to + distance + 1;
+        int blankTo = distance > 0 ? from + distance : to + 1;
+        for (int row = from; row <= to; row++) {
+            int slot = slot(row);
+            if (row >= blankFrom && row < blankTo) {
+                if (screen[slot].isShared()) {
+                    screen[slot] = new Line(width);
+                } else {
+                    screen[slot].clear();
+                }
+            }
+            screen[slot].markDirty(0, width);
+        }
+    }
+
+    public void carriageReturn() {
+        cursorSetPosition(cursor.getRow(), 0);
+    }
+
+    public void backspace() {
+        cursorSetPosition(cursor.getRow(), cursor.getColumn() - 1);
+    }
+
+    // Moves to the next tab stop; stops are every 8 columns
+    public void horizontalTab() {
+        cursorSetPosition(cursor.getRow(), (cursor.getColumn() / TAB_WIDTH + 1) * TAB_WIDTH);
+    }
+
+    // 0: cursor to end of line, 1: start of line to cursor, 2: whole line
+    public void eraseInLine(int mode) {
+        Line line = writableLine(cursor.getRow());
+        int column = cursor.getColumn();
+        int attributeId = eraseAttributeId();
+        switch (mode) {
+            case 0 -> line.erase(column, width, attributeId);
+            case 1 -> line.erase(0, column + 1, attributeId);
+            case 2 -> line.erase(0, width, attributeId);
+            default -> throw new IllegalArgumentException("Unknown erase mode: " + mode);
+        }
+        wrapPending = false;
+    }
+
+    // 0: cursor to end of screen, 1: start of screen to cursor, 2: whole screen, 3: scrollback only
+    public void eraseInDisplay(int mode) {
+        int row = cursor.getRow();
+        int attributeId = eraseAttributeId();
+        switch (mode) {
+            case 0 -> {
+                eraseInLine(0);
+                for (int r = row + 1; r < height; r++) {
+                    writableLine(r).erase(0, width, attributeId);
+                }
+            }
+            case 1 -> {
+                for (int r = 0; r < row; r++) {
+                    writableLine(r).erase(0, width, attributeId);
+                }
+                eraseInLine(1);
+            }
+            case 2 -> {
+                for (int r = 0; r < height; r++) {
+                    writableLine(r).erase(0, width, attributeId);
+                }
+            }
+            case 3 -> scrollback.clear();
+            default -> throw new IllegalArgumentException("Unknown erase mode: " + mode);
+        }
+        wrapPending = false;
+    }
+
+    private int eraseAttributeId() {
+        eraseAttributes.setBackground(currentAttributes.getBackground());
+        return AttributeTable.intern(eraseAttributes);
     }
 
     public void fillLine(int row, char c){
@@ -194,10 +686,220 @@ public class TerminalBuffer {
             throw new IndexOutOfBoundsException("Row out of bounds");
         }
 
-        Line line = screen.get(row);
-        for(int i = 0; i < width; i++) {
-            line.setCell(i, new Cell(c, currentAttributes.copy()));
+        Line line = writableLine(row);
+        line.fill(c, AttributeTable.intern(currentAttributes));
+    }
+
+    // Switches to the blank alternate screen used by full-screen programs, like xterm's mode 1049:
+    // the cursor, pending wrap and attributes are saved, and the primary screen is kept as it is by
+    // swapping the screen array, so no cells are copied. The alternate screen never adds lines to
+    // the scrollback. Its lines are allocated on first use and cleared on later entries.
+    public void enterAlternateScreen() {
+        if (alternateScreen) {
+            return;
+        }
+        savedCursorRow = cursor.getRow();
+        savedCursorColumn = cursor.getColumn();
+        savedWrapPending = wrapPending;
+        savedAttributes = currentAttributes.copy();
+
+        Line[] alternate = inactiveScreen;
+        if (alternate == null || alternate.length != height || (height > 0 && alternate[0].getWidth() != width)) {
+            alternate = blankLines(width, height);
+        } else {
+            for (int i = 0; i < height; i++) {
+                if (alternate[i].isShared()) {
+                    alternate[i] = new Line(width);
+                } else {
+                    alternate[i].clear();
+                }
+            }
+        }
+        swapScreens(alternate, 0);
+        alternateScreen = true;
+        wrapPending = false;
+    }
+
+    // Returns to the primary screen as it was when the alternate one was entered, restoring the cursor
+    // and attributes; every row is marked dirty for the renderer
+    public void leaveAlternateScreen() {
+        if (!alternateScreen) {
+            return;
+        }
+        swapScreens(inactiveScreen, inactiveScreenTop);
+        alternateScreen = false;
+        for (Line line : screen) {
+            line.markDirty(0, width);
+        }
+        cursor.setPosition(savedCursorRow, savedCursorColumn);
+        wrapPending = savedWrapPending;
+        joinable = false;
+        currentAttributes = savedAttributes;
+        savedAttributes = null;
+    }
+
+    public boolean isAlternateScreenActive() {
+        return alternateScreen;
+    }
+
+    private void swapScreens(Line[] shown, int shownTop) {
+        inactiveScreen = screen;
+        inactiveScreenTop = screenTop;
+        screen = shown;
+        screenTop = shownTop;
+    }
+
+    private static Line[] blankLines(int width, int height) {
+        Line[] lines = new Line[height];
+        for (int i = 0; i < height; i++) {
+            lines[i] = new Line(width);
+        }
+        return lines;
+    }
+
+    // Changes the screen size, keeping the cursor on the same character. Soft-wrapped paragraphs on
+    // the screen are re-wrapped at the new width right away; rows that no longer fit above the cursor
+    // move to the scrollback and a taller screen takes lines back from it. The scrollback itself is
+    // reflowed lazily, newest lines first, a few lines per scroll or through reflowScrollback, so
+    // resizing with a large history takes time proportional to the screen only.
+    public void resize(int newWidth, int newHeight) {
+        if (newWidth < 0 || newHeight < 0) {
+            throw new IllegalArgumentException("Width and height must be non-negative");
+        }
+        if (newWidth == width && newHeight == height) {
+            return;
+        }
+        if (alternateScreen) {
+            resizeWithAlternateScreen(newWidth, newHeight);
+            return;
+        }
+
+        // Blank rows below the cursor are not content
+        int lastRow = height - 1;
+        while (lastRow > cursor.getRow() && isBlank(screenLine(lastRow))) {
+            lastRow--;
+        }
+
+        List<Line> rows = List.of();
+        int cursorRow = 0;
+        int cursorColumn = 0;
+        if (newWidth == 0 || newHeight == 0) {
+            // Nothing fits on an empty screen, so its content goes to the scrollback to come back
+            // when the screen grows again
+            int lastContentRow = width > 0 ? lastRow : -1;
+            while (lastContentRow >= 0 && isBlank(screenLine(lastContentRow))) {
+                lastContentRow--;
+            }
+            for (int row = 0; row <= lastContentRow; row++) {
+                pushInterned(screenLine(row));
+            }
+        } else {
+            List<ReadableLine> lines = new ArrayList<>(lastRow + 2);
+            int cursorLine;
+            int cursorOffset;
+            if (width > 0 && height > 0) {
+                for (int row = 0; row <= lastRow; row++) {
+                    lines.add(screenLine(row));
+                }
+                cursorLine = cursor.getRow();
+                cursorOffset = cursor.getColumn() + (wrapPending ? 1 : 0);
+                // A paragraph continuing from the scrollback onto the screen is reflowed as a whole
+                cursorLine += pullParagraphTail(lines);
+            } else {
+                // Growing from an empty screen: the cursor starts on a fresh row below the content
+                lines.add(new Line(newWidth));
+                cursorLine = 0;
+                cursorOffset = 0;
+            }
+            Reflow reflow = Reflow.of(lines, cursorLine, cursorOffset, newWidth);
+            while (reflow.getRows().size() < newHeight && scrollback.peekNewest() != null) {
+                lines.add(0, scrollback.pop());
+                cursorLine += 1 + pullParagraphTail(lines);
+                reflow = Reflow.of(lines, cursorLine, cursorOffset, newWidth);
+            }
+            rows = reflow.getRows();
+            cursorRow = reflow.getCursorRow();
+            cursorColumn = reflow.getCursorColumn();
+        }
+
+        if (newWidth != width && newWidth > 0) {
+            scrollback.beginReflow(newWidth);
+            scrollbackReflowPending = scrollback.isReflowPending();
+        }
+        searchIndexStale = searchIndex != null;
+
+        // Rows above the cursor that do not fit go to the scrollback, rows below it are dropped
+        int pushed = Math.min(Math.max(0, rows.size() - newHeight), cursorRow);
+        for (int i = 0; i < pushed; i++) {
+            pushInterned(rows.get(i));
+        }
+        Line[] resized = new Line[newHeight];
+        for (int row = 0; row < newHeight; row++) {
+            resized[row] = pushed + row < rows.size() ? rows.get(pushed + row) : new Line(newWidth);
+        }
+
+        width = newWidth;
+        height = newHeight;
+        screen = resized;
+        screenTop = 0;
+        scrollTop = 0;
+        scrollBottom = newHeight - 1;
+        scrollDelta = 0;
+        wrapPending = cursorColumn == newWidth && newWidth > 0;
+        joinable = false;
+        cursor.setPosition(cursorRow - pushed, wrapPending ? newWidth - 1 : cursorColumn);
+    }
+
+    // The primary screen is reflowed as usual and its saved cursor follows; the alternate screen is
+    // blanked at the new size, since full-screen programs redraw after a resize
+    private void resizeWithAlternateScreen(int newWidth, int newHeight) {
+        int alternateRow = cursor.getRow();
+        int alternateColumn = cursor.getColumn();
+        swapScreens(inactiveScreen, inactiveScreenTop);
+        alternateScreen = false;
+        cursor.setPosition(savedCursorRow, savedCursorColumn);
+        wrapPending = savedWrapPending;
+
+        resize(newWidth, newHeight);
+
+        savedCursorRow = cursor.getRow();
+        savedCursorColumn = cursor.getColumn();
+        savedWrapPending = wrapPending;
+        swapScreens(blankLines(newWidth, newHeight), 0);
+        alternateScreen = true;
+        wrapPending = false;
+        cursor.setPosition(Math.max(0, Math.min(alternateRow, newHeight - 1)),
+                Math.max(0, Math.min(alternateColumn, newWidth - 1)));
+    }
+
+    // Moves the scrollback lines continuing onto the first of the given lines back in front of
+    // them; returns how many were moved
+    private int pullParagraphTail(List<ReadableLine> lines) {
+        int pulled = 0;
+        while (scrollback.peekNewest() != null && scrollback.peekNewest().isWrapped()) {
+            lines.add(0, scrollback.pop());
+            pulled++;
+        }
+        return pulled;
+    }
+
+    private static boolean isBlank(Line line) {
+        for (int column = 0; column < line.getWidth(); column++) {
+            if (line.getChar(column) != ' ' || line.getAttributeId(column) != AttributeTable.DEFAULT_ID) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Reflows up to maxLines scrollback lines left at an old width by resize; returns true while
+    // some remain. A renderer's idle callback, or a background task through
+    // ConcurrentTerminalBuffer.update, can finish the work ahead of scrolling.
+    public boolean reflowScrollback(int maxLines) {
+        if (scrollbackReflowPending) {
+            scrollbackReflowPending = scrollback.reflow(maxLines);
         }
+        return scrollbackReflowPending;
     }
 
     public int getWidth() {
@@ -216,34 +918,244 @@ public class TerminalBuffer {
         return cursor;
     }
 
+    boolean isWrapPending() {
+        return wrapPending;
+    }
+
+    // State the alternate screen restores on leaving it, for saving a session while it is active
+    int getSavedCursorRow() {
+        return savedCursorRow;
+    }
+
+    int getSavedCursorColumn() {
+        return savedCursorColumn;
+    }
+
+    boolean isSavedWrapPending() {
+        return savedWrapPending;
+    }
+
+    CellAttributes getSavedAttributes() {
+        return savedAttributes;
+    }
+
+    // Row of the primary screen while the alternate screen is shown
+    Line primaryScreenLine(int row) {
+        int slot = inactiveScreenTop + row;
+        return inactiveScreen[slot < height ? slot : slot - height];
+    }
+
     public CellAttributes getCurrentAttributes() {
         return currentAttributes;
     }
 
     public List<Line> getScreen() {
-        return Collections.unmodifiableList(screen);
+        return new ScreenView();
     }
 
+    // Mutable copies of the scrollback lines, oldest first, as returned before the scrollback was
+    // stored compactly; every call copies the whole history
+    @Deprecated
     public List<Line> getScrollback() {
-        return List.copyOf(scrollback);
+        List<Line> lines = new ArrayList<>(scrollback.size());
+        for (int i = 0; i < scrollback.size(); i++) {
+            lines.add(scrollback.get(i).thaw());
+        }
+        return Collections.unmodifiableList(lines);
+    }
+
+    // Live read-only view of the scrollback, oldest first. Nothing is copied up front; each get decodes
+    // that line alone if it was spilled or restored. Indices shift as old lines are evicted.
+    public List<ReadableLine> getScrollbackLines() {
+        return Collections.unmodifiableList(scrollback);
+    }
+
+    // One scrollback line, decoded on its own when it was spilled or restored from a session
+    FrozenLine scrollbackLine(int index) {
+        return scrollback.get(index);
+    }
+
+    public int getScrollbackSize() {
+        return scrollback.size();
+    }
+
+    // Share of lines scrolled into the history that reused an identical line pushed shortly before,
+    // from 0 to 1. Identical lines are stored once, so a full in-memory scrollback of maxScrollback
+    // lines holds roughly (1 - ratio) * maxScrollback distinct line objects.
+    public double getScrollbackDedupeRatio() {
+        return interner.getHitRatio();
+    }
+
+    // Counters for monitoring; they are plain fields updated by the writing thread, so call this
+    // on that thread or through ConcurrentTerminalBuffer.read. Flight Recorder additionally gets a
+    // terminal.Write event for slow write and insert calls and a terminal.Read event for reads of
+    // the whole history; they cost nothing until Flight Recorder is started.
+    public BufferMetrics getMetrics() {
+        long bytes = scrollback.estimateInMemoryBytes() + 16 + 4L * height;
+        for (Line line : screen) {
+            bytes += line.estimatedBytes();
+        }
+        return new BufferMetrics(charactersWritten, linesScrolled, scrollback.getEvictedCount(),
+                scrollback.getInMemorySize(), bytes);
+    }
+
+    // Search over scrollback and screen. The first call indexes the existing scrollback; afterwards
+    // every line leaving the screen is indexed, which adds a little work to scrolling.
+    public SearchIndex getSearchIndex() {
+        if (searchIndex == null) {
+            SearchIndex index = new SearchIndex(this);
+            indexScrollback(index);
+            searchIndex = index;
+        }
+        return searchIndex;
+    }
+
+    // Called by the index before each query
+    void refreshSearchIndex() {
+        if (searchIndexStale) {
+            searchIndex.clear();
+            indexScrollback(searchIndex);
+            searchIndexStale = false;
+        }
+    }
+
+    private void indexScrollback(SearchIndex index) {
+        reflowScrollback(Integer.MAX_VALUE);
+        long sequence = firstSequence();
+        for (int row = 0; row < scrollback.size(); row++) {
+            index.add(sequence + row, scrollback.get(row));
+        }
+    }
+
+    // Scans a snapshot of scrollback and screen on the common ForkJoinPool, delivering matches in row order
+    public ParallelScan scan(Pattern pattern, Consumer<SearchMatch> sink) {
+        return ParallelScan.start(snapshot(), pattern, sink);
+    }
+
+    // Every line gets a sequence number when it first appears at the bottom of the history:
+    // global row r currently holds sequence firstSequence() + r, screen rows included
+    long firstSequence() {
+        return scrollback.getEvictedCount();
+    }
+
+    long scrollbackEndSequence() {
+        synchronized (scrollback) {
+            return scrollback.getEvictedCount() + scrollback.size();
+        }
+    }
+
+    // Line with the given sequence number, or null when it was evicted or is below the screen
+    ReadableLine getLineBySequence(long sequence) {
+        long scrollbackEnd = scrollbackEndSequence();
+        if (sequence < scrollbackEnd) {
+            return scrollback.getBySequence(sequence);
+        }
+        long row = sequence - scrollbackEnd;
+        return row < height ? screenLine((int) row) : null;
     }
 
     public String getEntireBufferAsString() {
+        ReadEvent event = new ReadEvent();
+        event.begin();
         StringBuilder sb = new StringBuilder();
 
-        for (Line line : scrollback) {
-            sb.append(line.toString()).append("\n");
+        for (ReadableLine line : scrollback) {
+            line.appendTo(sb);
+            sb.append('\n');
         }
 
-        for (Line line : screen) {
-            sb.append(line.toString()).append("\n");
+        for (int row = 0; row < height; row++) {
+            Line line = screenLine(row);
+            line.appendTo(sb);
+            sb.append('\n');
         }
 
+        commitRead(event, "getEntireBufferAsString");
         return sb.toString();
     }
 
+    private void commitRead(ReadEvent event, String operation) {
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.lines = scrollback.size() + height;
+            event.commit();
+        }
+    }
+
+    // Streams scrollback and screen line by line, the same content as getEntireBufferAsString
+    public void exportTo(Appendable out, ExportFormat format) throws IOException {
+        ReadEvent event = new ReadEvent();
+        event.begin();
+        LineExporter exporter = new LineExporter(format);
+        for (int row = 0; row < scrollback.size(); row++) {
+            exporter.export(scrollback.get(row), out);
+        }
+        for (int row = 0; row < height; row++) {
+            exporter.export(screenLine(row), out);
+        }
+        commitRead(event, "exportTo");
+    }
+
+    // Encodes the export as UTF-8 through fixed-size buffers; the channel is left open
+    public void exportTo(WritableByteChannel channel, ExportFormat format) throws IOException {
+        ChannelWriter writer = new ChannelWriter(channel);
+        exportTo(writer, format);
+        writer.close();
+    }
+
+    // Writes screen, scrollback, cursor and attributes to a binary session file that restore reads back.
+    // Scrollback still waiting for the reflow after a resize is reflowed first, since the file holds
+    // lines of one width only.
+    public void save(Path file) throws IOException {
+        ReadEvent event = new ReadEvent();
+        event.begin();
+        reflowScrollback(Integer.MAX_VALUE);
+        SessionFile.write(this, file);
+        commitRead(event, "save");
+    }
+
+    // Buffer in the state saved to the file, alternate screen included. Only the screens are decoded up
+    // front; the scrollback stays in the memory-mapped file and its lines are decoded when read, so
+    // restoring takes the same time for any amount of history. The file must not be modified in place while
+    // the buffer is in use; save replaces it instead, so saving back to the same path is safe.
+    public static TerminalBuffer restore(Path file) throws IOException {
+        SessionFile session = SessionFile.open(file);
+        TerminalBuffer buffer = new TerminalBuffer(session.getWidth(), session.getHeight(), session.getMaxScrollback());
+        for (int row = 0; row < buffer.height; row++) {
+            buffer.screen[row] = session.screenLine(row);
+        }
+        buffer.scrollback.restore(session);
+        buffer.scrollTop = session.getScrollTop();
+        buffer.scrollBottom = session.getScrollBottom();
+        buffer.cursor.setPosition(session.getCursorRow(), session.getCursorColumn());
+        buffer.wrapPending = session.isWrapPending();
+        buffer.currentAttributes = session.getCurrentAttributes();
+        if (session.isAlternateScreen()) {
+            Line[] primary = new Line[buffer.height];
+            for (int row = 0; row < buffer.height; row++) {
+                primary[row] = session.primaryScreenLine(row);
+            }
+            buffer.inactiveScreen = primary;
+            buffer.inactiveScreenTop = 0;
+            buffer.alternateScreen = true;
+            buffer.savedCursorRow = session.getSavedCursorRow();
+            buffer.savedCursorColumn = session.getSavedCursorColumn();
+            buffer.savedWrapPending = session.isSavedWrapPending();
+            buffer.savedAttributes = session.getSavedAttributes();
+        }
+        return buffer;
+    }
+
+    public void exportScreenTo(Appendable out, ExportFormat format) throws IOException {
+        LineExporter exporter = new LineExporter(format);
+        for (int row = 0; row < height; row++) {
+            exporter.export(screenLine(row), out);
+        }
+    }
+
     public void clearScreen() {
-        for (Line line : screen) {
+        for (int row = 0; row < height; row++) {
+            Line line = writableLine(row);
             line.clear();
         }
         cursorSetPosition(0, 0);
@@ -255,6 +1167,43 @@ public class TerminalBuffer {
         scrollback.clear();
     }
 
+    // Consistent view of screen, scrollback and cursor in O(height): screen lines are shared and
+    // copied by the buffer only when it next writes to them. Take snapshots on the writing thread
+    // and hand them to the renderer through a volatile field or a queue; the renderer can then
+    // read them without blocking further writes.
+    public TerminalSnapshot snapshot() {
+        Line[] lines = new Line[height];
+        for (int row = 0; row < height; row++) {
+            Line line = screenLine(row);
+            line.share();
+            lines[row] = line;
+        }
+        return new TerminalSnapshot(width, new Cursor(cursor.getRow(), cursor.getColumn()), lines, scrollback.pin());
+    }
+
+    public Damage collectDamage() {
+        return collectDamage(new Damage());
+    }
+
+    // Fills the given damage with everything changed since the last call and resets the tracking state
+    public Damage collectDamage(Damage damage) {
+        damage.reset(height, scrollDelta);
+        for (int row = 0; row < height; row++) {
+            Line line = screenLine(row);
+            if (line.isDirty()) {
+                damage.setRow(row, line.getDirtyStart(), line.getDirtyEnd());
+                line.clearDirty();
+            }
+        }
+        scrollDelta = 0;
+        return damage;
+    }
+
+    @Override
+    public void close() {
+        scrollback.close();
+    }
+
     public void setForeground(Color color){
         currentAttributes.setForeground(color);
     }
@@ -275,4 +1224,51 @@ public class TerminalBuffer {
         currentAttributes = new CellAttributes();
     }
 
+    // View of the screen rows in display order; the lines may be modified, so none is shared with a snapshot
+    private class ScreenView extends AbstractList<Line> implements RandomAccess {
+
+        @Override
+        public Line get(int row) {
+            if (row < 0 || row >= height) {
+                throw new IndexOutOfBoundsException("Row out of bounds: " + row);
+            }
+            return writableLine(row);
+        }
+
+        @Override
+        public int size() {
+            return height;
+        }
+    }
+
+    // Screen rows [from, to] as a list whose set moves line references between slots
+    private class RowRange extends AbstractList<Line> implements RandomAccess {
+
+        private final int from;
+        private final int size;
+
+        RowRange(int from, int to) {
+            this.from = from;
+            this.size = to - from + 1;
+        }
+
+        @Override
+        public Line get(int index) {
+            return screen[slot(from + index)];
+        }
+
+        @Override
+        public Line set(int index, Line line) {
+            int slot = slot(from + index);
+            Line previous = screen[slot];
+            screen[slot] = line;
+            return previous;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
 }
@@ -0,0 +1,126 @@
+package terminal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Immutable view of a TerminalBuffer at the moment snapshot() was called.
+// Screen lines are shared with the buffer until it next modifies them. Scrollback lines that were in
+// memory stay available however the history changes later; lines restored from a session or spilled
+// to disk are read on demand and become unavailable once evicted, see getFirstAvailableRow.
+public final class TerminalSnapshot {
+
+    private final int width;
+    private final int height;
+    private final Cursor cursor;
+    private final Line[] lines;
+    private final List<ReadableLine> screen;
+    private final Scrollback.Pinned scrollback;
+    private final int scrollbackSize;
+
+    TerminalSnapshot(int width, Cursor cursor, Line[] screen, Scrollback.Pinned scrollback) {
+        this.width = width;
+        this.height = screen.length;
+        this.lines = screen;
+        this.cursor = cursor;
+        this.screen = Collections.unmodifiableList(Arrays.asList((ReadableLine[]) screen));
+        this.scrollback = scrollback;
+        this.scrollbackSize = scrollback.size();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Cursor getCursor() {
+        return cursor;
+    }
+
+    public int getScrollbackSize() {
+        return scrollbackSize;
+    }
+
+    // Rows before this one were evicted from the session or spill file after the snapshot was taken;
+    // every row from here on can be read
+    public int getFirstAvailableRow() {
+        return scrollback.getFirstAvailable();
+    }
+
+    public List<ReadableLine> getScreen() {
+        return screen;
+    }
+
+    // Rows are numbered like TerminalBuffer's: scrollback first, then the screen
+    public ReadableLine getLine(int globalRow) {
+        if (globalRow < 0 || globalRow >= scrollbackSize + height) {
+            throw new IndexOutOfBoundsException("Invalid row: " + globalRow);
+        }
+        if (globalRow >= scrollbackSize) {
+            return screen.get(globalRow - scrollbackSize);
+        }
+
+        FrozenLine line = scrollback.get(globalRow);
+        if (line == null) {
+            throw new IndexOutOfBoundsException("Row " + globalRow + " left the scrollback after the snapshot; "
+                    + "the first available row is " + getFirstAvailableRow());
+        }
+        return line;
+    }
+
+    public String getLineAsString(int globalRow) {
+        return getLine(globalRow).toString();
+    }
+
+    public char getCharAt(int globalRow, int column) {
+        return getLine(globalRow).getChar(column);
+    }
+
+    public String getTextAt(int globalRow, int column) {
+        return getLine(globalRow).getText(column);
+    }
+
+    public CellAttributes getAttributesAt(int globalRow, int column) {
+        return getLine(globalRow).getAttributes(column);
+    }
+
+    public void readStyledRuns(int globalRow, StringBuilder text, StyledRunSink sink) {
+        getLine(globalRow).readStyledRuns(text, sink);
+    }
+
+    // Copies rows [fromRow, fromRow + count) into dst; evicted scrollback rows become null
+    void getLines(int fromRow, ReadableLine[] dst, int count) {
+        if (fromRow < 0 || count < 0 || fromRow > scrollbackSize + height - count) {
+            throw new IndexOutOfBoundsException("Invalid rows: " + fromRow + "+" + count);
+        }
+        int fromScrollback = Math.max(0, Math.min(count, scrollbackSize - fromRow));
+        for (int i = 0; i < fromScrollback; i++) {
+            dst[i] = scrollback.get(fromRow + i);
+        }
+        for (int i = fromScrollback; i < count; i++) {
+            dst[i] = screen.get(fromRow + i - scrollbackSize);
+        }
+    }
+
+    // Screen lines are shared with the buffer, which copies them before any change, so the same
+    // line in two snapshots means an unchanged row
+    Line getScreenLine(int row) {
+        return lines[row];
+    }
+
+    long getFirstSequence() {
+        return scrollback.getFirstSequence();
+    }
+
+    public String getScreenAsString() {
+        StringBuilder sb = new StringBuilder();
+        for (ReadableLine line : screen) {
+            line.appendTo(sb);
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,8 @@
+package terminal;
+
+// Receiver of decoded text, such as TerminalBuffer::write or VtParser::parse
+@FunctionalInterface
+public interface TextSink {
+
+    void write(char[] chars, int offset, int length);
+}
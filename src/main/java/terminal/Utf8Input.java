@@ -0,0 +1,153 @@
+package terminal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+// Incremental UTF-8 decoder for PTY output. Bytes are decoded into a reusable char array and handed to
+// the sink in chunks, so no intermediate String is created. A multi-byte sequence split across reads is
+// completed by the next read; malformed input becomes U+FFFD.
+public final class Utf8Input {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final TextSink sink;
+    private final char[] chars = new char[CHUNK_SIZE];
+    private int charCount;
+
+    // Decoder state for a sequence that is still missing continuation bytes
+    private int codePoint;
+    private int bytesNeeded;
+    private int minimumCodePoint;
+
+    private ByteBuffer readBuffer;
+
+    public Utf8Input(TextSink sink) {
+        this.sink = sink;
+    }
+
+    public Utf8Input(TerminalBuffer buffer) {
+        this(buffer::write);
+    }
+
+    public Utf8Input(VtParser parser) {
+        this(parser::parse);
+    }
+
+    // Decodes all remaining bytes; a trailing incomplete sequence is kept for the next call
+    public void feed(ByteBuffer bytes) {
+        int limit = bytes.limit();
+        for (int i = bytes.position(); i < limit; i++) {
+            decode(bytes.get(i));
+        }
+        bytes.position(limit);
+        flush();
+    }
+
+    public void feed(byte[] bytes, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > bytes.length - length) {
+            throw new IndexOutOfBoundsException("Invalid range: offset " + offset + ", length " + length);
+        }
+        for (int i = offset; i < offset + length; i++) {
+            decode(bytes[i]);
+        }
+        flush();
+    }
+
+    // Performs one read and decodes what arrived; returns the number of bytes read or -1 at end of stream
+    public int readFrom(ReadableByteChannel channel) throws IOException {
+        if (readBuffer == null) {
+            readBuffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        }
+        readBuffer.clear();
+        int read = channel.read(readBuffer);
+        if (read > 0) {
+            readBuffer.flip();
+            feed(readBuffer);
+        }
+        return read;
+    }
+
+    // Reads until end of stream and returns the total number of bytes read
+    public long pump(ReadableByteChannel channel) throws IOException {
+        long total = 0;
+        int read;
+        while ((read = readFrom(channel)) >= 0) {
+            total += read;
+        }
+        finish();
+        return total;
+    }
+
+    // Ends the input: an incomplete trailing sequence is emitted as U+FFFD
+    public void finish() {
+        if (bytesNeeded > 0) {
+            bytesNeeded = 0;
+            emit(Line.REPLACEMENT);
+        }
+        flush();
+    }
+
+    private void decode(byte b) {
+        if (bytesNeeded > 0) {
+            if ((b & 0xC0) == 0x80) {
+                codePoint = (codePoint << 6) | (b & 0x3F);
+                if (--bytesNeeded == 0) {
+                    emitCodePoint();
+                }
+                return;
+            }
+            // The sequence was cut short; the byte starts something new
+            bytesNeeded = 0;
+            emit(Line.REPLACEMENT);
+        }
+
+        if (b >= 0) {
+            emit((char) b);
+        } else if ((b & 0xE0) == 0xC0) {
+            start(b & 0x1F, 1, 0x80);
+        } else if ((b & 0xF0) == 0xE0) {
+            start(b & 0x0F, 2, 0x800);
+        } else if ((b & 0xF8) == 0xF0) {
+            start(b & 0x07, 3, 0x10000);
+        } else {
+            emit(Line.REPLACEMENT);
+        }
+    }
+
+    private void start(int bits, int needed, int minimum) {
+        codePoint = bits;
+        bytesNeeded = needed;
+        minimumCodePoint = minimum;
+    }
+
+    private void emitCodePoint() {
+        // Overlong encodings, UTF-16 surrogates and values past U+10FFFF are malformed
+        if (codePoint < minimumCodePoint || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            emit(Line.REPLACEMENT);
+        } else if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            emit((char) codePoint);
+        } else {
+            if (charCount + 2 > chars.length) {
+                flush();
+            }
+            chars[charCount++] = Character.highSurrogate(codePoint);
+            chars[charCount++] = Character.lowSurrogate(codePoint);
+        }
+    }
+
+    private void emit(char c) {
+        if (charCount == chars.length) {
+            flush();
+        }
+        chars[charCount++] = c;
+    }
+
+    private void flush() {
+        if (charCount > 0) {
+            sink.write(chars, 0, charCount);
+            charCount = 0;
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package terminal;
+
+import java.nio.CharBuffer;
+
+// VT100/xterm output parser driving a TerminalBuffer.
+// A state machine after Paul Williams' DEC parser: every (state, character class) pair maps to an action
+// and a next state in a precomputed table. Printable runs in the ground state bypass the table and are
+// written to the buffer in bulk. All state lives in fields, so sequences may be split across chunks.
+public final class VtParser {
+
+    // States
+    private static final int GROUND = 0;
+    private static final int ESCAPE = 1;
+    private static final int ESCAPE_INTERMEDIATE = 2;
+    private static final int CSI_ENTRY = 3;
+    private static final int CSI_PARAM = 4;
+    private static final int CSI_INTERMEDIATE = 5;
+    private static final int CSI_IGNORE = 6;
+    private static final int OSC_STRING = 7;
+    private static final int STRING_IGNORE = 8;
+    private static final int STATE_COUNT = 9;
+
+    // Actions
+    private static final int NONE = 0;
+    private static final int EXECUTE = 1;
+    private static final int CLEAR = 2;
+    private static final int COLLECT = 3;
+    private static final int PARAM = 4;
+    private static final int ESC_DISPATCH = 5;
+    private static final int CSI_DISPATCH = 6;
+
+    // Character classes are the 7-bit codes themselves plus one class for everything above
+    private static final int HIGH = 0x80;
+    private static final int CLASS_COUNT = HIGH + 1;
+
+    // Each entry is (action << 4) | next state
+    private static final byte[] TABLE = new byte[STATE_COUNT * CLASS_COUNT];
+
+    private static final int MAX_PARAMS = 16;
+    private static final int MAX_PARAM_VALUE = 65535;
+    private static final int CHUNK_SIZE = 1024;
+
+    private static final Color[] BASIC_COLORS = {
+            Color.BLACK, Color.RED, Color.GREEN, Color.YELLOW,
+            Color.BLUE, Color.MAGENTA, Color.CYAN, Color.WHITE
+    };
+    private static final Color[] BRIGHT_COLORS = {
+            Color.BRIGHT_BLACK, Color.BRIGHT_RED, Color.BRIGHT_GREEN, Color.BRIGHT_YELLOW,
+            Color.BRIGHT_BLUE, Color.BRIGHT_MAGENTA, Color.BRIGHT_CYAN, Color.BRIGHT_WHITE
+    };
+
+    static {
+        for (int state = 0; state < STATE_COUNT; state++) {
+            // C0 controls execute immediately in every state except the string states
+            if (state != OSC_STRING && state != STRING_IGNORE) {
+                set(state, 0x00, 0x17, EXECUTE, state);
+                set(state, 0x19, 0x19, EXECUTE, state);
+                set(state, 0x1C, 0x1F, EXECUTE, state);
+            }
+            set(state, 0x7F, 0x7F, NONE, state);
+            set(state, HIGH, HIGH, NONE, state);
+        }
+
+        set(GROUND, 0x20, 0x7E, NONE, GROUND);
+        set(GROUND, HIGH, HIGH, NONE, GROUND);
+
+        set(ESCAPE, 0x20, 0x2F, COLLECT, ESCAPE_INTERMEDIATE);
+        set(ESCAPE, 0x30, 0x7E, ESC_DISPATCH, GROUND);
+        set(ESCAPE, '[', '[', CLEAR, CSI_ENTRY);
+        set(ESCAPE, ']', ']', NONE, OSC_STRING);
+        set(ESCAPE, 'P', 'P', NONE, STRING_IGNORE);
+        set(ESCAPE, 'X', 'X', NONE, STRING_IGNORE);
+        set(ESCAPE, '^', '_', NONE, STRING_IGNORE);
+
+        set(ESCAPE_INTERMEDIATE, 0x20, 0x2F, COLLECT, ESCAPE_INTERMEDIATE);
+        set(ESCAPE_INTERMEDIATE, 0x30, 0x7E, ESC_DISPATCH, GROUND);
+
+        set(CSI_ENTRY, 0x20, 0x2F, COLLECT, CSI_INTERMEDIATE);
+        set(CSI_ENTRY, 0x30, 0x39, PARAM, CSI_PARAM);
+        set(CSI_ENTRY, ':', ':', NONE, CSI_IGNORE);
+        set(CSI_ENTRY, ';', ';', PARAM, CSI_PARAM);
+        set(CSI_ENTRY, 0x3C, 0x3F, COLLECT, CSI_PARAM);
+        set(CSI_ENTRY, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+
+        set(CSI_PARAM, 0x20, 0x2F, COLLECT, CSI_INTERMEDIATE);
+        set(CSI_PARAM, 0x30, 0x39, PARAM, CSI_PARAM);
+        set(CSI_PARAM, ':', ':', NONE, CSI_IGNORE);
+        set(CSI_PARAM, ';', ';', PARAM, CSI_PARAM);
+        set(CSI_PARAM, 0x3C, 0x3F, NONE, CSI_IGNORE);
+        set(CSI_PARAM, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+
+        set(CSI_INTERMEDIATE, 0x20, 0x2F, COLLECT, CSI_INTERMEDIATE);
+        set(CSI_INTERMEDIATE, 0x30, 0x3F, NONE, CSI_IGNORE);
+        set(CSI_INTERMEDIATE, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+
+        set(CSI_IGNORE, 0x20, 0x3F, NONE, CSI_IGNORE);
+        set(CSI_IGNORE, 0x40, 0x7E, NONE, GROUND);
+
+        // OSC content (window titles and the like) is not used by the buffer and is skipped
+        set(OSC_STRING, 0x00, 0x7F, NONE, OSC_STRING);
+        set(OSC_STRING, 0x07, 0x07, NONE, GROUND);
+        set(STRING_IGNORE, 0x00, 0x7F, NONE, STRING_IGNORE);
+
+        // Transitions valid from anywhere
+        for (int state = 0; state < STATE_COUNT; state++) {
+            set(state, 0x18, 0x18, EXECUTE, GROUND);
+            set(state, 0x1A, 0x1A, EXECUTE, GROUND);
+            set(state, 0x1B, 0x1B, CLEAR, ESCAPE);
+        }
+    }
+
+    private final TerminalBuffer buffer;
+
+    private int state = GROUND;
+
+    private final int[] params = new int[MAX_PARAMS];
+    private int paramCount;
+    // Value of the parameter being parsed, or -1 while it has no digits
+    private int currentParam = -1;
+    private char privateMarker;
+    private char intermediate;
+
+    private final char[] scratch = new char[CHUNK_SIZE];
+
+    public VtParser(TerminalBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public void parse(char[] chars, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > chars.length - length) {
+            throw new IndexOutOfBoundsException("Invalid range: offset " + offset + ", length " + length);
+        }
+
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            if (state == GROUND) {
+                int runStart = i;
+                while (i < end && isPrintable(chars[i])) {
+                    i++;
+                }
+                if (i > runStart) {
+                    buffer.write(chars, runStart, i - runStart);
+                }
+                if (i == end) {
+                    break;
+                }
+            }
+
+            char c = chars[i++];
+            int entry = TABLE[state * CLASS_COUNT + (c < HIGH ? c : HIGH)];
+            state = entry & 0x0F;
+            perform(entry >>> 4, c);
+        }
+    }
+
+    public void parse(CharBuffer chars) {
+        if (chars.hasArray()) {
+            int length = chars.remaining();
+            parse(chars.array(), chars.arrayOffset() + chars.position(), length);
+            chars.position(chars.position() + length);
+            return;
+        }
+
+        while (chars.hasRemaining()) {
+            int length = Math.min(scratch.length, chars.remaining());
+            chars.get(scratch, 0, length);
+            parse(scratch, 0, length);
+        }
+    }
+
+    public void parse(String text) {
+        for (int start = 0; start < text.length(); start += scratch.length) {
+            int end = Math.min(text.length(), start + scratch.length);
+            text.getChars(start, end, scratch, 0);
+            parse(scratch, 0, end - start);
+        }
+    }
+
+    private static boolean isPrintable(char c) {
+        return c >= 0x20 && c != 0x7F;
+    }
+
+    private static void set(int state, int from, int to, int action, int next) {
+        for (int c = from; c <= to; c++) {
+            TABLE[state * CLASS_COUNT + c] = (byte) ((action << 4) | next);
+        }
+    }
+
+    private void perform(int action, char c) {
+        switch (action) {
+            case EXECUTE -> execute(c);
+            case CLEAR -> {
+                paramCount = 0;
+                currentParam = -1;
+                privateMarker = 0;
+                intermediate = 0;
+            }
+            case COLLECT -> {
+                if (c >= 0x3C && c <= 0x3F) {
+                    privateMarker = c;
+                } else {
+                    intermediate = c;
+                }
+            }
+            case PARAM -> {
+                if (c == ';') {
+                    pushParam();
+                } else {
+                    int value = (currentParam < 0 ? 0 : currentParam) * 10 + (c - '0');
+                    currentParam = Math.min(value, MAX_PARAM_VALUE);
+                }
+            }
+            case ESC_DISPATCH -> escDispatch(c);
+            case CSI_DISPATCH -> {
+                pushParam();
+                csiDispatch(c);
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void pushParam() {
+        if (paramCount < MAX_PARAMS) {
+            params[paramCount++] = currentParam;
+        }
+        currentParam = -1;
+    }
+
+    // Value of parameter i, or the default when it is missing
+    private int param(int i, int defaultValue) {
+        return i < paramCount && params[i] >= 0 ? params[i] : defaultValue;
+    }
+
+    // Counts treat a zero parameter like a missing one
+    private int count(int i) {
+        return Math.max(1, param(i, 1));
+    }
+
+    private void execute(char c) {
+        switch (c) {
+            case '\b' -> buffer.backspace();
+            case '\t' -> buffer.horizontalTab();
+            case '\n', 0x0B, 0x0C -> buffer.lineFeed();
+            case '\r' -> buffer.carriageReturn();
+            default -> {
+                // BEL and the remaining controls have no effect on the buffer
+            }
+        }
+    }
+
+    private void escDispatch(char c) {
+        if (intermediate != 0) {
+            return;
+        }
+        switch (c) {
+            case 'D' -> buffer.lineFeed();
+            case 'E' -> buffer.cursorNextLine();
+            case 'M' -> buffer.reverseLineFeed();
+            case 'c' -> {
+                buffer.leaveAlternateScreen();
+                buffer.resetAttributes();
+                buffer.resetScrollRegion();
+                buffer.clearScreenAndScrollback();
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void csiDispatch(char c) {
+        if (privateMarker == '?' && intermediate == 0 && (c == 'h' || c == 'l')) {
+            setPrivateModes(c == 'h');
+            return;
+        }
+        if (intermediate != 0 || privateMarker != 0) {
+            return;
+        }
+
+        Cursor cursor = buffer.getCursor();
+        switch (c) {
+            case 'A' -> buffer.cursorSetPosition(cursor.getRow() - count(0), cursor.getColumn());
+            case 'B', 'e' -> buffer.cursorSetPosition(cursor.getRow() + count(0), cursor.getColumn());
+            case 'C', 'a' -> buffer.cursorSetPosition(cursor.getRow(), cursor.getColumn() + count(0));
+            case 'D' -> buffer.cursorSetPosition(cursor.getRow(), cursor.getColumn() - count(0));
+            case 'E' -> buffer.cursorSetPosition(cursor.getRow() + count(0), 0);
+            case 'F' -> buffer.cursorSetPosition(cursor.getRow() - count(0), 0);
+            case 'G', '`' -> buffer.cursorSetPosition(cursor.getRow(), count(0) - 1);
+            case 'd' -> buffer.cursorSetPosition(count(0) - 1, cursor.getColumn());
+            case 'H', 'f' -> buffer.cursorSetPosition(count(0) - 1, count(1) - 1);
+            case 'J' -> {
+                int mode = param(0, 0);
+                if (mode <= 3) {
+                    buffer.eraseInDisplay(mode);
+                }
+            }
+            case 'K' -> {
+                int mode = param(0, 0);
+                if (mode <= 2) {
+                    buffer.eraseInLine(mode);
+                }
+            }
+            case 'm' -> selectGraphicRendition();
+            case 'r' -> {
+                // Margins outside the screen or an empty region are ignored, as in xterm
+                int top = count(0) - 1;
+                int bottom = param(1, 0) == 0 ? buffer.getHeight() - 1 : param(1, 0) - 1;
+                if (top < bottom && bottom < buffer.getHeight()) {
+                    buffer.setScrollRegion(top, bottom);
+                }
+            }
+            case 'L' -> buffer.insertLines(count(0));
+            case 'M' -> buffer.deleteLines(count(0));
+            case 'S' -> buffer.scrollRegionUp(count(0));
+            case 'T' -> {
+                // With more parameters this is xterm's mouse highlight tracking
+                if (paramCount <= 1) {
+                    buffer.scrollRegionDown(count(0));
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    // DECSET/DECRST; only the alternate screen is supported, other modes are ignored
+    private void setPrivateModes(boolean set) {
+        for (int i = 0; i < paramCount; i++) {
+            if (param(i, 0) == 1049) {
+                if (set) {
+                    buffer.enterAlternateScreen();
+                } else {
+                    buffer.leaveAlternateScreen();
+                }
+            }
+        }
+    }
+
+    private void selectGraphicRendition() {
+        if (paramCount == 0) {
+            buffer.resetAttributes();
+            return;
+        }
+
+        for (int i = 0; i < paramCount; i++) {
+            int code = param(i, 0);
+            switch (code) {
+                case 0 -> buffer.resetAttributes();
+                case 1 -> buffer.addStyle(Style.BOLD);
+                case 3 -> buffer.addStyle(Style.ITALIC);
+                case 4 -> buffer.addStyle(Style.UNDERLINE);
+                case 9 -> buffer.addStyle(Style.STRIKETHROUGH);
+                case 22 -> buffer.removeStyle(Style.BOLD);
+                case 23 -> buffer.removeStyle(Style.ITALIC);
+                case 24 -> buffer.removeStyle(Style.UNDERLINE);
+                case 29 -> buffer.removeStyle(Style.STRIKETHROUGH);
+                case 39 -> buffer.setForeground(Color.DEFAULT);
+                case 49 -> buffer.setBackground(Color.DEFAULT);
+                case 38, 48 -> i = extendedColor(i, code == 38);
+                default -> {
+                    if (code >= 30 && code <= 37) {
+                        buffer.setForeground(BASIC_COLORS[code - 30]);
+                    } else if (code >= 40 && code <= 47) {
+                        buffer.setBackground(BASIC_COLORS[code - 40]);
+                    } else if (code >= 90 && code <= 97) {
+                        buffer.setForeground(BRIGHT_COLORS[code - 90]);
+                    } else if (code >= 100 && code <= 107) {
+                        buffer.setBackground(BRIGHT_COLORS[code - 100]);
+                    }
+                }
+            }
+        }
+    }
+
+    // 38;5;n and 38;2;r;g;b. The buffer has 16 colors, so only indexed colors below 16 are applied.
+    // Returns the index of the last parameter consumed.
+    private int extendedColor(int i, boolean foreground) {
+        int kind = param(i + 1, -1);
+        if (kind == 5) {
+            int index = param(i + 2, -1);
+            if (index >= 0 && index < 16) {
+                Color color = index < 8 ? BASIC_COLORS[index] : BRIGHT_COLORS[index - 8];
+                if (foreground) {
+                    buffer.setForeground(color);
+                } else {
+                    buffer.setBackground(color);
+                }
+            }
+            return i + 2;
+        }
+        if (kind == 2) {
+            return i + 4;
+        }
+        return i + 1;
+    }
+}
@@ -0,0 +1,33 @@
+package terminal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+// Flight Recorder event for one write or insert call on a TerminalBuffer.
+// Recorded only for calls slower than the threshold, 1 ms unless the recording settings change it.
+// Until Flight Recorder starts, event classes are not instrumented, so the event is never allocated
+// and begin and commit do nothing.
+@Name("terminal.Write")
+@Label("Terminal Write")
+@Category("Terminal")
+@Description("Text written to a terminal buffer in one call")
+@Threshold("1 ms")
+@StackTrace(false)
+final class WriteEvent extends Event {
+
+    @Label("Characters")
+    @Description("UTF-16 chars passed to the call")
+    int characters;
+
+    @Label("Insert")
+    @Description("Inserted at the cursor instead of overwriting")
+    boolean insert;
+
+    @Label("Lines Scrolled")
+    long linesScrolled;
+}
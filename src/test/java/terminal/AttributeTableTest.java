@@ -0,0 +1,61 @@
+package terminal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AttributeTableTest {
+
+    @Test
+    void testDefaultAttributesHaveDefaultId() {
+        assertEquals(AttributeTable.DEFAULT_ID, AttributeTable.intern(new CellAttributes()));
+        assertEquals(new CellAttributes(), AttributeTable.get(AttributeTable.DEFAULT_ID));
+    }
+
+    @Test
+    void testEqualAttributesShareId() {
+        CellAttributes first = new CellAttributes(Color.RED, Color.BLUE, EnumSet.of(Style.BOLD, Style.ITALIC));
+        CellAttributes second = new CellAttributes(Color.RED, Color.BLUE, EnumSet.of(Style.ITALIC, Style.BOLD));
+
+        int id = AttributeTable.intern(first);
+
+        assertEquals(id, AttributeTable.intern(second));
+        assertNotEquals(id, AttributeTable.intern(new CellAttributes(Color.RED, Color.BLUE, EnumSet.of(Style.BOLD))));
+        assertEquals(first, AttributeTable.get(id));
+    }
+
+    @Test
+    void testInternedInstancesAreImmutable() {
+        CellAttributes attributes = new CellAttributes(Color.GREEN, Color.DEFAULT, EnumSet.of(Style.UNDERLINE));
+        CellAttributes shared = AttributeTable.get(AttributeTable.intern(attributes));
+
+        assertTrue(shared.isShared());
+        assertFalse(attributes.isShared());
+        assertThrows(UnsupportedOperationException.class, () -> shared.setForeground(Color.RED));
+        assertThrows(UnsupportedOperationException.class, () -> shared.addStyle(Style.BOLD));
+
+        CellAttributes copy = shared.copy();
+        copy.setForeground(Color.RED);
+        assertEquals(Color.RED, copy.getForeground());
+        assertEquals(Color.GREEN, shared.getForeground());
+    }
+
+    @Test
+    void testInternedAttributesSurviveSourceMutation() {
+        CellAttributes attributes = new CellAttributes(Color.CYAN, Color.BLACK, EnumSet.noneOf(Style.class));
+        int id = AttributeTable.intern(attributes);
+
+        attributes.setForeground(Color.MAGENTA);
+
+        assertEquals(Color.CYAN, AttributeTable.get(id).getForeground());
+        assertNotEquals(id, AttributeTable.intern(attributes));
+    }
+
+    @Test
+    void testUnknownId() {
+        assertThrows(IllegalArgumentException.class, () -> AttributeTable.get(-1));
+        assertThrows(IllegalArgumentException.class, () -> AttributeTable.get(1 << 20));
+    }
+}
@@ -0,0 +1,89 @@
+package terminal;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferMetricsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testCounters() {
+        TerminalBuffer buf = new TerminalBuffer(10, 2, 3);
+        BufferMetrics empty = buf.getMetrics();
+        assertEquals(0, empty.getCharactersWritten());
+        assertEquals(0, empty.getLinesScrolled());
+        assertEquals(0, empty.getResidentScrollbackLines());
+        assertTrue(empty.getEstimatedBytes() > 0);
+
+        for (int i = 0; i < 6; i++) {
+            buf.write("line" + i);
+            buf.cursorNextLine();
+        }
+        buf.insert("ab");
+        buf.putChar('c');
+        buf.write(new char[]{'d', 'e'}, 0, 2);
+
+        BufferMetrics metrics = buf.getMetrics();
+        assertEquals(6 * 5 + 2 + 1 + 2, metrics.getCharactersWritten());
+        assertEquals(5, metrics.getLinesScrolled());
+        assertEquals(2, metrics.getLinesEvicted());
+        assertEquals(3, metrics.getResidentScrollbackLines());
+        assertTrue(metrics.getEstimatedBytes() > empty.getEstimatedBytes());
+    }
+
+    @Test
+    void testRegionScrollsAreCounted() {
+        TerminalBuffer buf = new TerminalBuffer(10, 4, 10);
+        buf.setScrollRegion(1, 2);
+        buf.scrollRegionUp(2);
+        buf.scrollRegionDown(1);
+
+        assertEquals(3, buf.getMetrics().getLinesScrolled());
+        assertEquals(0, buf.getScrollbackSize());
+    }
+
+    @Test
+    void testFlightRecorderEvents() throws IOException {
+        Path file = tempDir.resolve("recording.jfr");
+        TerminalBuffer buf = new TerminalBuffer(10, 2, 10);
+        try (Recording recording = new Recording()) {
+            recording.enable("terminal.Write").withThreshold(Duration.ZERO);
+            recording.enable("terminal.Read");
+            recording.start();
+
+            buf.write("first");
+            buf.cursorNextLine();
+            buf.write("second line");
+            buf.insert("xy");
+            buf.getEntireBufferAsString();
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        List<RecordedEvent> writes = events.stream()
+                .filter(e -> e.getEventType().getName().equals("terminal.Write")).toList();
+        List<RecordedEvent> reads = events.stream()
+                .filter(e -> e.getEventType().getName().equals("terminal.Read")).toList();
+
+        assertEquals(3, writes.size());
+        assertTrue(writes.stream().anyMatch(e -> e.getInt("characters") == 11 && e.getLong("linesScrolled") == 1));
+        assertTrue(writes.stream().anyMatch(e -> e.getInt("characters") == 2 && e.getBoolean("insert")));
+        assertEquals(1, reads.size());
+        assertEquals("getEntireBufferAsString", reads.get(0).getString("operation"));
+        assertEquals(3, reads.get(0).getInt("lines"));
+    }
+}
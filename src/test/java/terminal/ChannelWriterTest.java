@@ -0,0 +1,49 @@
+package terminal;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChannelWriterTest {
+
+    @Test
+    void testEncodesUtf8() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ChannelWriter writer = new ChannelWriter(Channels.newChannel(bytes));
+
+        writer.write("héllo wörld 世界 😀");
+        writer.close();
+
+        assertEquals("héllo wörld 世界 😀", bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testLargeOutputAcrossChunks() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ChannelWriter writer = new ChannelWriter(Channels.newChannel(bytes));
+        StringBuilder expected = new StringBuilder();
+
+        // Odd-sized writes make surrogate pairs straddle the internal chunk boundary
+        for (int i = 0; i < 5000; i++) {
+            String piece = "ab😀c" + i;
+            writer.write(piece.toCharArray(), 0, piece.length());
+            expected.append(piece);
+        }
+        writer.close();
+
+        assertEquals(expected.toString(), bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testWriteAfterClose() throws IOException {
+        ChannelWriter writer = new ChannelWriter(Channels.newChannel(new ByteArrayOutputStream()));
+        writer.close();
+
+        assertThrows(IOException.class, () -> writer.write("x"));
+    }
+}
@@ -0,0 +1,43 @@
+package terminal;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CharWidthTest {
+
+    @Test
+    void testNarrowCharacters() {
+        assertEquals(1, CharWidth.of('a'));
+        assertEquals(1, CharWidth.of('é'));
+        assertEquals(1, CharWidth.of('Ж'));
+        assertTrue(CharWidth.isSimple('a'));
+        assertTrue(CharWidth.isSimple('Ж'));
+    }
+
+    @Test
+    void testWideCharacters() {
+        assertEquals(2, CharWidth.of('世'));
+        assertEquals(2, CharWidth.of('한'));
+        assertEquals(2, CharWidth.of('Ａ'));
+        assertEquals(2, CharWidth.of(0x1F600));
+        assertEquals(2, CharWidth.of(0x20000));
+        assertFalse(CharWidth.isSimple('世'));
+    }
+
+    @Test
+    void testZeroWidthCharacters() {
+        assertEquals(0, CharWidth.of(0x0301));
+        assertEquals(0, CharWidth.of(0x200D));
+        assertEquals(0, CharWidth.of(0xFE0F));
+        assertEquals(0, CharWidth.of(0x1F3FB));
+        assertEquals(1, CharWidth.of(0x00AD));
+        assertFalse(CharWidth.isSimple('́'));
+    }
+
+    @Test
+    void testSurrogatesAreNotSimple() {
+        assertFalse(CharWidth.isSimple('\uD83D'));
+        assertFalse(CharWidth.isSimple('\uDE00'));
+    }
+}
@@ -0,0 +1,101 @@
+package terminal;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentTerminalBufferTest {
+
+    @Test
+    void testDelegatesToBuffer() {
+        ConcurrentTerminalBuffer buf = new ConcurrentTerminalBuffer(new TerminalBuffer(5, 2, 10));
+        buf.write("hello");
+        buf.update(b -> {
+            b.cursorNextLine();
+            b.setForeground(Color.RED);
+        });
+        buf.putChar('x');
+        buf.insert("w");
+
+        assertEquals("hello", buf.getLineAsString(0));
+        assertEquals("xw   ", buf.getLineAsString(1));
+        assertEquals('w', buf.getCharAt(1, 1));
+        assertEquals(Color.RED, buf.getAttributesAt(1, 0).getForeground());
+        assertEquals(1, buf.getCursor().getRow());
+        assertEquals(2, buf.getCursor().getColumn());
+        assertEquals("hello\nxw   \n", buf.getScreenAsString());
+    }
+
+    @Test
+    void testInvalidReadsStillThrow() {
+        ConcurrentTerminalBuffer buf = new ConcurrentTerminalBuffer(new TerminalBuffer(5, 2, 10));
+
+        assertThrows(IndexOutOfBoundsException.class, () -> buf.getCharAt(2, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> buf.getLineAsString(-1));
+    }
+
+    @Test
+    void testFeedsFromUtf8Input() {
+        ConcurrentTerminalBuffer buf = new ConcurrentTerminalBuffer(new TerminalBuffer(6, 1, 10));
+        Utf8Input input = new Utf8Input(buf);
+        byte[] bytes = "héllo".getBytes(StandardCharsets.UTF_8);
+        input.feed(bytes, 0, bytes.length);
+        input.finish();
+
+        assertEquals("héllo ", buf.getLineAsString(0));
+    }
+
+    @Test
+    void testReadersNeverSeeTornLines() throws InterruptedException {
+        int width = 32;
+        int height = 8;
+        ConcurrentTerminalBuffer buf = new ConcurrentTerminalBuffer(new TerminalBuffer(width, height, 200));
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            Random random = new Random(t);
+            Thread reader = new Thread(() -> {
+                try {
+                    while (running.get()) {
+                        int row = random.nextInt(height);
+                        String line = buf.read(b -> b.getLineAsString(b.getScrollbackSize() + row));
+                        if (!line.chars().allMatch(c -> c == line.charAt(0))) {
+                            fail("Torn line: " + line);
+                        }
+                        int scrollbackRows = buf.getScrollbackSize();
+                        if (scrollbackRows > 0) {
+                            char c = buf.getCharAt(random.nextInt(scrollbackRows), random.nextInt(width));
+                            assertTrue(c >= 'a' && c <= 'z', "Unexpected char " + (int) c);
+                        }
+                        buf.getAttributesAt(scrollbackRows + row, random.nextInt(width));
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+
+        // Each write fills exactly one line, so the previous line scrolls away before the next write
+        for (int i = 0; i < 50_000 && failure.get() == null; i++) {
+            buf.write(String.valueOf((char) ('a' + i % 26)).repeat(width));
+        }
+
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+        assertEquals(200, buf.getScrollbackSize());
+    }
+}
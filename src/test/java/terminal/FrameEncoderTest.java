@@ -0,0 +1,202 @@
+package terminal;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameEncoderTest {
+
+    private final FrameEncoder encoder = new FrameEncoder();
+
+    // Encodes the buffer's current frame and replays it on the mirror; returns the escape stream
+    private String send(TerminalBuffer buf, TerminalBuffer mirror) throws IOException {
+        StringBuilder out = new StringBuilder();
+        encoder.encode(buf.snapshot(), out);
+        new VtParser(mirror).parse(out.toString());
+        return out.toString();
+    }
+
+    private static void assertMirrored(TerminalBuffer buf, TerminalBuffer mirror) {
+        assertEquals(buf.getScreenAsString(), mirror.getScreenAsString());
+        for (int row = 0; row < buf.getHeight(); row++) {
+            for (int column = 0; column < buf.getWidth(); column++) {
+                int globalRow = buf.getScrollbackSize() + row;
+                int mirrorRow = mirror.getScrollbackSize() + row;
+                assertEquals(buf.getAttributesAt(globalRow, column), mirror.getAttributesAt(mirrorRow, column),
+                        "row " + row + ", column " + column);
+            }
+        }
+        assertEquals(buf.getCursor().getRow(), mirror.getCursor().getRow());
+        assertEquals(buf.getCursor().getColumn(), mirror.getCursor().getColumn());
+    }
+
+    @Test
+    void testFirstFrameIsSentInFull() throws IOException {
+        TerminalBuffer buf = new TerminalBuffer(10, 3, 10);
+        TerminalBuffer mirror = new TerminalBuffer(10, 3, 10);
+        mirror.write("stale");
+        buf.write("hello");
+        buf.setForeground(Color.RED);
+        buf.write(" red");
+        buf.cursorSetPosition(2, 3);
+
+        send(buf, mirror);
+        assertMirrored(buf, mirror);
+    }
+
+    @Test
+    void testUnchangedFrameSendsOnlyTheCursor() throws IOException {
+        TerminalBuffer buf = new TerminalBuffer(10, 3, 10);
+        TerminalBuffer mirror = new TerminalBuffer(10, 3, 10);
+        buf.write("hello");
+        send(buf, mirror);
+
+        assertEquals("", send(buf, mirror));
+        buf.cursorSetPosition(1, 0);
+        assertEquals("\r\n", send(buf, mirror));
+    }
+
+    @Test
+    void testSmallChangeSendsOnlyChangedCells() throws IOException {
+        TerminalBuffer buf = new TerminalBuffer(40, 10, 10);
+        TerminalBuffer mirror = new TerminalBuffer(40, 10, 10);
+        for (int row = 0; row < 10; row++) {
+            buf.cursorSetPosition(row, 0);
+            buf.write("row " + row + " with some text on it");
+        }
+        send(buf, mirror);
+
+        buf.cursorSetPosition(4, 4);
+        buf.write("X");
+        buf.cursorSetPosition(4, 10);
+        buf.setForeground(Color.GREEN);
+        buf.write("Y");
+        buf.resetAttributes();
+        buf.cursorSetPosition(9, 0);
+        String diff = send(buf, mirror);
+
+        assertMirrored(buf, mirror);
+        assertEquals("\u001b[5;5HX\u001b[11G\u001b[0;32mY\u001b[10;1H", diff);
+    }
+
+    @Test
+    void testScrollIsSentAsScrollUp() throws IOException {
+        TerminalBuffer buf = new TerminalBuffer(20, 5, 10);
+        TerminalBuffer mirror = new TerminalBuffer(20, 5, 10);
+        for (int i = 0; i < 5; i++) {
+            buf.write("line " + i);
+            buf.cursorNextLine();
+        }
+        send(buf, mirror);
+
+        buf.write("line 5");
+        buf.cursorNextLine();
+        buf.write("line 6");
+        String diff = send(buf, mirror);
+
+        assertMirrored(buf, mirror);
+        assertEquals("\u001b[1S\u001b[4;1Hline 5\r\nline 6", diff);
+    }
+
+    @Test
+    void testScrollRegionAtTopIsNotSentAsScroll() throws IOException {
+        TerminalBuffer buf = new TerminalBuffer(5, 6, 10);
+        TerminalBuffer mirror = new TerminalBuffer(5, 6, 10);
+        for (int row = 0; row < 6; row++) {
+            buf.cursorSetPosition(row, 0);
+            buf.write("r" + row);
+        }
+        send(buf, mirror);
+
+        buf.setScrollRegion(0, 2);
+        buf.scrollRegionUp(1);
+        String diff = send(buf, mirror);
+
+        assertMirrored(buf, mirror);
+        assertFalse(diff.contains("S"), diff);
+    }
+
+    @Test
+    void testBlankTailAndWideCharacters() throws IOException {
+        TerminalBuffer buf = new TerminalBuffer(8, 2, 10);
+        TerminalBuffer mirror = new TerminalBuffer(8, 2, 10);
+        buf.write("abcdefgh");
+        send(buf, mirror);
+
+        buf.cursorSetPosition(0, 2);
+        buf.eraseInLine(0);
+        buf.cursorSetPosition(1, 0);
+        buf.write("\u4E2D\u6587e\u0301");
+        String diff = send(buf, mirror);
+
+        assertMirrored(buf, mirror);
+        assertTrue(diff.startsWith("\u001b[3G\u001b[K"), diff);
+        assertEquals("\u4E2D", mirror.getTextAt(mirror.getScrollbackSize() + 1, 0));
+        assertEquals("e\u0301", mirror.getTextAt(mirror.getScrollbackSize() + 1, 4));
+
+        buf.cursorSetPosition(1, 1);
+        buf.write("x");
+        send(buf, mirror);
+        assertMirrored(buf, mirror);
+    }
+
+    @Test
+    void testWideCharacterInsertedAtLastColumn() throws IOException {
+        TerminalBuffer buf = new TerminalBuffer(4, 2, 10);
+        TerminalBuffer mirror = new TerminalBuffer(4, 2, 10);
+        buf.write("abcd");
+        send(buf, mirror);
+
+        buf.cursorSetPosition(0, 3);
+        buf.insert("\u4E16");
+        send(buf, mirror);
+
+        assertMirrored(buf, mirror);
+        assertEquals(0, mirror.getScrollbackSize());
+    }
+
+    @Test
+    void testClusterEndingWithJoinerStaysInItsCell() throws IOException {
+        TerminalBuffer buf = new TerminalBuffer(8, 2, 10);
+        TerminalBuffer mirror = new TerminalBuffer(8, 2, 10);
+        buf.write("x\u4E16z\uD83D\uDE00");
+        buf.cursorSetPosition(0, 0);
+        buf.write("a\u200D");
+        String diff = send(buf, mirror);
+
+        assertMirrored(buf, mirror);
+        assertEquals("a\u200D", mirror.getTextAt(0, 0));
+        assertEquals("\u4E16", mirror.getTextAt(0, 1));
+        assertTrue(diff.contains("a\u200D\u001b[2G\u4E16z"), diff);
+
+        // The next frame writes after the joiner again and must not join either
+        buf.cursorSetPosition(0, 1);
+        buf.write("\uD83D\uDE00");
+        send(buf, mirror);
+        assertMirrored(buf, mirror);
+        assertEquals("\uD83D\uDE00", mirror.getTextAt(0, 1));
+    }
+
+    @Test
+    void testResizeAndAlternateScreen() throws IOException {
+        TerminalBuffer buf = new TerminalBuffer(10, 3, 10);
+        TerminalBuffer mirror = new TerminalBuffer(10, 3, 10);
+        buf.write("shell");
+        send(buf, mirror);
+
+        buf.enterAlternateScreen();
+        buf.write("vim");
+        send(buf, mirror);
+        assertMirrored(buf, mirror);
+        buf.leaveAlternateScreen();
+        send(buf, mirror);
+        assertMirrored(buf, mirror);
+
+        buf.resize(6, 4);
+        mirror.resize(6, 4);
+        send(buf, mirror);
+        assertMirrored(buf, mirror);
+    }
+}
@@ -0,0 +1,117 @@
+package terminal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrozenLineTest {
+
+    @Test
+    void testTrailingBlanksAreTrimmed() {
+        Line line = new Line(10);
+        line.overwrite(0, "abc", new CellAttributes());
+
+        FrozenLine frozen = line.freeze();
+
+        assertEquals(10, frozen.getWidth());
+        assertEquals(3, frozen.getTextLength());
+        assertEquals("abc       ", frozen.toString());
+        assertEquals(' ', frozen.getChar(9));
+        assertEquals(AttributeTable.DEFAULT_ID, frozen.getAttributeId(9));
+    }
+
+    @Test
+    void testStyledTrailingBlanksAreKept() {
+        Line line = new Line(6);
+        CellAttributes background = new CellAttributes(Color.DEFAULT, Color.RED, EnumSet.noneOf(Style.class));
+        line.overwrite(0, "ab", new CellAttributes());
+        line.overwrite(2, "  ", background);
+
+        FrozenLine frozen = line.freeze();
+
+        assertEquals(4, frozen.getTextLength());
+        assertEquals(background, frozen.getAttributes(3));
+        assertEquals(new CellAttributes(), frozen.getAttributes(4));
+    }
+
+    @Test
+    void testAttributeRuns() {
+        CellAttributes red = new CellAttributes(Color.RED, Color.DEFAULT, EnumSet.of(Style.BOLD));
+        CellAttributes blue = new CellAttributes(Color.BLUE, Color.DEFAULT, EnumSet.noneOf(Style.class));
+        Line line = new Line(12);
+        line.overwrite(0, "plain ", new CellAttributes());
+        line.overwrite(6, "red", red);
+        line.overwrite(9, "blu", blue);
+
+        FrozenLine frozen = line.freeze();
+
+        for (int column = 0; column < line.getWidth(); column++) {
+            assertEquals(line.getChar(column), frozen.getChar(column));
+            assertEquals(line.getAttributeId(column), frozen.getAttributeId(column));
+            assertEquals(line.getCell(column).getAttributes(), frozen.getCell(column).getAttributes());
+        }
+        assertEquals(line.toString(), frozen.toString());
+    }
+
+    @Test
+    void testFreezeIsIndependentOfSourceLine() {
+        Line line = new Line(5);
+        line.overwrite(0, "hello", new CellAttributes());
+
+        FrozenLine frozen = line.freeze();
+        line.clear();
+
+        assertEquals("hello", frozen.toString());
+    }
+
+    @Test
+    void testBlankLinesShareInstance() {
+        FrozenLine first = new Line(8).freeze();
+        FrozenLine second = new Line(8).freeze();
+
+        assertSame(first, second);
+        assertEquals("        ", first.toString());
+    }
+
+    @Test
+    void testOutOfBounds() {
+        FrozenLine frozen = new Line(4).freeze();
+
+        assertThrows(IndexOutOfBoundsException.class, () -> frozen.getChar(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> frozen.getAttributeId(4));
+    }
+
+    @Test
+    void testReadStyledRunsMatchesLine() {
+        Line line = new Line(12);
+        CellAttributes red = new CellAttributes(Color.RED, Color.DEFAULT, EnumSet.noneOf(Style.class));
+        CellAttributes background = new CellAttributes(Color.DEFAULT, Color.BLUE, EnumSet.noneOf(Style.class));
+        line.overwrite(0, "ab", red);
+        line.overwrite(2, "cd", new CellAttributes());
+        line.putCodePoint(4, 0x4E2D, 2, AttributeTable.intern(background));
+        line.overwrite(6, "  ", background);
+        line.overwrite(8, "x", new CellAttributes());
+
+        int[][] ranges = {{0, 12}, {1, 5}, {3, 10}, {9, 12}, {6, 6}};
+        for (int[] range : ranges) {
+            assertEquals(runs(line, range[0], range[1]), runs(line.freeze(), range[0], range[1]));
+        }
+        assertEquals(List.of("0+2 ab", "2+2 cd", "4+4 \u4E2D  ", "8+4 x   "), runs(line.freeze(), 0, 12));
+
+        Line plain = new Line(5);
+        plain.overwrite(0, "hi", new CellAttributes());
+        assertEquals(List.of("0+5 hi   "), runs(plain.freeze(), 0, 5));
+        assertEquals(List.of("3+2   "), runs(plain.freeze(), 3, 5));
+    }
+
+    private static List<String> runs(ReadableLine line, int start, int end) {
+        List<String> runs = new ArrayList<>();
+        line.readStyledRuns(start, end, new StringBuilder(),
+                (column, cells, attributes, text) -> runs.add(column + "+" + cells + " " + text));
+        return runs;
+    }
+}
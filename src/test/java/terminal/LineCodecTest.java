@@ -0,0 +1,97 @@
+package terminal;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LineCodecTest {
+
+    private static FrozenLine roundTrip(FrozenLine line) {
+        ByteBuffer buffer = ByteBuffer.allocate(LineCodec.maxEncodedSize(line));
+        LineCodec.encode(line, buffer);
+        buffer.flip();
+        FrozenLine decoded = LineCodec.decode(buffer);
+        assertFalse(buffer.hasRemaining());
+        return decoded;
+    }
+
+    private static void assertSameContent(ReadableLine expected, ReadableLine actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        for (int column = 0; column < expected.getWidth(); column++) {
+            assertEquals(expected.getChar(column), actual.getChar(column));
+            assertEquals(expected.getAttributeId(column), actual.getAttributeId(column));
+        }
+    }
+
+    @Test
+    void testPlainLine() {
+        Line line = new Line(20);
+        line.overwrite(0, "plain text", new CellAttributes());
+
+        assertSameContent(line, roundTrip(line.freeze()));
+    }
+
+    @Test
+    void testWrappedFlag() {
+        Line line = new Line(4);
+        line.overwrite(0, "wrap", new CellAttributes());
+        line.setWrapped(true);
+
+        assertTrue(roundTrip(line.freeze()).isWrapped());
+        assertFalse(roundTrip(new Line(4).freeze()).isWrapped());
+    }
+
+    @Test
+    void testStyledNonLatinLine() {
+        Line line = new Line(12);
+        line.overwrite(0, "ab", new CellAttributes(Color.RED, Color.BLACK, EnumSet.of(Style.BOLD)));
+        line.overwrite(3, "λ世界", new CellAttributes(Color.CYAN, Color.DEFAULT, EnumSet.noneOf(Style.class)));
+
+        assertSameContent(line, roundTrip(line.freeze()));
+    }
+
+    @Test
+    void testBlankLine() {
+        FrozenLine blank = new Line(7).freeze();
+
+        assertSameContent(blank, roundTrip(blank));
+    }
+
+    @Test
+    void testVarints() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        int[] values = {0, 1, 127, 128, 300, 65535, Integer.MAX_VALUE, -1};
+        for (int value : values) {
+            LineCodec.putVarint(buffer, value);
+        }
+        buffer.flip();
+        for (int value : values) {
+            assertEquals(value, LineCodec.getVarint(buffer));
+        }
+    }
+
+    @Test
+    void testCorruptedData() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{5, 10, 0, 'a'});
+
+        assertThrows(IllegalStateException.class, () -> LineCodec.decode(buffer));
+    }
+    @Test
+    void testWideAndExtendedCells() {
+        TerminalBuffer buf = new TerminalBuffer(10, 1, 10);
+        buf.write("a世e\u0301\uD83D\uDE00");
+        buf.insertEmptyLineAtBottom();
+        ReadableLine frozen = buf.getScrollbackLines().getFirst();
+
+        FrozenLine decoded = roundTrip((FrozenLine) frozen);
+        assertSameContent(frozen, decoded);
+        for (int column = 0; column < frozen.getWidth(); column++) {
+            assertEquals(frozen.getText(column), decoded.getText(column));
+        }
+        assertEquals(frozen.toString(), decoded.toString());
+    }
+
+}
@@ -0,0 +1,94 @@
+package terminal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LineInternerTest {
+
+    private static Line lineOf(String text, CellAttributes attributes) {
+        Line line = new Line(8);
+        line.overwrite(0, text, attributes);
+        return line;
+    }
+
+    @Test
+    void testIdenticalLinesShareOneInstance() {
+        LineInterner interner = new LineInterner(16);
+        FrozenLine first = interner.intern(lineOf("warning", new CellAttributes()));
+        FrozenLine second = interner.intern(lineOf("warning", new CellAttributes()));
+
+        assertSame(first, second);
+        assertEquals("warning ", second.toString());
+        assertEquals(2, interner.getLookups());
+        assertEquals(1, interner.getHits());
+        assertEquals(0.5, interner.getHitRatio());
+    }
+
+    @Test
+    void testAttributesWrapAndClustersDistinguishLines() {
+        LineInterner interner = new LineInterner(16);
+        CellAttributes red = new CellAttributes(Color.RED, Color.DEFAULT, EnumSet.noneOf(Style.class));
+        FrozenLine plain = interner.intern(lineOf("warning", new CellAttributes()));
+
+        Line styled = lineOf("warning", new CellAttributes());
+        styled.overwrite(4, "i", red);
+        Line wrapped = lineOf("warning", new CellAttributes());
+        wrapped.setWrapped(true);
+        Line accented = lineOf("warning", new CellAttributes());
+        accented.appendToCell(0, 0x301);
+
+        assertNotSame(plain, interner.intern(styled));
+        assertNotSame(plain, interner.intern(wrapped));
+        Line grave = lineOf("warning", new CellAttributes());
+        grave.appendToCell(0, 0x300);
+
+        FrozenLine acute = interner.intern(accented);
+        assertNotSame(plain, acute);
+        assertNotSame(acute, interner.intern(grave));
+        assertEquals(0, interner.getHits());
+        assertSame(plain, interner.intern(lineOf("warning", new CellAttributes())));
+    }
+
+    @Test
+    void testFrozenHashMatchesLineHash() {
+        Line line = lineOf("ab", new CellAttributes());
+        line.putCodePoint(3, 0x1F600, 2, AttributeTable.DEFAULT_ID);
+        line.setWrapped(true);
+
+        FrozenLine frozen = line.freeze();
+        assertEquals(frozen.hashCode(), line.contentHash(line.contentLength()));
+        assertEquals(frozen, line.freeze());
+        assertEquals(frozen.hashCode(), line.freeze().hashCode());
+    }
+
+    @Test
+    void testLeastRecentlyUsedLineOfASetIsForgotten() {
+        // Two slots form a single set
+        LineInterner interner = new LineInterner(2);
+        FrozenLine a = interner.intern(lineOf("a", new CellAttributes()));
+        interner.intern(lineOf("b", new CellAttributes()));
+        interner.intern(lineOf("a", new CellAttributes()));
+        interner.intern(lineOf("c", new CellAttributes()));
+
+        // "b" was the least recently used, so it is the one dropped
+        assertSame(a, interner.intern(lineOf("a", new CellAttributes())));
+        interner.intern(lineOf("b", new CellAttributes()));
+        assertEquals(2, interner.getHits());
+    }
+
+    @Test
+    void testBufferReportsDedupeRatio() {
+        TerminalBuffer buf = new TerminalBuffer(10, 2, 100);
+        for (int i = 0; i < 10; i++) {
+            buf.write(i % 2 == 0 ? "progress" : "warning");
+            buf.cursorNextLine();
+        }
+
+        assertEquals(9, buf.getScrollbackSize());
+        assertEquals(7 / 9.0, buf.getScrollbackDedupeRatio(), 1e-9);
+        assertSame(buf.getScrollbackLines().get(0), buf.getScrollbackLines().get(2));
+    }
+}
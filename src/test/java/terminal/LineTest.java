@@ -2,7 +2,9 @@ package terminal;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 public class LineTest {
@@ -133,4 +135,87 @@ public class LineTest {
         assertEquals(2, inserted);
         assertEquals("ABCDEFGHXY", line.toString());
     }
+
+    @Test
+    void testInsertShiftsAttributes() {
+        Line line = new Line(6);
+        CellAttributes red = new CellAttributes(Color.RED, Color.DEFAULT, EnumSet.of(Style.BOLD));
+        CellAttributes blue = new CellAttributes(Color.BLUE, Color.YELLOW, EnumSet.noneOf(Style.class));
+        line.overwrite(0, "ABC", red);
+        line.insert(1, "xy", blue);
+
+        assertEquals("AxyBC ", line.toString());
+        assertEquals(red, line.getAttributes(0));
+        assertEquals(blue, line.getAttributes(1));
+        assertEquals(blue, line.getAttributes(2));
+        assertEquals(red, line.getAttributes(3));
+        assertEquals(red, line.getAttributes(4));
+        assertEquals(new CellAttributes(), line.getAttributes(5));
+        assertEquals('B', line.getChar(3));
+    }
+
+    @Test
+    void testGetCellReturnsSnapshot() {
+        Line line = new Line(4);
+        line.overwrite(0, "AB", new CellAttributes(Color.RED, Color.DEFAULT, EnumSet.of(Style.ITALIC)));
+
+        Cell cell = line.getCell(1);
+        cell.setCharacter('Z');
+        cell.setForeground(Color.GREEN);
+
+        assertEquals('B', line.getChar(1));
+        assertEquals(Color.RED, line.getCell(1).getForeground());
+        assertTrue(line.getCell(1).hasStyle(Style.ITALIC));
+    }
+
+    @Test
+    void testDirtySpan() {
+        Line line = new Line(10);
+        assertTrue(line.isDirty());
+        assertEquals(0, line.getDirtyStart());
+        assertEquals(10, line.getDirtyEnd());
+
+        line.clearDirty();
+        assertFalse(line.isDirty());
+
+        line.overwrite(3, "ab", new CellAttributes());
+        line.setCell(7, new Cell('x', new CellAttributes()));
+
+        assertTrue(line.isDirty());
+        assertEquals(3, line.getDirtyStart());
+        assertEquals(8, line.getDirtyEnd());
+    }
+
+    @Test
+    void testInsertDirtiesRestOfLine() {
+        Line line = new Line(10);
+        line.clearDirty();
+
+        line.insert(4, "x", new CellAttributes());
+
+        assertEquals(4, line.getDirtyStart());
+        assertEquals(10, line.getDirtyEnd());
+    }
+
+    @Test
+    void testReadStyledRuns() {
+        Line line = new Line(10);
+        CellAttributes red = new CellAttributes(Color.RED, Color.DEFAULT, EnumSet.noneOf(Style.class));
+        line.overwrite(0, "ab", new CellAttributes());
+        line.putCodePoint(2, 0x4E2D, 2, AttributeTable.intern(red));
+        line.overwrite(4, "c", red);
+        line.putText(5, "e\u0301", 1, AttributeTable.DEFAULT_ID);
+
+        List<String> runs = new ArrayList<>();
+        StyledRunSink sink = (column, cells, attributes, text) -> {
+            assertTrue(attributes.isShared());
+            runs.add(column + "+" + cells + " " + attributes.getForeground() + " " + text);
+        };
+        line.readStyledRuns(new StringBuilder(), sink);
+        assertEquals(List.of("0+2 DEFAULT ab", "2+3 RED \u4E2Dc", "5+5 DEFAULT e\u0301    "), runs);
+
+        runs.clear();
+        line.readStyledRuns(3, 6, new StringBuilder(), sink);
+        assertEquals(List.of("3+2 RED c", "5+1 DEFAULT e\u0301"), runs);
+    }
 }
@@ -0,0 +1,134 @@
+package terminal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelScanTest {
+
+    private static TerminalBuffer filledBuffer(int lines) {
+        TerminalBuffer buf = new TerminalBuffer(40, 10, lines);
+        for (int i = 0; i < lines; i++) {
+            buf.write("row " + i + (i % 3 == 0 ? " error code=" + (i % 17) : " ok") + (i % 5 == 0 ? " error" : ""));
+            buf.cursorNextLine();
+        }
+        return buf;
+    }
+
+    @Test
+    void testMatchesArriveInRowOrder() {
+        TerminalBuffer buf = filledBuffer(20_000);
+        Pattern pattern = Pattern.compile("error( code=\\d+)?");
+
+        List<SearchMatch> matches = Collections.synchronizedList(new ArrayList<>());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelScan scan = ParallelScan.start(buf.snapshot(), pattern, matches::add, pool);
+            scan.join();
+            assertTrue(scan.isDone());
+            assertEquals(0, scan.getSkippedRows());
+        } finally {
+            pool.shutdown();
+        }
+
+        List<int[]> expected = new ArrayList<>();
+        int rows = buf.getScrollbackSize() + buf.getHeight();
+        for (int row = 0; row < rows; row++) {
+            Matcher matcher = pattern.matcher(buf.getLineAsString(row).stripTrailing());
+            while (matcher.find()) {
+                expected.add(new int[]{row, matcher.start(), matcher.end()});
+            }
+        }
+
+        assertEquals(expected.size(), matches.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i)[0], matches.get(i).getGlobalRow());
+            assertEquals(expected.get(i)[1], matches.get(i).getStartColumn());
+            assertEquals(expected.get(i)[2], matches.get(i).getEndColumn());
+        }
+    }
+
+    @Test
+    void testScanSeesSnapshotNotLaterWrites() {
+        TerminalBuffer buf = new TerminalBuffer(10, 2, 10);
+        buf.write("needle");
+        List<SearchMatch> matches = new ArrayList<>();
+        TerminalSnapshot snapshot = buf.snapshot();
+
+        buf.cursorSetPosition(0, 0);
+        buf.write("hay");
+        ParallelScan.start(snapshot, Pattern.compile("needle"), matches::add).join();
+
+        assertEquals(1, matches.size());
+        assertEquals(0, matches.getFirst().getGlobalRow());
+    }
+
+    @Test
+    void testEvictedSpilledRowsAreCountedAsSkipped(@TempDir Path tempDir) {
+        try (TerminalBuffer buf = new TerminalBuffer(10, 1, 100, tempDir.resolve("spill"), 4)) {
+            for (int i = 0; i < 100; i++) {
+                buf.write(String.format("needle%02d", i));
+                buf.cursorNextLine();
+            }
+            TerminalSnapshot snapshot = buf.snapshot();
+            for (int i = 0; i < 30; i++) {
+                buf.write("hay");
+                buf.cursorNextLine();
+            }
+            List<SearchMatch> matches = new ArrayList<>();
+
+            ParallelScan scan = ParallelScan.start(snapshot, Pattern.compile("needle"), matches::add);
+            scan.join();
+
+            assertEquals(30, snapshot.getFirstAvailableRow());
+            assertEquals(30, scan.getSkippedRows());
+            assertEquals(70, matches.size());
+            assertEquals(30, matches.getFirst().getGlobalRow());
+        }
+    }
+
+    @Test
+    void testCancelStopsDelivery() {
+        TerminalBuffer buf = filledBuffer(20_000);
+        List<SearchMatch> matches = Collections.synchronizedList(new ArrayList<>());
+        ParallelScan[] scan = new ParallelScan[1];
+        Object started = new Object();
+
+        synchronized (started) {
+            scan[0] = buf.scan(Pattern.compile("error"), match -> {
+                synchronized (started) {
+                    matches.add(match);
+                    if (matches.size() == 3) {
+                        scan[0].cancel();
+                    }
+                }
+            });
+        }
+        scan[0].join();
+
+        assertTrue(scan[0].isCancelled());
+        assertEquals(3, matches.size());
+    }
+
+    @Test
+    void testWideCharacterColumns() {
+        TerminalBuffer buf = new TerminalBuffer(12, 1, 10);
+        buf.write("世界 error");
+        List<SearchMatch> matches = new ArrayList<>();
+
+        buf.scan(Pattern.compile("err"), matches::add).join();
+
+        assertEquals(1, matches.size());
+        assertEquals(5, matches.getFirst().getStartColumn());
+        assertEquals(8, matches.getFirst().getEndColumn());
+    }
+}
@@ -0,0 +1,200 @@
+package terminal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReflowTest {
+
+    @Test
+    void testSoftWrapIsTracked() {
+        TerminalBuffer buf = new TerminalBuffer(5, 3, 10);
+        buf.write("hello world");
+
+        List<Line> screen = buf.getScreen();
+        assertTrue(screen.get(0).isWrapped());
+        assertTrue(screen.get(1).isWrapped());
+        assertFalse(screen.get(2).isWrapped());
+    }
+
+    @Test
+    void testNarrowingRewrapsAndWideningJoins() {
+        TerminalBuffer buf = new TerminalBuffer(10, 3, 10);
+        buf.write("abcdefghijkl");
+
+        buf.resize(6, 3);
+        assertEquals("abcdef\nghijkl\n      \n", buf.getScreenAsString());
+        // The cursor was just past the last character, so the next one wraps
+        buf.write("m");
+        assertEquals("m     ", buf.getLineAsString(2));
+
+        buf.resize(10, 3);
+        assertEquals("abcdefghij\nklm       \n          \n", buf.getScreenAsString());
+        assertEquals(1, buf.getCursor().getRow());
+        assertEquals(3, buf.getCursor().getColumn());
+    }
+
+    @Test
+    void testCursorStaysOnItsCharacter() {
+        TerminalBuffer buf = new TerminalBuffer(8, 3, 10);
+        buf.write("one");
+        buf.cursorNextLine();
+        buf.write("two three");
+        buf.cursorSetPosition(1, 4);
+
+        buf.resize(5, 3);
+        assertEquals("one  \ntwo t\nhree \n", buf.getScreenAsString());
+        assertEquals(1, buf.getCursor().getRow());
+        assertEquals(4, buf.getCursor().getColumn());
+        assertEquals('t', buf.getCharAt(buf.getScrollbackSize() + 1, 4));
+    }
+
+    @Test
+    void testHeightChangeMovesRowsThroughScrollback() {
+        TerminalBuffer buf = new TerminalBuffer(5, 4, 10);
+        buf.write("a");
+        buf.cursorNextLine();
+        buf.write("b");
+        buf.cursorNextLine();
+        buf.write("c");
+
+        // Rows above the cursor leave first; the blank row below it is dropped
+        buf.resize(5, 2);
+        assertEquals(1, buf.getScrollbackSize());
+        assertEquals("a    ", buf.getLineAsString(0));
+        assertEquals("b    \nc    \n", buf.getScreenAsString());
+        assertEquals(1, buf.getCursor().getRow());
+
+        buf.resize(5, 4);
+        assertEquals(0, buf.getScrollbackSize());
+        assertEquals("a    \nb    \nc    \n     \n", buf.getScreenAsString());
+        assertEquals(2, buf.getCursor().getRow());
+        assertEquals(1, buf.getCursor().getColumn());
+    }
+
+    @Test
+    void testWideCharacterMovesToNextRow() {
+        TerminalBuffer buf = new TerminalBuffer(4, 2, 10);
+        buf.write("ab\u4E2D\u6587");
+
+        buf.resize(3, 2);
+        assertEquals("ab ", buf.getLineAsString(0));
+        int top = buf.getScrollbackSize();
+        assertEquals("\u4E2D", buf.getTextAt(top, 0));
+        assertEquals("\u6587", buf.getTextAt(top + 1, 0));
+        assertEquals(1, buf.getCursor().getRow());
+        assertEquals(2, buf.getCursor().getColumn());
+    }
+
+    @Test
+    void testScrollbackIsReflowedLazily() {
+        TerminalBuffer buf = historyOfWrappedLine();
+
+        buf.resize(8, 1);
+        assertEquals(2, buf.getScrollbackSize());
+        assertEquals("abcd", buf.getLineAsString(0));
+
+        // Scrolling reflows a few history lines at a time
+        buf.cursorNextLine();
+        assertEquals(2, buf.getScrollbackSize());
+        assertEquals("abcdefgh", buf.getLineAsString(0));
+        assertEquals("xy      ", buf.getLineAsString(1));
+        assertFalse(buf.reflowScrollback(Integer.MAX_VALUE));
+    }
+
+    @Test
+    void testExplicitScrollbackReflow() {
+        TerminalBuffer buf = historyOfWrappedLine();
+
+        buf.resize(8, 1);
+        assertFalse(buf.reflowScrollback(Integer.MAX_VALUE));
+        assertEquals("abcdefgh\nxy      \n", buf.getEntireBufferAsString());
+    }
+
+    @Test
+    void testRenumberedScrollbackKeepsSnapshot() {
+        TerminalBuffer buf = historyOfWrappedLine();
+        TerminalSnapshot snapshot = buf.snapshot();
+
+        buf.resize(8, 1);
+        buf.reflowScrollback(Integer.MAX_VALUE);
+
+        assertEquals(0, snapshot.getFirstAvailableRow());
+        assertEquals("abcd", snapshot.getLineAsString(0));
+        assertEquals("efgh", snapshot.getLineAsString(1));
+        assertEquals("xy  ", snapshot.getLineAsString(2));
+        assertEquals("abcdefgh", buf.getLineAsString(0));
+    }
+
+    @Test
+    void testSearchIndexFollowsResize() {
+        TerminalBuffer buf = historyOfWrappedLine();
+        SearchIndex index = buf.getSearchIndex();
+        assertTrue(index.findAll("cde").isEmpty());
+
+        buf.resize(8, 1);
+        assertEquals(List.of(new SearchMatch(0, 0, 2, 5)), index.findAll("cde"));
+    }
+
+    @Test
+    void testResizeToEmptyAndBack() {
+        TerminalBuffer buf = new TerminalBuffer(5, 3, 10);
+        buf.write("abc");
+        buf.cursorNextLine();
+        buf.write("de");
+
+        buf.resize(0, 0);
+        assertEquals("", buf.getScreenAsString());
+        assertEquals(2, buf.getScrollbackSize());
+
+        // The content comes back from the scrollback, with the cursor on the row below it
+        buf.resize(5, 3);
+        assertEquals("abc  \nde   \n     \n", buf.getScreenAsString());
+        assertEquals(0, buf.getScrollbackSize());
+        assertEquals(2, buf.getCursor().getRow());
+        assertEquals(0, buf.getCursor().getColumn());
+
+        buf.resize(0, 3);
+        buf.resize(3, 1);
+        buf.write("xyz");
+        assertEquals("xyz\n", buf.getScreenAsString());
+        buf.reflowScrollback(Integer.MAX_VALUE);
+        assertEquals("abc\nde \nxyz\n", buf.getEntireBufferAsString());
+    }
+
+    @Test
+    void testBlankScreenLeavesNothingWhenResizedToEmpty() {
+        TerminalBuffer buf = new TerminalBuffer(5, 3, 10);
+
+        buf.resize(5, 0);
+        buf.resize(5, 3);
+
+        assertEquals(0, buf.getScrollbackSize());
+        assertEquals(0, buf.getCursor().getRow());
+    }
+
+    @Test
+    void testResizePushesThroughInterner() {
+        TerminalBuffer buf = new TerminalBuffer(4, 3, 10);
+        for (int row = 0; row < 3; row++) {
+            buf.cursorSetPosition(row, 0);
+            buf.write("same");
+        }
+
+        buf.resize(4, 1);
+
+        assertEquals(2, buf.getScrollbackSize());
+        assertSame(buf.getScrollbackLines().get(0), buf.getScrollbackLines().get(1));
+    }
+
+    // Scrollback "abcd" wrapped onto "efgh", screen "xy"
+    private static TerminalBuffer historyOfWrappedLine() {
+        TerminalBuffer buf = new TerminalBuffer(4, 1, 100);
+        buf.write("abcdefgh");
+        buf.cursorNextLine();
+        buf.write("xy");
+        return buf;
+    }
+}
@@ -0,0 +1,149 @@
+package terminal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScrollbackSpillFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static FrozenLine lineOf(String text) {
+        Line line = new Line(Math.max(1, text.length()));
+        line.overwrite(0, text, new CellAttributes());
+        return line.freeze();
+    }
+
+    @Test
+    void testAppendAndReadAcrossBlocks() {
+        try (ScrollbackSpillFile spill = new ScrollbackSpillFile(tempDir.resolve("spill"), 4)) {
+            for (int i = 0; i < 10; i++) {
+                spill.append(lineOf("line" + i));
+            }
+
+            assertEquals(10, spill.size());
+            assertTrue(spill.getFileSize() > 0);
+            for (int i = 9; i >= 0; i--) {
+                assertEquals("line" + i, spill.get(i).toString());
+            }
+        }
+    }
+
+    @Test
+    void testEvictionAcrossBlocks() {
+        try (ScrollbackSpillFile spill = new ScrollbackSpillFile(tempDir.resolve("spill"), 3)) {
+            for (int i = 0; i < 8; i++) {
+                spill.append(lineOf("l" + i));
+            }
+            for (int i = 0; i < 5; i++) {
+                spill.evictOldest();
+            }
+
+            assertEquals(3, spill.size());
+            assertEquals("l5", spill.get(0).toString());
+            assertEquals("l7", spill.get(2).toString());
+            assertThrows(IndexOutOfBoundsException.class, () -> spill.get(3));
+        }
+    }
+
+    @Test
+    void testCompactionKeepsLiveLines() {
+        String padding = "x".repeat(2000);
+        try (ScrollbackSpillFile spill = new ScrollbackSpillFile(tempDir.resolve("spill"), 8)) {
+            for (int i = 0; i < 3000; i++) {
+                spill.append(lineOf(i + padding));
+                if (spill.size() > 100) {
+                    spill.evictOldest();
+                }
+            }
+
+            // Without compaction the file would hold all 3000 lines
+            assertTrue(spill.getFileSize() < 1000L * padding.length(), "file size " + spill.getFileSize());
+            assertEquals(100, spill.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals((2900 + i) + padding, spill.get(i).toString());
+            }
+        }
+    }
+
+    @Test
+    void testClear() {
+        try (ScrollbackSpillFile spill = new ScrollbackSpillFile(tempDir.resolve("spill"), 2)) {
+            for (int i = 0; i < 5; i++) {
+                spill.append(lineOf("a" + i));
+            }
+            spill.clear();
+
+            assertEquals(0, spill.size());
+            spill.append(lineOf("b"));
+            assertEquals("b", spill.get(0).toString());
+        }
+    }
+
+    @Test
+    void testFileIsDeletedOnClose() {
+        Path path = tempDir.resolve("spill");
+        ScrollbackSpillFile spill = new ScrollbackSpillFile(path, 2);
+        spill.append(lineOf("a"));
+        spill.close();
+
+        assertFalse(Files.exists(path));
+    }
+
+    @Test
+    void testExistingFileIsNeverOverwritten() throws IOException {
+        Path path = tempDir.resolve("notes.txt");
+        Files.writeString(path, "keep me");
+
+        assertThrows(UncheckedIOException.class, () -> new ScrollbackSpillFile(path, 2));
+        assertThrows(UncheckedIOException.class, () -> new TerminalBuffer(6, 2, 100, path, 10));
+        assertEquals("keep me", Files.readString(path));
+    }
+
+    @Test
+    void testScrollbackLinesIsLiveReadOnlyView() {
+        try (TerminalBuffer buf = new TerminalBuffer(6, 2, 1000, tempDir.resolve("history"), 10)) {
+            List<ReadableLine> lines = buf.getScrollbackLines();
+            for (int i = 0; i < 100; i++) {
+                buf.write(String.format("%06d", i));
+            }
+
+            assertEquals(98, lines.size());
+            assertEquals("000000", lines.get(0).toString());
+            assertEquals("000097", lines.get(97).toString());
+            assertThrows(UnsupportedOperationException.class, () -> lines.remove(0));
+        }
+    }
+
+    @Test
+    void testBufferWithSpilledHistory() {
+        CellAttributes red = new CellAttributes(Color.RED, Color.DEFAULT, EnumSet.of(Style.UNDERLINE));
+        try (TerminalBuffer buf = new TerminalBuffer(6, 2, 1000, tempDir.resolve("history"), 10)) {
+            for (int i = 0; i < 1500; i++) {
+                if (i % 2 == 0) {
+                    buf.setForeground(Color.RED);
+                    buf.addStyle(Style.UNDERLINE);
+                } else {
+                    buf.resetAttributes();
+                }
+                buf.write(String.format("%06d", i));
+            }
+
+            assertEquals(1000, buf.getScrollbackLines().size());
+            assertEquals("000498", buf.getLineAsString(0));
+            assertEquals("001497", buf.getLineAsString(999));
+            assertEquals("001498", buf.getLineAsString(1000));
+            assertEquals(red, buf.getAttributesAt(0, 3));
+            assertEquals(new CellAttributes(), buf.getAttributesAt(1, 3));
+        }
+    }
+}
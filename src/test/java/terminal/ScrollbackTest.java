@@ -0,0 +1,160 @@
+package terminal;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScrollbackTest {
+
+    private static FrozenLine lineOf(String text) {
+        Line line = new Line(text.length());
+        line.overwrite(0, text, new CellAttributes());
+        return line.freeze();
+    }
+
+    @Test
+    void testPushAndGet() {
+        Scrollback scrollback = new Scrollback(10);
+        scrollback.push(lineOf("a"));
+        scrollback.push(lineOf("b"));
+
+        assertEquals(2, scrollback.size());
+        assertEquals("a", scrollback.get(0).toString());
+        assertEquals("b", scrollback.get(1).toString());
+    }
+
+    @Test
+    void testEvictsOldestWhenFull() {
+        Scrollback scrollback = new Scrollback(3);
+        for (int i = 1; i <= 5; i++) {
+            scrollback.push(lineOf(Integer.toString(i)));
+        }
+
+        assertEquals(3, scrollback.size());
+        assertEquals(2, scrollback.getEvictedCount());
+        assertEquals("3", scrollback.get(0).toString());
+        assertEquals("4", scrollback.get(1).toString());
+        assertEquals("5", scrollback.get(2).toString());
+    }
+
+    @Test
+    void testGrowthKeepsOrderAfterWrapAround() {
+        Scrollback scrollback = new Scrollback(1000);
+        for (int i = 0; i < 500; i++) {
+            scrollback.push(lineOf(Integer.toString(i)));
+        }
+
+        assertEquals(500, scrollback.size());
+        for (int i = 0; i < 500; i++) {
+            assertEquals(Integer.toString(i), scrollback.get(i).toString());
+        }
+    }
+
+    @Test
+    void testZeroCapacity() {
+        Scrollback scrollback = new Scrollback(0);
+        scrollback.push(lineOf("x"));
+
+        assertTrue(scrollback.isEmpty());
+        assertEquals(1, scrollback.getEvictedCount());
+    }
+
+    @Test
+    void testOutOfBounds() {
+        Scrollback scrollback = new Scrollback(5);
+        scrollback.push(lineOf("x"));
+
+        assertThrows(IndexOutOfBoundsException.class, () -> scrollback.get(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> scrollback.get(1));
+    }
+
+    @Test
+    void testClear() {
+        Scrollback scrollback = new Scrollback(2);
+        scrollback.push(lineOf("1"));
+        scrollback.push(lineOf("2"));
+        scrollback.push(lineOf("3"));
+        scrollback.clear();
+
+        assertTrue(scrollback.isEmpty());
+        scrollback.push(lineOf("4"));
+        assertEquals("4", scrollback.get(0).toString());
+    }
+
+    @Test
+    void testAccessTimeIndependentOfHistorySize() {
+        TerminalBuffer small = filledBuffer(100);
+        TerminalBuffer large = filledBuffer(100_000);
+
+        // Warm up both paths before measuring
+        readHistory(small, 200_000);
+        readHistory(large, 200_000);
+
+        long smallNanos = Long.MAX_VALUE;
+        long largeNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            smallNanos = Math.min(smallNanos, readHistory(small, 200_000));
+            largeNanos = Math.min(largeNanos, readHistory(large, 200_000));
+        }
+
+        // Copying the history on every access would make the large buffer about a thousand times slower
+        assertTrue(largeNanos < smallNanos * 20 + 20_000_000,
+                "small: " + smallNanos + "ns, large: " + largeNanos + "ns");
+    }
+
+    private static TerminalBuffer filledBuffer(int history) {
+        TerminalBuffer buffer = new TerminalBuffer(10, 5, history);
+        for (int i = 0; i < history + 5; i++) {
+            buffer.write("0123456789");
+        }
+        return buffer;
+    }
+
+    private static long readHistory(TerminalBuffer buffer, int reads) {
+        int history = buffer.getScrollbackLines().size();
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < reads; i++) {
+            checksum += buffer.getCharAt((int) ((i * 7919L) % history), i % 10);
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue(checksum > 0);
+        return elapsed;
+    }
+
+    @Test
+    void testReflowReplacesNewestParagraphsFirst() {
+        Scrollback scrollback = new Scrollback(10);
+        Line wrapped = new Line(2);
+        wrapped.overwrite(0, "ab", new CellAttributes());
+        wrapped.setWrapped(true);
+        scrollback.push(wrapped.freeze());
+        scrollback.push(lineOf("cd"));
+        scrollback.push(lineOf("ef"));
+
+        scrollback.beginReflow(4);
+        assertTrue(scrollback.reflow(1));
+        assertEquals(3, scrollback.size());
+        assertEquals(2, scrollback.get(0).getWidth());
+        assertEquals("ef  ", scrollback.get(2).toString());
+
+        assertFalse(scrollback.reflow(Integer.MAX_VALUE));
+        assertEquals(2, scrollback.size());
+        assertEquals("abcd", scrollback.get(0).toString());
+        assertEquals("ef  ", scrollback.get(1).toString());
+    }
+
+    @Test
+    void testReflowBeyondMemoryLimitEvictsOldest() {
+        Scrollback scrollback = new Scrollback(2);
+        scrollback.push(lineOf("abcd"));
+        scrollback.push(lineOf("efgh"));
+
+        scrollback.beginReflow(2);
+        assertFalse(scrollback.reflow(Integer.MAX_VALUE));
+        assertEquals(2, scrollback.size());
+        assertEquals("ef", scrollback.get(0).toString());
+        assertEquals("gh", scrollback.get(1).toString());
+        assertEquals(1, scrollback.getEvictedCount());
+    }
+}
@@ -0,0 +1,166 @@
+package terminal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchIndexTest {
+
+    private static TerminalBuffer bufferWithLines(int width, int height, int maxScrollback, String... lines) {
+        TerminalBuffer buf = new TerminalBuffer(width, height, maxScrollback);
+        for (int i = 0; i < lines.length; i++) {
+            if (i > 0) {
+                buf.cursorNextLine();
+            }
+            buf.write(lines[i]);
+        }
+        return buf;
+    }
+
+    // Expected matches by scanning every row's text
+    private static List<int[]> bruteForce(TerminalBuffer buf, Pattern pattern) {
+        List<int[]> matches = new ArrayList<>();
+        int rows = buf.getScrollbackSize() + buf.getHeight();
+        for (int row = 0; row < rows; row++) {
+            Matcher matcher = pattern.matcher(buf.getLineAsString(row).stripTrailing());
+            int from = 0;
+            while (from <= matcher.regionEnd() && matcher.find(from)) {
+                matches.add(new int[]{row, matcher.start(), matcher.end()});
+                from = matcher.start() + 1;
+            }
+        }
+        return matches;
+    }
+
+    private static void assertMatch(SearchMatch match, int row, int start, int end) {
+        assertNotNull(match);
+        assertEquals(row, match.getGlobalRow());
+        assertEquals(start, match.getStartColumn());
+        assertEquals(end, match.getEndColumn());
+    }
+
+    @Test
+    void testSubstringAcrossScrollbackAndScreen() {
+        TerminalBuffer buf = bufferWithLines(20, 2, 100, "error one", "ok", "error two error", "done");
+        SearchIndex index = buf.getSearchIndex();
+
+        SearchMatch first = index.findNext("error", null);
+        assertMatch(first, 0, 0, 5);
+        SearchMatch second = index.findNext("error", first);
+        assertMatch(second, 2, 0, 5);
+        SearchMatch third = index.findNext("error", second);
+        assertMatch(third, 2, 10, 15);
+        assertNull(index.findNext("error", third));
+
+        assertEquals(second, index.findPrevious("error", third));
+        assertEquals(third, index.findPrevious("error", null));
+        assertNull(index.findPrevious("error", first));
+        assertMatch(index.findNext("done", null), 3, 0, 4);
+    }
+
+    @Test
+    void testRegexQueries() {
+        TerminalBuffer buf = bufferWithLines(20, 1, 100, "took 12ms", "took 345ms", "failed", "took ms");
+        SearchIndex index = buf.getSearchIndex();
+
+        assertEquals(2, index.findAll(Pattern.compile("took \\d+ms")).size());
+        assertMatch(index.findNext(Pattern.compile("failed|345"), null), 1, 5, 8);
+        assertMatch(index.findPrevious(Pattern.compile("(?i)FAILED"), null), 2, 0, 6);
+        assertMatch(index.findNext(Pattern.compile("ms$"), null), 0, 7, 9);
+    }
+
+    @Test
+    void testNavigationSurvivesNewOutput() {
+        TerminalBuffer buf = bufferWithLines(10, 2, 100, "needle", "x", "needle", "y");
+        SearchIndex index = buf.getSearchIndex();
+        SearchMatch first = index.findNext("needle", null);
+
+        buf.cursorNextLine();
+        buf.write("z");
+
+        SearchMatch second = index.findNext("needle", first);
+        assertMatch(second, 2, 0, 6);
+        assertEquals("needle    ", buf.getLineAsString(second.getGlobalRow()));
+    }
+
+    @Test
+    void testEvictedLinesAreNotFound() {
+        TerminalBuffer buf = new TerminalBuffer(16, 2, 50);
+        SearchIndex index = buf.getSearchIndex();
+        for (int i = 0; i < 5000; i++) {
+            buf.write(String.format("line %05d", i));
+            buf.cursorNextLine();
+        }
+
+        assertNull(index.findNext("line 00000", null));
+        assertMatch(index.findNext("line 04960", null), 11, 0, 10);
+        assertEquals(51, index.findAll("line").size());
+    }
+
+    @Test
+    void testMatchesBruteForceScan() {
+        TerminalBuffer buf = new TerminalBuffer(24, 5, 3000);
+        String[] words = {"alpha", "beta", "gamma", "delta", "Alpha", "omega"};
+        for (int i = 0; i < 4000; i++) {
+            buf.write(words[i % words.length] + " " + words[(i * 7) % words.length] + " " + (i % 97));
+            buf.cursorNextLine();
+            if (i == 1000) {
+                buf.getSearchIndex();
+            }
+        }
+        SearchIndex index = buf.getSearchIndex();
+
+        for (String regex : new String[]{"alpha", "pha b", "a g", "mega 9", "(?i)alpha", "ga+m", "del[tx]a \\w+ 4"}) {
+            Pattern pattern = Pattern.compile(regex);
+            List<int[]> expected = bruteForce(buf, pattern);
+            List<SearchMatch> actual = index.findAll(pattern);
+            assertEquals(expected.size(), actual.size(), regex);
+            for (int i = 0; i < expected.size(); i++) {
+                assertMatch(actual.get(i), expected.get(i)[0], expected.get(i)[1], expected.get(i)[2]);
+            }
+        }
+        assertEquals(bruteForce(buf, Pattern.compile("gamma", Pattern.LITERAL)).size(), index.findAll("gamma").size());
+    }
+
+    @Test
+    void testWideCharacterColumns() {
+        TerminalBuffer buf = bufferWithLines(12, 1, 10, "世界 hello", "next");
+        SearchIndex index = buf.getSearchIndex();
+
+        assertMatch(index.findNext("hello", null), 0, 5, 10);
+        assertMatch(index.findNext("界", null), 0, 2, 4);
+    }
+
+    @Test
+    void testRequiredLiteral() {
+        assertEquals("error: ", SearchIndex.requiredLiteral(Pattern.compile("error: \\d+")));
+        assertEquals("failed", SearchIndex.requiredLiteral(Pattern.compile("^.*failed")));
+        assertEquals("abc", SearchIndex.requiredLiteral(Pattern.compile("abcd?e")));
+        assertEquals("", SearchIndex.requiredLiteral(Pattern.compile("foo|bar")));
+        assertEquals("", SearchIndex.requiredLiteral(Pattern.compile("\\p{L}+")));
+        assertEquals("x.y", SearchIndex.requiredLiteral(Pattern.compile("x.y", Pattern.LITERAL)));
+        assertEquals("a.b", SearchIndex.requiredLiteral(Pattern.compile("a\\.b[cd]")));
+        assertEquals("tail", SearchIndex.requiredLiteral(Pattern.compile("(head)?tail")));
+    }
+
+    @Test
+    void testRareTermInLargeHistoryScansOneBlock() {
+        TerminalBuffer buf = new TerminalBuffer(80, 24, 200_000);
+        SearchIndex index = buf.getSearchIndex();
+        for (int i = 0; i < 200_000; i++) {
+            buf.write(i == 1234 ? "Exception in thread main" : "[INFO] Building module " + (i % 500));
+            buf.cursorNextLine();
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertMatch(index.findNext("Exception", null), 1234 - (int) buf.firstSequence(), 0, 9);
+        }
+        // Only the lines of the block holding the match are read, not the 1234 before it
+        assertTrue(index.getLinesScanned() <= 10 * 64, "scanned " + index.getLinesScanned() + " lines");
+    }
+}
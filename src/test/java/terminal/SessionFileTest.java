@@ -0,0 +1,233 @@
+package terminal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static TerminalBuffer sampleBuffer() {
+        TerminalBuffer buf = new TerminalBuffer(6, 3, 100);
+        for (int i = 0; i < 5; i++) {
+            buf.write("line" + i);
+            buf.cursorNextLine();
+        }
+        buf.setForeground(Color.RED);
+        buf.addStyle(Style.BOLD);
+        buf.write("\u4E2De\u0301 wrapped");
+        buf.setScrollRegion(0, 1);
+        buf.cursorSetPosition(1, 5);
+        buf.write("x");
+        return buf;
+    }
+
+    @Test
+    void testSaveOverFileRestoredFrom() throws IOException {
+        Path file = tempDir.resolve("session");
+        sampleBuffer().save(file);
+        TerminalBuffer restored = TerminalBuffer.restore(file);
+        String scrollback = restored.getLineAsString(0) + restored.getLineAsString(1);
+
+        restored.cursorSetPosition(2, 0);
+        restored.write("after");
+        restored.save(file);
+        TerminalBuffer again = TerminalBuffer.restore(file);
+
+        // The first buffer still reads its scrollback from the file it was restored from
+        assertEquals(scrollback, restored.getLineAsString(0) + restored.getLineAsString(1));
+        assertEquals(restored.getEntireBufferAsString(), again.getEntireBufferAsString());
+        assertTrue(again.getEntireBufferAsString().contains("after"));
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        Path file = tempDir.resolve("session");
+        TerminalBuffer original = sampleBuffer();
+        original.save(file);
+        TerminalBuffer restored = TerminalBuffer.restore(file);
+
+        assertEquals(original.getEntireBufferAsString(), restored.getEntireBufferAsString());
+        assertEquals(6, restored.getWidth());
+        assertEquals(3, restored.getHeight());
+        assertEquals(100, restored.getMaxScrollback());
+        assertEquals(original.getScrollbackSize(), restored.getScrollbackSize());
+        assertEquals(1, restored.getCursor().getRow());
+        assertEquals(5, restored.getCursor().getColumn());
+        assertEquals(0, restored.getScrollTop());
+        assertEquals(1, restored.getScrollBottom());
+        assertEquals(original.getCurrentAttributes(), restored.getCurrentAttributes());
+
+        int lastRestoredRow = restored.getScrollbackSize() - 1;
+        for (int row = lastRestoredRow; row < lastRestoredRow + 3; row++) {
+            for (int column = 0; column < 6; column++) {
+                assertEquals(original.getTextAt(row, column), restored.getTextAt(row, column));
+                assertEquals(original.getAttributesAt(row, column), restored.getAttributesAt(row, column));
+            }
+        }
+        assertEquals(original.getScreen().get(0).isWrapped(), restored.getScreen().get(0).isWrapped());
+
+        // The pending wrap and attributes carry over, so both continue identically
+        original.write("yz");
+        restored.write("yz");
+        assertEquals(original.getEntireBufferAsString(), restored.getEntireBufferAsString());
+    }
+
+    @Test
+    void testSaveAfterResizeReflowsScrollback() throws IOException {
+        Path file = tempDir.resolve("session");
+        TerminalBuffer original = new TerminalBuffer(10, 2, 100);
+        for (int i = 0; i < 10; i++) {
+            original.write("line" + i + "abcd");
+            original.cursorNextLine();
+        }
+        original.resize(5, 2);
+        original.save(file);
+
+        TerminalBuffer restored = TerminalBuffer.restore(file);
+        original.reflowScrollback(Integer.MAX_VALUE);
+        assertFalse(restored.reflowScrollback(Integer.MAX_VALUE));
+        assertEquals(original.getScrollbackSize(), restored.getScrollbackSize());
+        assertEquals(5, restored.getScrollbackLines().get(0).getWidth());
+        assertEquals(original.getEntireBufferAsString(), restored.getEntireBufferAsString());
+    }
+
+    @Test
+    void testSaveLeavesSnapshotLinesShared() throws IOException {
+        TerminalBuffer buf = sampleBuffer();
+        TerminalSnapshot snapshot = buf.snapshot();
+        buf.save(tempDir.resolve("session"));
+
+        for (int row = 0; row < buf.getHeight(); row++) {
+            assertSame(snapshot.getScreenLine(row), buf.screenLine(row));
+        }
+    }
+
+    @Test
+    void testAlternateScreenRoundTrip() throws IOException {
+        Path file = tempDir.resolve("session");
+        TerminalBuffer original = sampleBuffer();
+        original.enterAlternateScreen();
+        original.setForeground(Color.BLUE);
+        original.cursorSetPosition(2, 1);
+        original.write("vim");
+        original.save(file);
+
+        TerminalBuffer restored = TerminalBuffer.restore(file);
+        assertTrue(restored.isAlternateScreenActive());
+        assertEquals(original.getEntireBufferAsString(), restored.getEntireBufferAsString());
+        assertEquals(original.getCursor().getColumn(), restored.getCursor().getColumn());
+        assertEquals(original.getCurrentAttributes(), restored.getCurrentAttributes());
+
+        original.leaveAlternateScreen();
+        restored.leaveAlternateScreen();
+        assertEquals(original.getEntireBufferAsString(), restored.getEntireBufferAsString());
+        assertEquals(1, restored.getCursor().getRow());
+        assertEquals(5, restored.getCursor().getColumn());
+        assertEquals(original.getCurrentAttributes(), restored.getCurrentAttributes());
+        assertEquals(original.getAttributesAt(original.getScrollbackSize() + 1, 5),
+                restored.getAttributesAt(restored.getScrollbackSize() + 1, 5));
+
+        // Both still have the pending wrap saved with the primary screen
+        original.write("yz");
+        restored.write("yz");
+        assertEquals(original.getEntireBufferAsString(), restored.getEntireBufferAsString());
+    }
+
+    @Test
+    void testRestoredScrollbackIsEvictedFirst() throws IOException {
+        Path file = tempDir.resolve("session");
+        TerminalBuffer original = new TerminalBuffer(8, 2, 4);
+        for (int i = 0; i < 6; i++) {
+            original.write("line" + i);
+            original.cursorNextLine();
+        }
+        original.save(file);
+
+        TerminalBuffer restored = TerminalBuffer.restore(file);
+        assertEquals("line1", restored.getLineAsString(0).trim());
+        restored.write("new");
+        restored.cursorNextLine();
+        restored.cursorNextLine();
+
+        assertEquals(4, restored.getScrollbackSize());
+        assertEquals("line3", restored.getLineAsString(0).trim());
+        assertEquals("line5", restored.getLineAsString(2).trim());
+        assertEquals("new", restored.getLineAsString(3).trim());
+    }
+
+    @Test
+    void testAttributeIdsAreTranslated() throws IOException {
+        Path file = tempDir.resolve("session");
+        TerminalBuffer original = new TerminalBuffer(4, 1, 10);
+        CellAttributes red = new CellAttributes(Color.RED, Color.DEFAULT, EnumSet.noneOf(Style.class));
+        original.setForeground(Color.RED);
+        original.write("a");
+        original.resetAttributes();
+        original.write("b");
+        original.cursorNextLine();
+        original.save(file);
+
+        // Swapping two table entries, as if another process had numbered them the other way round
+        int redId = AttributeTable.intern(red);
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer data = ByteBuffer.wrap(bytes);
+        int table = 57;
+        int defaultKey = data.getInt(table);
+        data.putInt(table, data.getInt(table + 4 * redId));
+        data.putInt(table + 4 * redId, defaultKey);
+        Files.write(file, bytes);
+
+        TerminalBuffer restored = TerminalBuffer.restore(file);
+        assertEquals(new CellAttributes(), restored.getAttributesAt(0, 0));
+        assertEquals(red, restored.getAttributesAt(0, 1));
+    }
+
+    @Test
+    void testLargeSessionRestoresLazily() throws IOException {
+        Path file = tempDir.resolve("session");
+        TerminalBuffer original = new TerminalBuffer(20, 2, 100_000);
+        for (int i = 0; i < 100_000; i++) {
+            original.write("line " + i);
+            original.cursorNextLine();
+        }
+        original.save(file);
+
+        TerminalBuffer restored = TerminalBuffer.restore(file);
+        assertEquals(99_999, restored.getScrollbackSize());
+        assertEquals("line 0", restored.getLineAsString(0).trim());
+        assertEquals("line 54321", restored.getLineAsString(54321).trim());
+        assertEquals(original.getEntireBufferAsString(), restored.getEntireBufferAsString());
+    }
+
+    @Test
+    void testRejectsOtherFiles() throws IOException {
+        Path file = tempDir.resolve("session");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IllegalStateException.class, () -> TerminalBuffer.restore(file));
+
+        sampleBuffer().save(file);
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).putInt(4, SessionFile.VERSION + 1);
+        Files.write(file, bytes);
+        assertThrows(IllegalStateException.class, () -> TerminalBuffer.restore(file));
+
+        sampleBuffer().save(file);
+        Files.write(file, Arrays.copyOf(Files.readAllBytes(file), 60));
+        assertThrows(IllegalStateException.class, () -> TerminalBuffer.restore(file));
+    }
+}
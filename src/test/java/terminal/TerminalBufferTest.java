@@ -2,7 +2,13 @@ package terminal;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.util.EnumSet;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -325,4 +331,553 @@ public class TerminalBufferTest {
         assertEquals(new CellAttributes(), buf.getCurrentAttributes());
     }
 
+    @Test
+    public void testGetAttributesAtSharesInstances() {
+        TerminalBuffer buf = new TerminalBuffer(5, 2, 10);
+        buf.setForeground(Color.GREEN);
+        buf.write("Hi");
+        buf.setForeground(Color.RED);
+        buf.write("!");
+
+        assertSame(buf.getAttributesAt(0, 0), buf.getAttributesAt(0, 1));
+        assertNotSame(buf.getAttributesAt(0, 1), buf.getAttributesAt(0, 2));
+        assertEquals(Color.GREEN, buf.getAttributesAt(0, 0).getForeground());
+        assertEquals(Color.RED, buf.getAttributesAt(0, 2).getForeground());
+        assertThrows(UnsupportedOperationException.class, () -> buf.getAttributesAt(0, 0).setForeground(Color.BLUE));
+    }
+
+    @Test
+    public void testGlobalRowsSpanScrollbackAndScreen() {
+        TerminalBuffer buf = new TerminalBuffer(3, 2, 2);
+        buf.write("aaabbbcccdddeee");
+
+        // "aaa" was evicted, scrollback holds "bbb" and "ccc"
+        assertEquals(2, buf.getScrollback().size());
+        assertEquals("bbb", buf.getLineAsString(0));
+        assertEquals("ccc", buf.getLineAsString(1));
+        assertEquals("ddd", buf.getLineAsString(2));
+        assertEquals("eee", buf.getLineAsString(3));
+        assertEquals('c', buf.getCharAt(1, 2));
+        assertThrows(IndexOutOfBoundsException.class, () -> buf.getLineAsString(4));
+    }
+
+    @Test
+    public void testBulkWriteMatchesPutChar() {
+        TerminalBuffer bulk = new TerminalBuffer(7, 3, 20);
+        TerminalBuffer perChar = new TerminalBuffer(7, 3, 20);
+        String[] chunks = {"abc", "defghij", "k", "", "lmnopqrstuvwxyz0123456789", "ABCDEFG", "H"};
+
+        for (String chunk : chunks) {
+            bulk.write(chunk);
+            for (char c : chunk.toCharArray()) {
+                perChar.putChar(c);
+            }
+            assertEquals(perChar.getEntireBufferAsString(), bulk.getEntireBufferAsString());
+            assertEquals(perChar.getCursor().getRow(), bulk.getCursor().getRow());
+            assertEquals(perChar.getCursor().getColumn(), bulk.getCursor().getColumn());
+        }
+    }
+
+    @Test
+    public void testBulkWriteDefersWrapAtRightMargin() {
+        TerminalBuffer buf = new TerminalBuffer(5, 2, 10);
+        buf.write("ABCDE");
+
+        assertEquals(0, buf.getCursor().getRow());
+        assertEquals(4, buf.getCursor().getColumn());
+        assertTrue(buf.getScrollback().isEmpty());
+
+        buf.write("FGHIJ");
+        buf.write("K");
+
+        assertEquals("ABCDE", buf.getLineAsString(0));
+        assertEquals("FGHIJ", buf.getLineAsString(1));
+        assertEquals("K    ", buf.getLineAsString(2));
+        assertEquals(1, buf.getCursor().getColumn());
+    }
+
+    @Test
+    public void testWriteCharArrayRange() {
+        TerminalBuffer buf = new TerminalBuffer(4, 2, 10);
+        buf.setForeground(Color.YELLOW);
+        char[] text = "xxHello, Worldxx".toCharArray();
+
+        buf.write(text, 2, 12);
+
+        assertEquals("o, W", buf.getLineAsString(1));
+        assertEquals("orld", buf.getLineAsString(2));
+        assertEquals("Hell", buf.getLineAsString(0));
+        assertEquals(Color.YELLOW, buf.getAttributesAt(0, 0).getForeground());
+        assertThrows(IndexOutOfBoundsException.class, () -> buf.write(text, 10, 10));
+    }
+
+    @Test
+    public void testScrollRecyclesTopLine() {
+        TerminalBuffer buf = new TerminalBuffer(3, 2, 2);
+        buf.write("aaabbb");
+
+        Line top = buf.getScreen().get(0);
+        buf.insertEmptyLineAtBottom();
+
+        assertSame(top, buf.getScreen().get(1));
+        assertEquals("   ", top.toString());
+        assertEquals("aaa", buf.getLineAsString(0));
+        assertEquals("bbb", buf.getLineAsString(1));
+        assertEquals("   ", buf.getLineAsString(2));
+    }
+
+    @Test
+    public void testScreenViewFollowsScrolling() {
+        TerminalBuffer buf = new TerminalBuffer(2, 3, 0);
+        buf.write("aabbccddee");
+
+        List<Line> screen = buf.getScreen();
+        assertEquals(3, screen.size());
+        assertEquals("cc", screen.get(0).toString());
+        assertEquals("dd", screen.get(1).toString());
+        assertEquals("ee", screen.get(2).toString());
+        assertEquals("cc\ndd\nee\n", buf.getScreenAsString());
+        assertThrows(UnsupportedOperationException.class, () -> screen.remove(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> screen.get(3));
+    }
+
+    @Test
+    public void testCollectDamage() {
+        TerminalBuffer buf = new TerminalBuffer(10, 3, 10);
+
+        Damage initial = buf.collectDamage();
+        assertEquals(3, initial.getRowCount());
+        assertTrue(initial.isRowDirty(0));
+        assertTrue(buf.collectDamage().isEmpty());
+
+        buf.cursorSetPosition(1, 2);
+        buf.write("abc");
+
+        Damage damage = buf.collectDamage();
+        assertFalse(damage.isRowDirty(0));
+        assertTrue(damage.isRowDirty(1));
+        assertEquals(2, damage.getDirtyStart(1));
+        assertEquals(5, damage.getDirtyEnd(1));
+        assertFalse(damage.isRowDirty(2));
+        assertEquals(0, damage.getScrollDelta());
+        assertTrue(buf.collectDamage(damage).isEmpty());
+    }
+
+    @Test
+    public void testCollectDamageAfterScroll() {
+        TerminalBuffer buf = new TerminalBuffer(4, 3, 10);
+        buf.collectDamage();
+
+        buf.cursorSetPosition(2, 0);
+        buf.write("ab");
+        buf.insertEmptyLineAtBottom();
+        buf.insertEmptyLineAtBottom();
+
+        Damage damage = buf.collectDamage();
+        assertEquals(2, damage.getScrollDelta());
+        // "ab" moved up to row 0 and the two new bottom rows need painting
+        assertTrue(damage.isRowDirty(0));
+        assertEquals(0, damage.getDirtyStart(0));
+        assertEquals(2, damage.getDirtyEnd(0));
+        assertTrue(damage.isRowDirty(1));
+        assertTrue(damage.isRowDirty(2));
+        assertEquals(4, damage.getDirtyEnd(2));
+    }
+
+    @Test
+    public void testExportPlainTextMatchesEntireBuffer() throws IOException {
+        TerminalBuffer buf = new TerminalBuffer(6, 2, 10);
+        buf.write("first second third");
+
+        StringBuilder out = new StringBuilder();
+        buf.exportTo(out, ExportFormat.PLAIN_TEXT);
+
+        assertEquals(buf.getEntireBufferAsString(), out.toString());
+    }
+
+    @Test
+    public void testExportWithSgr() throws IOException {
+        TerminalBuffer buf = new TerminalBuffer(6, 1, 10);
+        buf.write("ab");
+        buf.setForeground(Color.RED);
+        buf.addStyle(Style.BOLD);
+        buf.write("cd");
+        buf.resetAttributes();
+        buf.setBackground(Color.BRIGHT_BLUE);
+        buf.write("e");
+
+        StringWriter out = new StringWriter();
+        buf.exportScreenTo(out, ExportFormat.SGR);
+
+        assertEquals("ab\u001b[0;1;31mcd\u001b[0;104me\u001b[0m \n", out.toString());
+    }
+
+    @Test
+    public void testExportToChannel() throws IOException {
+        TerminalBuffer buf = new TerminalBuffer(4, 2, 100);
+        for (int i = 0; i < 50; i++) {
+            buf.write(String.format("%4d", i));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        buf.exportTo(Channels.newChannel(bytes), ExportFormat.PLAIN_TEXT);
+
+        assertEquals(buf.getEntireBufferAsString(), bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testWideCharactersTakeTwoColumns() {
+        TerminalBuffer buf = new TerminalBuffer(6, 2, 10);
+        buf.write("a世b");
+
+        assertEquals('世', buf.getCharAt(0, 1));
+        assertEquals('\0', buf.getCharAt(0, 2));
+        assertEquals("", buf.getTextAt(0, 2));
+        assertEquals('b', buf.getCharAt(0, 3));
+        assertEquals(4, buf.getCursor().getColumn());
+        assertEquals("a世b  ", buf.getLineAsString(0));
+    }
+
+    @Test
+    public void testWideCharacterWrapsInsteadOfStraddlingMargin() {
+        TerminalBuffer buf = new TerminalBuffer(3, 2, 10);
+        buf.write("ab世");
+
+        assertEquals("ab ", buf.getLineAsString(0));
+        assertEquals("世 ", buf.getLineAsString(1));
+        assertEquals(2, buf.getCursor().getColumn());
+    }
+
+    @Test
+    public void testOverwritingHalfOfWideCharacterBlanksTheOtherHalf() {
+        TerminalBuffer buf = new TerminalBuffer(6, 1, 10);
+        buf.write("世界");
+        buf.cursorSetPosition(0, 1);
+        buf.write("x");
+
+        assertEquals(" x界  ", buf.getLineAsString(0));
+        assertEquals(1, buf.getScreen().getFirst().getCellWidth(0));
+        assertEquals(2, buf.getScreen().getFirst().getCellWidth(2));
+    }
+
+    @Test
+    public void testSupplementaryCodePointAcrossWrites() {
+        TerminalBuffer buf = new TerminalBuffer(6, 1, 10);
+        String emoji = "\uD83D\uDE00";
+        buf.write(emoji.substring(0, 1));
+        buf.write(emoji.substring(1) + "!");
+
+        assertEquals(0x1F600, buf.getCodePointAt(0, 0));
+        assertEquals(emoji, buf.getTextAt(0, 0));
+        assertEquals('\uFFFD', buf.getCharAt(0, 0));
+        assertEquals('!', buf.getCharAt(0, 2));
+        assertEquals(emoji + "!   ", buf.getLineAsString(0));
+    }
+
+    @Test
+    public void testUnpairedSurrogateIsReplaced() {
+        TerminalBuffer buf = new TerminalBuffer(4, 1, 10);
+        buf.write("\uD800a\uDC00");
+
+        assertEquals("\uFFFDa\uFFFD ", buf.getLineAsString(0));
+    }
+
+    @Test
+    public void testCombiningCharactersJoinPreviousCell() {
+        TerminalBuffer buf = new TerminalBuffer(3, 2, 10);
+        buf.write("e\u0301x");
+
+        assertEquals("e\u0301", buf.getTextAt(0, 0));
+        assertEquals('e', buf.getCharAt(0, 0));
+        assertEquals('x', buf.getCharAt(0, 1));
+
+        // While a wrap is pending the mark belongs to the last column
+        buf.write("z\u0308");
+        assertEquals("z\u0308", buf.getTextAt(0, 2));
+        assertEquals(0, buf.getCursor().getRow());
+        assertEquals(2, buf.getCursor().getColumn());
+    }
+
+    @Test
+    public void testZeroWidthJoinerSequenceIsOneCell() {
+        TerminalBuffer buf = new TerminalBuffer(6, 1, 10);
+        String family = "\uD83D\uDC68\u200D\uD83D\uDC69";
+        buf.write(family + "a");
+
+        assertEquals(family, buf.getTextAt(0, 0));
+        assertEquals('a', buf.getCharAt(0, 2));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testDeprecatedScrollbackReturnsLineCopies() {
+        TerminalBuffer buf = new TerminalBuffer(6, 1, 10);
+        buf.setForeground(Color.RED);
+        buf.write("a\u4E16bcdef");
+        buf.insertEmptyLineAtBottom();
+
+        List<Line> lines = buf.getScrollback();
+        assertEquals(buf.getScrollbackLines().size(), lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            ReadableLine frozen = buf.getScrollbackLines().get(i);
+            assertEquals(frozen.toString(), lines.get(i).toString());
+            assertEquals(frozen.isWrapped(), lines.get(i).isWrapped());
+            for (int column = 0; column < 6; column++) {
+                assertEquals(frozen.getCellWidth(column), lines.get(i).getCellWidth(column));
+                assertEquals(frozen.getAttributes(column), lines.get(i).getAttributes(column));
+            }
+        }
+
+        lines.get(0).clear();
+        assertEquals("a\u4E16bcd", buf.getLineAsString(0));
+    }
+
+    @Test
+    public void testCursorMoveEndsJoinerSequence() {
+        TerminalBuffer buf = new TerminalBuffer(6, 1, 10);
+        buf.write("\uD83D\uDC68\u200D");
+        buf.cursorSetPosition(0, 2);
+        buf.write("\uD83D\uDC69");
+
+        assertEquals("\uD83D\uDC68\u200D", buf.getTextAt(0, 0));
+        assertEquals("\uD83D\uDC69", buf.getTextAt(0, 2));
+    }
+
+    @Test
+    public void testWideCharactersSurviveScrollbackAndExport() throws IOException {
+        TerminalBuffer buf = new TerminalBuffer(4, 1, 10);
+        buf.write("世\uD83D\uDE00");
+        buf.insertEmptyLineAtBottom();
+
+        assertEquals("世\uD83D\uDE00", buf.getLineAsString(0));
+        assertEquals(2, buf.getScrollback().getFirst().getCellWidth(2));
+        assertEquals(0x1F600, buf.getCodePointAt(0, 2));
+
+        StringWriter out = new StringWriter();
+        buf.exportTo(out, ExportFormat.PLAIN_TEXT);
+        assertEquals(buf.getEntireBufferAsString(), out.toString());
+    }
+
+    @Test
+    public void testInsertWideCharacter() {
+        TerminalBuffer buf = new TerminalBuffer(5, 1, 10);
+        buf.write("abc");
+        buf.cursorSetPosition(0, 1);
+        buf.insert("世");
+
+        assertEquals("a世bc", buf.getLineAsString(0));
+        assertEquals(3, buf.getCursor().getColumn());
+    }
+
+    @Test
+    public void testInsertWideCharacterAtLastColumnWraps() {
+        TerminalBuffer buf = new TerminalBuffer(4, 2, 10);
+        buf.write("abcd");
+        buf.cursorSetPosition(0, 3);
+        buf.insert("\u4E16x");
+
+        assertEquals("abc \n\u4E16x \n", buf.getScreenAsString());
+        assertEquals(2, buf.getScreen().get(1).getCellWidth(0));
+        assertTrue(buf.getScreen().get(0).isWrapped());
+        assertEquals(1, buf.getCursor().getRow());
+        assertEquals(3, buf.getCursor().getColumn());
+
+        // No row below the last one, so the character is dropped and not counted as written
+        long written = buf.getMetrics().getCharactersWritten();
+        buf.cursorSetPosition(1, 3);
+        buf.insert("\u4E16");
+        assertEquals("\u4E16x ", buf.getLineAsString(1));
+        assertEquals(1, buf.getScreen().get(1).getCellWidth(3));
+        assertEquals(written, buf.getMetrics().getCharactersWritten());
+
+        buf.cursorSetPosition(1, 3);
+        buf.insertChar('\u4E16');
+        assertEquals(written, buf.getMetrics().getCharactersWritten());
+    }
+
+    private static TerminalBuffer rowsABCD() {
+        TerminalBuffer buf = new TerminalBuffer(3, 4, 10);
+        for (int row = 0; row < 4; row++) {
+            buf.cursorSetPosition(row, 0);
+            buf.write(String.valueOf((char) ('a' + row)));
+        }
+        return buf;
+    }
+
+    @Test
+    public void testScrollRegionKeepsRowsOutsideIt() {
+        TerminalBuffer buf = rowsABCD();
+        buf.setScrollRegion(1, 2);
+        buf.cursorSetPosition(2, 0);
+        buf.lineFeed();
+
+        assertEquals("a  \nc  \n   \nd  \n", buf.getScreenAsString());
+        assertEquals(0, buf.getScrollbackSize());
+        assertEquals(2, buf.getCursor().getRow());
+    }
+
+    @Test
+    public void testScrollRegionAtTopFeedsScrollback() {
+        TerminalBuffer buf = rowsABCD();
+        buf.setScrollRegion(0, 2);
+        buf.cursorSetPosition(2, 0);
+        buf.write("cc");
+        buf.cursorNextLine();
+
+        assertEquals("b  \ncc \n   \nd  \n", buf.getScreenAsString());
+        assertEquals(1, buf.getScrollbackSize());
+        assertEquals("a  ", buf.getLineAsString(0));
+    }
+
+    @Test
+    public void testInsertAndDeleteLinesMoveLines() {
+        TerminalBuffer buf = rowsABCD();
+        Line b = buf.getScreen().get(1);
+        buf.cursorSetPosition(1, 2);
+
+        buf.insertLines(1);
+        assertEquals("a  \n   \nb  \nc  \n", buf.getScreenAsString());
+        assertSame(b, buf.getScreen().get(2));
+        assertEquals(0, buf.getCursor().getColumn());
+
+        buf.deleteLines(2);
+        assertEquals("a  \nc  \n   \n   \n", buf.getScreenAsString());
+        assertEquals(0, buf.getScrollbackSize());
+    }
+
+    @Test
+    public void testReverseLineFeedAtTopMarginScrollsDown() {
+        TerminalBuffer buf = rowsABCD();
+        buf.setScrollRegion(1, 3);
+        buf.cursorSetPosition(1, 0);
+        buf.reverseLineFeed();
+
+        assertEquals("a  \n   \nb  \nc  \n", buf.getScreenAsString());
+        assertEquals(1, buf.getCursor().getRow());
+    }
+
+    @Test
+    public void testScrollRegionDownKeepsSnapshot() {
+        TerminalBuffer buf = rowsABCD();
+        TerminalSnapshot snapshot = buf.snapshot();
+        buf.scrollRegionDown(2);
+
+        assertEquals("   \n   \na  \nb  \n", buf.getScreenAsString());
+        assertEquals("a  \nb  \nc  \nd  \n", snapshot.getScreenAsString());
+        Damage damage = buf.collectDamage();
+        for (int row = 0; row < 4; row++) {
+            assertTrue(damage.isRowDirty(row));
+        }
+    }
+
+    @Test
+    public void testInvalidScrollRegion() {
+        TerminalBuffer buf = rowsABCD();
+        assertThrows(IllegalArgumentException.class, () -> buf.setScrollRegion(2, 2));
+        assertThrows(IllegalArgumentException.class, () -> buf.setScrollRegion(0, 4));
+    }
+
+    @Test
+    public void testAlternateScreenKeepsPrimaryScreen() {
+        TerminalBuffer buf = rowsABCD();
+        List<Line> primary = List.copyOf(buf.getScreen());
+        buf.cursorSetPosition(1, 2);
+        buf.setForeground(Color.GREEN);
+
+        buf.enterAlternateScreen();
+        assertTrue(buf.isAlternateScreenActive());
+        assertEquals("   \n   \n   \n   \n", buf.getScreenAsString());
+        assertEquals(1, buf.getCursor().getRow());
+        assertEquals(2, buf.getCursor().getColumn());
+        buf.resetAttributes();
+        buf.cursorSetPosition(0, 0);
+        buf.write("xyz");
+        for (int i = 0; i < 5; i++) {
+            buf.lineFeed();
+        }
+        assertEquals(0, buf.getScrollbackSize());
+
+        buf.collectDamage();
+        buf.leaveAlternateScreen();
+        assertFalse(buf.isAlternateScreenActive());
+        assertEquals("a  \nb  \nc  \nd  \n", buf.getScreenAsString());
+        for (int row = 0; row < 4; row++) {
+            assertSame(primary.get(row), buf.getScreen().get(row));
+        }
+        assertEquals(1, buf.getCursor().getRow());
+        assertEquals(2, buf.getCursor().getColumn());
+        assertEquals(Color.GREEN, buf.getCurrentAttributes().getForeground());
+        Damage damage = buf.collectDamage();
+        for (int row = 0; row < 4; row++) {
+            assertTrue(damage.isRowDirty(row));
+        }
+    }
+
+    @Test
+    public void testAlternateScreenIsClearedOnEntry() {
+        TerminalBuffer buf = rowsABCD();
+        buf.enterAlternateScreen();
+        buf.cursorSetPosition(0, 0);
+        buf.write("xyz");
+        TerminalSnapshot snapshot = buf.snapshot();
+        buf.leaveAlternateScreen();
+
+        buf.enterAlternateScreen();
+        assertEquals("   \n   \n   \n   \n", buf.getScreenAsString());
+        assertEquals("xyz\n   \n   \n   \n", snapshot.getScreenAsString());
+        buf.leaveAlternateScreen();
+        buf.leaveAlternateScreen();
+        assertEquals("a  \nb  \nc  \nd  \n", buf.getScreenAsString());
+    }
+
+    @Test
+    public void testResizeInAlternateScreen() {
+        TerminalBuffer buf = new TerminalBuffer(4, 2, 10);
+        buf.write("abcdef");
+        buf.enterAlternateScreen();
+        buf.write("xy");
+
+        buf.resize(3, 3);
+        assertTrue(buf.isAlternateScreenActive());
+        assertEquals("   \n   \n   \n", buf.getScreenAsString());
+        assertEquals(1, buf.getCursor().getRow());
+        assertEquals(2, buf.getCursor().getColumn());
+
+        buf.leaveAlternateScreen();
+        assertEquals("abc\ndef\n   \n", buf.getScreenAsString());
+        assertEquals(1, buf.getCursor().getRow());
+        assertEquals(2, buf.getCursor().getColumn());
+        assertEquals(0, buf.getScrollbackSize());
+    }
+
+    @Test
+    void testReadStyledRunsOfScrollbackAndScreen() {
+        TerminalBuffer buf = new TerminalBuffer(8, 2, 10);
+        buf.write("plain");
+        buf.cursorNextLine();
+        buf.write("a");
+        buf.setForeground(Color.GREEN);
+        buf.write("bc");
+        buf.cursorNextLine();
+        buf.write("x");
+
+        StringBuilder text = new StringBuilder();
+        StringBuilder runs = new StringBuilder();
+        StyledRunSink sink = (column, cells, attributes, run) ->
+                runs.append(column).append('+').append(cells).append(' ')
+                        .append(attributes.getForeground()).append(' ').append(run).append('|');
+
+        buf.readStyledRuns(0, text, sink);
+        assertEquals("0+8 DEFAULT plain   |", runs.toString());
+
+        runs.setLength(0);
+        buf.readStyledRuns(1, text, sink);
+        assertEquals("0+1 DEFAULT a|1+2 GREEN bc|3+5 DEFAULT      |", runs.toString());
+
+        runs.setLength(0);
+        buf.snapshot().readStyledRuns(2, text, sink);
+        assertEquals("0+1 GREEN x|1+7 DEFAULT        |", runs.toString());
+
+        assertThrows(IndexOutOfBoundsException.class, () -> buf.readStyledRuns(3, text, sink));
+    }
 }
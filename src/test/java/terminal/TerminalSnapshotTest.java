@@ -0,0 +1,209 @@
+package terminal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TerminalSnapshotTest {
+
+    @Test
+    void testSnapshotIsUnaffectedByLaterWrites() {
+        TerminalBuffer buf = new TerminalBuffer(5, 2, 10);
+        buf.write("hello");
+        TerminalSnapshot snapshot = buf.snapshot();
+
+        buf.cursorSetPosition(0, 0);
+        buf.write("HE");
+        buf.eraseInDisplay(0);
+
+        assertEquals("hello", snapshot.getLineAsString(0));
+        assertEquals("HE   ", buf.getLineAsString(0));
+        assertEquals(0, snapshot.getCursor().getRow());
+        assertEquals(4, snapshot.getCursor().getColumn());
+    }
+
+    @Test
+    void testUnchangedLinesAreShared() {
+        TerminalBuffer buf = new TerminalBuffer(5, 3, 10);
+        buf.write("a");
+        TerminalSnapshot first = buf.snapshot();
+
+        buf.write("b");
+        TerminalSnapshot second = buf.snapshot();
+
+        assertNotSame(first.getScreen().get(0), second.getScreen().get(0));
+        assertSame(first.getScreen().get(1), second.getScreen().get(1));
+        assertSame(first.getScreen().get(2), second.getScreen().get(2));
+        assertEquals("a    ", first.getLineAsString(0));
+        assertEquals("ab   ", second.getLineAsString(0));
+    }
+
+    @Test
+    void testScrollingKeepsSnapshotScreenAndScrollback() {
+        TerminalBuffer buf = new TerminalBuffer(3, 2, 10);
+        buf.write("aaabbb");
+        buf.insertEmptyLineAtBottom();
+        TerminalSnapshot snapshot = buf.snapshot();
+
+        buf.write("cccddd");
+
+        assertEquals(1, snapshot.getScrollbackSize());
+        assertEquals("aaa", snapshot.getLineAsString(0));
+        assertEquals("bbb", snapshot.getLineAsString(1));
+        assertEquals("   ", snapshot.getLineAsString(2));
+        assertEquals(3, buf.getScrollbackLines().size());
+        assertEquals("ccc", buf.getLineAsString(3));
+    }
+
+    @Test
+    void testEvictedScrollbackRowsStayInSnapshot() {
+        TerminalBuffer buf = new TerminalBuffer(3, 1, 2);
+        buf.write("aaabbb");
+        buf.insertEmptyLineAtBottom();
+        TerminalSnapshot snapshot = buf.snapshot();
+
+        for (int i = 0; i < 3; i++) {
+            buf.write("zzz");
+            buf.insertEmptyLineAtBottom();
+        }
+
+        assertEquals(0, snapshot.getFirstAvailableRow());
+        assertEquals("aaa", snapshot.getLineAsString(0));
+        assertEquals("bbb", snapshot.getLineAsString(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> snapshot.getLine(3));
+    }
+
+    @Test
+    void testEvictedSpilledRowsAreReportedUnavailable(@TempDir Path tempDir) {
+        try (TerminalBuffer buf = new TerminalBuffer(3, 1, 600, tempDir.resolve("spill"), 4)) {
+            for (int i = 0; i < 600; i++) {
+                buf.write(String.format("%03d", i));
+            }
+            TerminalSnapshot snapshot = buf.snapshot();
+            assertEquals("000", snapshot.getLineAsString(0));
+            assertEquals("300", snapshot.getLineAsString(300));
+
+            for (int i = 0; i < 300; i++) {
+                buf.write("zzz");
+            }
+
+            assertEquals(299, snapshot.getFirstAvailableRow());
+            assertThrows(IndexOutOfBoundsException.class, () -> snapshot.getLine(298));
+            assertEquals("299", snapshot.getLineAsString(299));
+            assertEquals("598", snapshot.getLineAsString(598));
+            assertEquals("599", snapshot.getLineAsString(599));
+        }
+    }
+
+    private static void writeLine(TerminalBuffer buf, String text) {
+        buf.cursorSetPosition(0, 0);
+        buf.write(text);
+        buf.insertEmptyLineAtBottom();
+    }
+
+    @Test
+    void testSnapshotReadsSpilledRowsAfterCompaction(@TempDir Path tempDir) {
+        String padding = "x".repeat(4000);
+        try (TerminalBuffer buf = new TerminalBuffer(4004, 1, 1000, tempDir.resolve("spill"), 4)) {
+            // Two blocks of long lines, then short ones: evicting the long lines leaves most of the
+            // file dead, so it is compacted and the blocks the snapshot reads move
+            for (int i = 0; i < 1000; i++) {
+                writeLine(buf, String.format("%04d", i) + (i < 512 ? padding : ""));
+            }
+            TerminalSnapshot snapshot = buf.snapshot();
+            assertEquals("0600", snapshot.getLineAsString(600).strip());
+
+            for (int i = 1000; i < 1520; i++) {
+                writeLine(buf, String.format("%04d", i));
+            }
+
+            assertEquals(520, snapshot.getFirstAvailableRow());
+            for (int row = 520; row < 1000; row++) {
+                assertEquals(String.format("%04d", row), snapshot.getLineAsString(row).strip());
+            }
+        }
+    }
+
+    @Test
+    void testScreenViewDoesNotModifySnapshot() {
+        TerminalBuffer buf = new TerminalBuffer(4, 1, 10);
+        buf.write("abcd");
+        TerminalSnapshot snapshot = buf.snapshot();
+
+        buf.getScreen().getFirst().clear();
+
+        assertEquals("abcd", snapshot.getLineAsString(0));
+        assertEquals("    ", buf.getLineAsString(0));
+    }
+
+    @Test
+    void testRendererThreadNeverSeesPartialLines() throws InterruptedException {
+        TerminalBuffer buf = new TerminalBuffer(16, 8, 100);
+        AtomicReference<TerminalSnapshot> published = new AtomicReference<>(buf.snapshot());
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread renderer = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted() && failure.get() == null) {
+                TerminalSnapshot snapshot = published.get();
+                for (int pass = 0; pass < 3; pass++) {
+                    for (ReadableLine line : snapshot.getScreen()) {
+                        String text = line.toString();
+                        if (!text.chars().allMatch(c -> c == text.charAt(0))) {
+                            failure.set(text);
+                        }
+                    }
+                }
+            }
+        });
+        renderer.start();
+
+        // Every write fills a whole line with one character, overwriting lines that snapshots still share
+        for (int i = 0; i < 20_000; i++) {
+            buf.cursorSetPosition(i % 8, 0);
+            buf.write(String.valueOf((char) ('a' + i % 26)).repeat(16));
+            if (i % 7 == 0) {
+                published.set(buf.snapshot());
+            }
+        }
+
+        renderer.interrupt();
+        renderer.join();
+        assertNull(failure.get());
+    }
+
+    @Test
+    void testRendererThreadSeesPinnedScrollbackWhileWriterEvicts() throws InterruptedException {
+        TerminalBuffer buf = new TerminalBuffer(8, 2, 50);
+        AtomicReference<TerminalSnapshot> published = new AtomicReference<>(buf.snapshot());
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread renderer = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted() && failure.get() == null) {
+                TerminalSnapshot snapshot = published.get();
+                for (int row = 1; row < snapshot.getScrollbackSize(); row++) {
+                    long previous = Long.parseLong(snapshot.getLineAsString(row - 1));
+                    if (Long.parseLong(snapshot.getLineAsString(row)) != previous + 1) {
+                        failure.set("row " + row + " after " + previous);
+                    }
+                }
+            }
+        });
+        renderer.start();
+
+        // Every line is the next number, so rows of a consistent history count up by one
+        for (int i = 0; i < 20_000; i++) {
+            buf.write(String.format("%08d", i));
+            if (i % 5 == 0) {
+                published.set(buf.snapshot());
+            }
+        }
+
+        renderer.interrupt();
+        renderer.join();
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,99 @@
+package terminal;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Utf8InputTest {
+
+    private static String decode(byte[]... chunks) {
+        StringBuilder out = new StringBuilder();
+        Utf8Input input = new Utf8Input((chars, offset, length) -> out.append(chars, offset, length));
+        for (byte[] chunk : chunks) {
+            input.feed(ByteBuffer.wrap(chunk));
+        }
+        input.finish();
+        return out.toString();
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testDecodesAllSequenceLengths() {
+        String text = "ascii é € 世界 😀";
+
+        assertEquals(text, decode(utf8(text)));
+    }
+
+    @Test
+    void testSequencesSplitAcrossReads() {
+        byte[] bytes = utf8("a€b😀c");
+        byte[][] singleBytes = new byte[bytes.length][];
+        for (int i = 0; i < bytes.length; i++) {
+            singleBytes[i] = new byte[]{bytes[i]};
+        }
+
+        assertEquals("a€b😀c", decode(singleBytes));
+    }
+
+    @Test
+    void testDirectBuffer() {
+        byte[] bytes = utf8("direct ✓");
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        StringBuilder out = new StringBuilder();
+
+        new Utf8Input((chars, offset, length) -> out.append(chars, offset, length)).feed(direct);
+
+        assertEquals("direct ✓", out.toString());
+        assertFalse(direct.hasRemaining());
+    }
+
+    @Test
+    void testMalformedInput() {
+        // Lone continuation byte, overlong '/', encoded surrogate, truncated sequence followed by ASCII
+        byte[] bytes = {
+                'a', (byte) 0x80, 'b',
+                (byte) 0xC0, (byte) 0xAF, 'c',
+                (byte) 0xED, (byte) 0xA0, (byte) 0x80, 'd',
+                (byte) 0xE2, (byte) 0x82, 'e',
+                (byte) 0xFF
+        };
+
+        assertEquals("a�b�c�d�e�", decode(bytes));
+    }
+
+    @Test
+    void testIncompleteSequenceAtEnd() {
+        assertEquals("x�", decode(new byte[]{'x', (byte) 0xF0, (byte) 0x9F}));
+    }
+
+    @Test
+    void testPumpChannelIntoBuffer() throws IOException {
+        TerminalBuffer buf = new TerminalBuffer(10, 3, 10);
+        Utf8Input input = new Utf8Input(new VtParser(buf));
+        byte[] bytes = utf8("héllo\r\n\u001b[31mwörld");
+
+        long read = input.pump(Channels.newChannel(new ByteArrayInputStream(bytes)));
+
+        assertEquals(bytes.length, read);
+        assertEquals("héllo     ", buf.getLineAsString(0));
+        assertEquals("wörld     ", buf.getLineAsString(1));
+        assertEquals(Color.RED, buf.getAttributesAt(1, 1).getForeground());
+    }
+
+    @Test
+    void testLargeInputAcrossChunks() {
+        String text = "ü€😀".repeat(10_000);
+
+        assertEquals(text, decode(utf8(text)));
+    }
+}
@@ -0,0 +1,222 @@
+package terminal;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.CharBuffer;
+import java.util.EnumSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VtParserTest {
+
+    private static final String ESC = "\u001b";
+
+    @Test
+    void testPrintableTextAndLineControls() {
+        TerminalBuffer buf = new TerminalBuffer(8, 3, 10);
+        VtParser parser = new VtParser(buf);
+
+        parser.parse("hello\r\nworld\rW\n\tx");
+
+        assertEquals("hello   ", buf.getLineAsString(0));
+        assertEquals("World   ", buf.getLineAsString(1));
+        // The tab stop at column 8 is past the margin, so the cursor stops at the last column
+        assertEquals("       x", buf.getLineAsString(2));
+    }
+
+    @Test
+    void testLineFeedKeepsColumn() {
+        TerminalBuffer buf = new TerminalBuffer(6, 3, 10);
+        VtParser parser = new VtParser(buf);
+
+        parser.parse("ab\ncd");
+
+        assertEquals("ab    ", buf.getLineAsString(0));
+        assertEquals("  cd  ", buf.getLineAsString(1));
+    }
+
+    @Test
+    void testTabAndBackspace() {
+        TerminalBuffer buf = new TerminalBuffer(20, 2, 10);
+        VtParser parser = new VtParser(buf);
+
+        parser.parse("a\tb\bc");
+
+        assertEquals('a', buf.getCharAt(0, 0));
+        assertEquals('c', buf.getCharAt(0, 8));
+        assertEquals(9, buf.getCursor().getColumn());
+    }
+
+    @Test
+    void testCursorMovement() {
+        TerminalBuffer buf = new TerminalBuffer(10, 5, 10);
+        VtParser parser = new VtParser(buf);
+
+        parser.parse(ESC + "[3;4H");
+        assertEquals(2, buf.getCursor().getRow());
+        assertEquals(3, buf.getCursor().getColumn());
+
+        parser.parse(ESC + "[A" + ESC + "[2C");
+        assertEquals(1, buf.getCursor().getRow());
+        assertEquals(5, buf.getCursor().getColumn());
+
+        parser.parse(ESC + "[10B" + ESC + "[99D");
+        assertEquals(4, buf.getCursor().getRow());
+        assertEquals(0, buf.getCursor().getColumn());
+
+        parser.parse(ESC + "[7G" + ESC + "[2d");
+        assertEquals(1, buf.getCursor().getRow());
+        assertEquals(6, buf.getCursor().getColumn());
+
+        parser.parse(ESC + "[H");
+        assertEquals(0, buf.getCursor().getRow());
+        assertEquals(0, buf.getCursor().getColumn());
+    }
+
+    @Test
+    void testSelectGraphicRendition() {
+        TerminalBuffer buf = new TerminalBuffer(10, 2, 10);
+        VtParser parser = new VtParser(buf);
+
+        parser.parse(ESC + "[1;31;44mA" + ESC + "[22;93mB" + ESC + "[0mC" + ESC + "[38;5;10;48;2;1;2;3mD");
+
+        assertEquals(new CellAttributes(Color.RED, Color.BLUE, EnumSet.of(Style.BOLD)), buf.getAttributesAt(0, 0));
+        assertEquals(new CellAttributes(Color.BRIGHT_YELLOW, Color.BLUE, EnumSet.noneOf(Style.class)), buf.getAttributesAt(0, 1));
+        assertEquals(new CellAttributes(), buf.getAttributesAt(0, 2));
+        assertEquals(Color.BRIGHT_GREEN, buf.getAttributesAt(0, 3).getForeground());
+        assertEquals(Color.DEFAULT, buf.getAttributesAt(0, 3).getBackground());
+        assertEquals("ABCD      ", buf.getLineAsString(0));
+    }
+
+    @Test
+    void testEraseInLineAndDisplay() {
+        TerminalBuffer buf = new TerminalBuffer(5, 3, 10);
+        VtParser parser = new VtParser(buf);
+        parser.parse("aaaaa" + "bbbbb" + "ccccc");
+
+        parser.parse(ESC + "[2;3H" + ESC + "[K");
+        assertEquals("bb   ", buf.getLineAsString(1));
+
+        parser.parse(ESC + "[1K");
+        assertEquals("     ", buf.getLineAsString(1));
+
+        parser.parse(ESC + "[J");
+        assertEquals("aaaaa", buf.getLineAsString(0));
+        assertEquals("     ", buf.getLineAsString(2));
+
+        parser.parse(ESC + "[2J");
+        assertEquals("     \n     \n     \n", buf.getScreenAsString());
+        assertEquals(1, buf.getCursor().getRow());
+    }
+
+    @Test
+    void testEraseUsesCurrentBackground() {
+        TerminalBuffer buf = new TerminalBuffer(4, 1, 10);
+        VtParser parser = new VtParser(buf);
+
+        parser.parse(ESC + "[1;32;41m" + ESC + "[2K");
+
+        assertEquals(new CellAttributes(Color.DEFAULT, Color.RED, EnumSet.noneOf(Style.class)), buf.getAttributesAt(0, 0));
+    }
+
+    @Test
+    void testSequencesSplitAcrossChunks() {
+        TerminalBuffer buf = new TerminalBuffer(10, 2, 10);
+        VtParser parser = new VtParser(buf);
+        String input = "ab" + ESC + "[1;31mcd" + ESC + "[2;5Hef";
+
+        // Feed one character at a time so every sequence is split
+        for (char c : input.toCharArray()) {
+            parser.parse(new char[]{c}, 0, 1);
+        }
+
+        assertEquals("abcd      ", buf.getLineAsString(0));
+        assertEquals("    ef    ", buf.getLineAsString(1));
+        assertEquals(Color.RED, buf.getAttributesAt(0, 2).getForeground());
+        assertTrue(buf.getAttributesAt(1, 4).hasStyle(Style.BOLD));
+    }
+
+    @Test
+    void testOscAndUnknownSequencesAreSkipped() {
+        TerminalBuffer buf = new TerminalBuffer(10, 1, 10);
+        VtParser parser = new VtParser(buf);
+
+        parser.parse(ESC + "]0;window title\u0007a" + ESC + "]2;other" + ESC + "\\b" + ESC + "[?25lc" + ESC + "(Bd" + ESC + "[5:3me");
+
+        assertEquals("abcde     ", buf.getLineAsString(0));
+    }
+
+    @Test
+    void testCancelAbortsSequence() {
+        TerminalBuffer buf = new TerminalBuffer(10, 1, 10);
+        VtParser parser = new VtParser(buf);
+
+        parser.parse(ESC + "[31\u0018x");
+
+        assertEquals("x         ", buf.getLineAsString(0));
+        assertEquals(Color.DEFAULT, buf.getAttributesAt(0, 0).getForeground());
+    }
+
+    @Test
+    void testParseCharBuffer() {
+        TerminalBuffer buf = new TerminalBuffer(10, 1, 10);
+        VtParser parser = new VtParser(buf);
+        CharBuffer chars = CharBuffer.wrap("xx" + ESC + "[4mhello");
+        chars.position(2);
+
+        parser.parse(chars);
+
+        assertFalse(chars.hasRemaining());
+        assertEquals("hello     ", buf.getLineAsString(0));
+        assertTrue(buf.getAttributesAt(0, 0).hasStyle(Style.UNDERLINE));
+    }
+
+    @Test
+    void testScrollRegionAndLineOperations() {
+        TerminalBuffer buf = new TerminalBuffer(3, 4, 10);
+        VtParser parser = new VtParser(buf);
+        parser.parse("1\r\n2\r\n3\r\n4");
+
+        parser.parse(ESC + "[2;3r");
+        assertEquals(1, buf.getScrollTop());
+        assertEquals(2, buf.getScrollBottom());
+        assertEquals(0, buf.getCursor().getRow());
+
+        parser.parse(ESC + "[3H\n");
+        assertEquals("1  \n3  \n   \n4  \n", buf.getScreenAsString());
+
+        parser.parse(ESC + "[2H" + ESC + "[L");
+        assertEquals("1  \n   \n3  \n4  \n", buf.getScreenAsString());
+
+        parser.parse(ESC + "M");
+        assertEquals("1  \n   \n   \n4  \n", buf.getScreenAsString());
+
+        parser.parse(ESC + "[r");
+        assertEquals(0, buf.getScrollTop());
+        assertEquals(3, buf.getScrollBottom());
+
+        parser.parse(ESC + "[4H" + ESC + "[2M");
+        assertEquals("1  \n   \n   \n   \n", buf.getScreenAsString());
+        assertEquals(0, buf.getScrollbackSize());
+    }
+
+    @Test
+    void testAlternateScreenModes() {
+        TerminalBuffer buf = new TerminalBuffer(3, 2, 10);
+        VtParser parser = new VtParser(buf);
+        parser.parse("ab");
+
+        parser.parse(ESC + "[?1049h" + ESC + "[Hvi");
+        assertTrue(buf.isAlternateScreenActive());
+        assertEquals("vi \n   \n", buf.getScreenAsString());
+
+        parser.parse(ESC + "[?1049l");
+        assertFalse(buf.isAlternateScreenActive());
+        assertEquals("ab \n   \n", buf.getScreenAsString());
+        assertEquals(2, buf.getCursor().getColumn());
+
+        parser.parse(ESC + "[?25;1049h" + ESC + "c");
+        assertFalse(buf.isAlternateScreenActive());
+        assertEquals("   \n   \n", buf.getScreenAsString());
+    }
+}